@@ -0,0 +1,102 @@
+#!/bin/bash
+
+# mesure le temps d'assemblage d'un programme généré selon le nombre
+# d'instructions émises. Chaque instruction fait référence à un label et
+# laisse donc un fixup résolu par le CompilationEngine. Benchmark mesure
+# chaque phase séparément dans une seule JVM: le parse de SableCC n'est pas
+# linéaire et cacherait le temps de la résolution dans un temps total.
+
+rm -rf bench
+mkdir bench
+
+gen_source() {
+	awk -v n=$1 'BEGIN {
+		print "label_a:"
+		for(i = 0; i < n; i += 4) {
+			print "lda label_a"
+			print "sta label_b+{" i % 256 "}"
+			print "lda.b $10"
+			print "jmp label_a"
+		}
+		print "label_b:"
+	}'
+}
+
+do_bench() {
+	src="bench/bench_$1.txt"
+	gen_source $1 > $src
+
+	java -cp bin assembler.Benchmark $src $1
+}
+
+# boucle du méta-langage qui calcule une table en n'émettant
+# qu'un octet toutes les 256 itérations
+gen_loop() {
+	awk -v n=$1 'BEGIN {
+		print "int i = 0;"
+		print "int acc = 0;"
+		print "while(i < " n ") {"
+		print "\tacc = {acc + i * 3} ^ {i << 2};"
+		print "\tif(i MOD 256 == 0) {"
+		print "\t\tdb {acc & $FF}"
+		print "\t}"
+		print "\ti = i + 1;"
+		print "}"
+	}'
+}
+
+do_bench_loop() {
+	src="bench/loop_$1.txt"
+	gen_loop $1 > $src
+
+	start=$(date +%s%N)
+	java -cp bin assembler.Interp $src > /dev/null
+	end=$(date +%s%N)
+
+	ms=$(( (end - start) / 1000000 ))
+	ns=$(( (end - start) / $1 ))
+	echo "BENCH $1 loop iterations: $ms ms ($ns ns/iteration)"
+}
+
+# gros source (taille en Mo) fait surtout de commentaires, avec une
+# instruction toutes les 100 lignes: le temps est celui de la lecture
+# du fichier et du lexer
+gen_text() {
+	awk -v mb=$1 'BEGIN {
+		line = "\t// commentaire généré pour mesurer la lecture du source 0123456789"
+		n = int(mb * 1024 * 1024 / (length(line) + 1))
+		for(i = 0; i < n; i++) {
+			if(i % 100 == 0) {
+				print "lda $10"
+			}
+			else {
+				print line
+			}
+		}
+	}'
+}
+
+do_bench_text() {
+	src="bench/text_$1.txt"
+	gen_text $1 > $src
+
+	start=$(date +%s%N)
+	java -cp bin assembler.Interp $src > /dev/null
+	end=$(date +%s%N)
+
+	ms=$(( (end - start) / 1000000 ))
+	mbs=$(( $1 * 1000 / (ms > 0 ? ms : 1) ))
+	echo "BENCH $1 MB source: $ms ms ($mbs MB/s)"
+}
+
+do_bench 1000
+do_bench 10000
+do_bench 50000
+do_bench 100000
+
+do_bench_loop 100000
+do_bench_loop 1000000
+do_bench_loop 10000000
+
+do_bench_text 5
+do_bench_text 50
@@ -0,0 +1,78 @@
+package assembler;
+
+// modes d'adressage du 65816 avec la taille de base de leur argument en octets.
+// La taille d'un argument immédiat peut augmenter de 1 selon les flags M/X
+
+public enum AddressingMode {
+	// inc, tax, rts, ...
+	IMPLIED(0),
+	// inc a
+	ACCUMULATOR(0),
+	// lda #$10
+	IMMEDIATE(1),
+	// lda $10
+	DIRECT(1),
+	// lda $10,x
+	DIRECT_X(1),
+	// ldx $10,y
+	DIRECT_Y(1),
+	// lda ($10)
+	DIRECT_INDIRECT(1),
+	// lda ($10,x)
+	DIRECT_X_INDIRECT(1),
+	// lda ($10),y
+	DIRECT_INDIRECT_Y(1),
+	// lda [$10]
+	DIRECT_INDIRECT_LONG(1),
+	// lda [$10],y
+	DIRECT_INDIRECT_LONG_Y(1),
+	// lda $1000
+	ABSOLUTE(2),
+	// lda $1000,x
+	ABSOLUTE_X(2),
+	// lda $1000,y
+	ABSOLUTE_Y(2),
+	// lda $7E1000
+	ABSOLUTE_LONG(3),
+	// lda $7E1000,x
+	ABSOLUTE_LONG_X(3),
+	// jmp ($1000)
+	ABSOLUTE_INDIRECT(2),
+	// jmp ($1000,x)
+	ABSOLUTE_X_INDIRECT(2),
+	// jml [$1000]
+	ABSOLUTE_INDIRECT_LONG(2),
+	// lda $10,s
+	STACK_RELATIVE(1),
+	// lda ($10,s),y
+	STACK_RELATIVE_INDIRECT_Y(1),
+	// beq label
+	RELATIVE(1),
+	// brl label
+	RELATIVE_LONG(2),
+	// mvn $7E,$7F
+	BLOCK_MOVE(2);
+	
+	private final int operandSize;
+	
+	private AddressingMode(int operandSize) {
+		this.operandSize = operandSize;
+	}
+	
+	public int getOperandSize() {
+		return this.operandSize;
+	}
+	
+	// mode direct page, absolu ou long selon la longeur de l'argument (1, 2 ou 3 octets)
+	public static AddressingMode fromLength(int length, boolean indexedX) {
+		if(length == 1) {
+			return indexedX ? DIRECT_X : DIRECT;
+		}
+		else if(length == 2) {
+			return indexedX ? ABSOLUTE_X : ABSOLUTE;
+		}
+		else {
+			return indexedX ? ABSOLUTE_LONG_X : ABSOLUTE_LONG;
+		}
+	}
+}
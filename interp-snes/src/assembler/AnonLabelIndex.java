@@ -0,0 +1,121 @@
+package assembler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// index des labels anonymes d'un frame. Pour chaque macro ID et chaque direction
+// on garde un tableau d'offsets trié dans lequel on fait une recherche binaire
+
+public class AnonLabelIndex {
+
+	// déclarations "++" (branchement vers l'avant)
+	private Map<Integer, OffsetList> forward = new HashMap<>();
+
+	// déclarations "--" (branchement vers l'arrière)
+	private Map<Integer, OffsetList> backward = new HashMap<>();
+
+	public void addForward(int macroId, int offset) {
+		getOffsetList(this.forward, macroId).add(offset);
+	}
+
+	public void addBackward(int macroId, int offset) {
+		getOffsetList(this.backward, macroId).add(offset);
+	}
+
+	// retourne l'offset de la déclaration positive la plus proche en descendant
+	public Integer getForward(int macroId, int branchOffset) {
+		OffsetList list = this.forward.get(macroId);
+		if(list == null) {
+			return null;
+		}
+
+		// premier offset strictement plus grand que le branchement
+		int index = list.upperBound(branchOffset);
+		return index < list.size ? list.get(index) : null;
+	}
+
+	// retourne l'offset de la déclaration négative la plus proche en remontant
+	public Integer getBackward(int macroId, int branchOffset) {
+		OffsetList list = this.backward.get(macroId);
+		if(list == null) {
+			return null;
+		}
+
+		// dernier offset strictement plus petit que le branchement
+		int index = list.lowerBound(branchOffset) - 1;
+		return index >= 0 ? list.get(index) : null;
+	}
+
+	private static OffsetList getOffsetList(Map<Integer, OffsetList> map, int macroId) {
+		OffsetList list = map.get(macroId);
+		if(list == null) {
+			list = new OffsetList();
+			map.put(macroId, list);
+		}
+		return list;
+	}
+
+	// tableau d'offsets trié au besoin (un org() peut faire
+	// reculer l'offset d'écriture, donc l'ordre d'ajout ne suffit pas)
+	private static class OffsetList {
+		private int[] offsets = new int[8];
+		private int size = 0;
+		private boolean sorted = true;
+
+		public void add(int offset) {
+			if(this.size == this.offsets.length) {
+				this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+			}
+			if(this.size > 0 && offset < this.offsets[this.size - 1]) {
+				this.sorted = false;
+			}
+			this.offsets[this.size++] = offset;
+		}
+
+		public int get(int index) {
+			return this.offsets[index];
+		}
+
+		// index du premier offset plus grand que value
+		public int upperBound(int value) {
+			sort();
+			int low = 0;
+			int high = this.size;
+			while(low < high) {
+				int mid = (low + high) >>> 1;
+				if(this.offsets[mid] <= value) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		// index du premier offset plus grand ou égal à value
+		public int lowerBound(int value) {
+			sort();
+			int low = 0;
+			int high = this.size;
+			while(low < high) {
+				int mid = (low + high) >>> 1;
+				if(this.offsets[mid] < value) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		private void sort() {
+			if(!this.sorted) {
+				Arrays.sort(this.offsets, 0, this.size);
+				this.sorted = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package assembler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import assembler.syntax.lexer.Lexer;
+import assembler.syntax.lexer.LexerException;
+import assembler.syntax.node.Start;
+import assembler.syntax.parser.Parser;
+import assembler.syntax.parser.ParserException;
+
+// point d'entrée pour utiliser l'assembleur comme librairie: tout se fait
+// en mémoire, sans écrire dans results/ ni dans la console et sans
+// terminer le processus
+
+public final class Assembler {
+
+	private Assembler() {
+	}
+
+	public static AssemblyResult assemble(CharSequence source, AssemblerOptions options) {
+		return assemble(source, options, null);
+	}
+
+	// sectionCache est null si l'assemblage n'est pas incrémental
+	static AssemblyResult assemble(CharSequence source, AssemblerOptions options, SectionCache sectionCache) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream out = newPrintStream(buffer);
+		List<String> diagnostics = new ArrayList<>();
+		CompilationEngine compiler = null;
+
+		try {
+			compiler = compile(new SourceReader(source), "", options.getMaxMacroDepth(), out,
+					sectionCache);
+		}
+		catch (ParserException e) {
+			diagnostics.add("SYNTAX ERROR: " + e.getMessage());
+		}
+		catch (LexerException e) {
+			diagnostics.add("LEXICAL ERROR: " + e.getMessage());
+		}
+		catch (IOException e) {
+			diagnostics.add("I/O ERROR: " + e.getMessage());
+		}
+		catch (InterpreterException e) {
+			diagnostics.add("INTERPRETATION ERROR: " + e.getMessage());
+		}
+		catch (SemanticException e) {
+			diagnostics.add("SEMANTIC ERROR: " + e.getMessage());
+		}
+		catch (CompilationException e) {
+			diagnostics.add("COMPILATION ERROR: " + e.getMessage());
+		}
+		catch (RuntimeException | StackOverflowError e) {
+			// exception imprévue (e.g. division par 0), l'appelant reçoit un échec
+			compiler = null;
+			diagnostics.add("ERROR: " + e);
+		}
+		out.close();
+		String output = toString(buffer);
+
+		if(compiler == null) {
+			return new AssemblyResult(new byte[0], new int[0], new int[0], Collections.emptyMap(),
+					Collections.emptyList(), diagnostics, output);
+		}
+
+		RomImage image = compiler.getImage();
+		int[] segmentOffsets = new int[image.getNumSegments()];
+		int[] segmentLengths = new int[image.getNumSegments()];
+		for(int segment = 0; segment < image.getNumSegments(); segment++) {
+			segmentOffsets[segment] = image.getSegmentOffset(segment);
+			segmentLengths[segment] = image.getSegmentLength(segment);
+		}
+
+		return new AssemblyResult(image.toByteArray(), segmentOffsets, segmentLengths, compiler.getSymbols(),
+				compiler.getListing(), diagnostics, output);
+	}
+
+	// résultat d'un assemblage qui n'a pas pu commencer (e.g. fichier introuvable)
+	public static AssemblyResult failure(String diagnostic) {
+		return new AssemblyResult(new byte[0], new int[0], new int[0], Collections.emptyMap(),
+				Collections.emptyList(), Collections.singletonList(diagnostic), "");
+	}
+
+	// toutes les phases, du texte source jusqu'à l'image dont les corrections
+	// sont résolues. Les fichiers de results/ ne sont pas écrits
+	static CompilationEngine compile(Reader reader, String filename, int maxMacroDepth, PrintStream out)
+			throws ParserException, LexerException, IOException {
+		return compile(reader, filename, maxMacroDepth, out, null);
+	}
+
+	static CompilationEngine compile(Reader reader, String filename, int maxMacroDepth, PrintStream out,
+			SectionCache sectionCache) throws ParserException, LexerException, IOException {
+		return compile(parse(reader), filename, maxMacroDepth, out, sectionCache);
+	}
+
+	// un SourceReader est découpé par TokenStreamLexer, un autre Reader par le lexer de SableCC
+	static Start parse(Reader reader) throws ParserException, LexerException, IOException {
+		Lexer lexer = reader instanceof SourceReader ? new TokenStreamLexer((SourceReader)reader)
+				: new Lexer(new PushbackReader(reader, 2));
+		Parser parser = new Parser(lexer);
+
+		return parser.parse();
+	}
+
+	// les phases qui suivent le parser, sur un arbre parsé ou lu de la cache
+	static CompilationEngine compile(Start tree, String filename, int maxMacroDepth, PrintStream out,
+			SectionCache sectionCache) {
+		CompilationEngine compiler = interpret(tree, analyze(tree), filename, maxMacroDepth, out, sectionCache);
+		compiler.resolve();
+		return compiler;
+	}
+
+	// les deux phases sémantiques, le pliage des constantes et la compilation des blocs
+	static SemanticInfo analyze(Start tree) {
+		SemanticInfo semantics = new SemanticInfo();
+
+		tree.apply(new SemanticAnalysisPhase1(semantics));
+
+		tree.apply(new SemanticAnalysisPhase2(semantics));
+
+		tree.apply(new ConstantFolder(semantics));
+
+		tree.apply(new BytecodeCompiler(semantics));
+		return semantics;
+	}
+
+	// interprète l'arbre analysé; les fixups du CompilationEngine retourné ne sont pas encore résolus
+	static CompilationEngine interpret(Start tree, SemanticInfo semantics, String filename, int maxMacroDepth,
+			PrintStream out, SectionCache sectionCache) {
+		RomImage image = new RomImage();
+
+		List<Fixup> fixups = new ArrayList<>();
+
+		InterpreterEngine interpreter = new InterpreterEngine(semantics, image, fixups);
+		interpreter.setMaxMacroDepth(maxMacroDepth);
+		interpreter.setOutput(out);
+		interpreter.setSectionCache(sectionCache);
+		tree.apply(interpreter);
+
+		CompilationEngine compiler = new CompilationEngine(image, fixups, interpreter.getMainFrame(), filename);
+		compiler.setOutput(out);
+		return compiler;
+	}
+
+	static PrintStream newPrintStream(ByteArrayOutputStream buffer) {
+		try {
+			return new PrintStream(buffer, true, "UTF-8");
+		}
+		catch (UnsupportedEncodingException e) {
+			// UTF-8 est toujours supporté
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String toString(ByteArrayOutputStream buffer) {
+		try {
+			return buffer.toString("UTF-8");
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,307 @@
+package assembler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// serveur d'assemblage sur un port TCP local. La JVM reste chaude entre
+// deux requêtes (tables du parser et des opcodes chargées, code déjà
+// compilé par le JIT) et chaque connexion est servie par son propre thread.
+// Au-delà de DAEMON_MAX_CONNECTIONS connexions ouvertes, une nouvelle
+// connexion reçoit une réponse d'erreur et est fermée aussitôt.
+//
+// Une requête et une réponse sont une suite de champs terminée par la
+// ligne "end". Un champ est une ligne "<nom> <longueur>" suivie de
+// exactement <longueur> octets. Une connexion peut envoyer plusieurs requêtes.
+//
+// requête: "path" (fichier source) ou "source" (texte), "max-macro-depth"
+// réponse: "status" (ok ou error), "diagnostic" (un par erreur), "symbol"
+// ("<nom> <offset>"), "listing", "output" (print) et "image" (binaire)
+//
+// Les requêtes "path" sont incrémentales: les sections inchangées depuis
+// la dernière requête pour le même fichier sont rejouées. Seuls les
+// fichiers des dernières requêtes gardent leur assembleur incrémental
+//
+// Un champ trop long est sauté et donne une réponse d'erreur. Une requête
+// dont le format est invalide (e.g. longueur négative) donne une réponse
+// d'erreur, puis la connexion est fermée
+
+public class AssemblerDaemon {
+
+	private int port;
+
+	// une place par connexion servie
+	private Semaphore connections = new Semaphore(Consts.DAEMON_MAX_CONNECTIONS);
+
+	// un assembleur incrémental par fichier source, le fichier utilisé
+	// le moins récemment est oublié au-delà de DAEMON_MAX_FILES
+	private Map<String, IncrementalAssembler> assemblers = Collections.synchronizedMap(
+			new LinkedHashMap<String, IncrementalAssembler>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, IncrementalAssembler> eldest) {
+					return size() > Consts.DAEMON_MAX_FILES;
+				}
+			});
+
+	public AssemblerDaemon(int port) {
+		this.port = port;
+	}
+
+	public void run() throws IOException {
+		ExecutorService pool = Executors.newCachedThreadPool();
+
+		try(ServerSocket server = new ServerSocket(this.port, 50, InetAddress.getLoopbackAddress())) {
+			System.out.println("Listening on " + server.getLocalSocketAddress());
+
+			while(true) {
+				Socket socket = server.accept();
+				if(!this.connections.tryAcquire()) {
+					reject(socket);
+					continue;
+				}
+				pool.execute(() -> {
+					try {
+						serve(socket);
+					}
+					finally {
+						this.connections.release();
+					}
+				});
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	// répond une erreur à une connexion qui ne peut pas être servie, puis la ferme
+	private void reject(Socket socket) {
+		try(Socket client = socket) {
+			OutputStream out = new BufferedOutputStream(client.getOutputStream());
+			writeResult(Assembler.failure("Daemon is busy, " + Consts.DAEMON_MAX_CONNECTIONS
+					+ " connections are already open"), out);
+			out.flush();
+		}
+		catch(IOException e) {
+			// connexion perdue, rien à faire
+		}
+	}
+
+	// sert les requêtes d'une connexion jusqu'à ce que le client la ferme
+	private void serve(Socket socket) {
+		try(Socket client = socket) {
+			InputStream in = new BufferedInputStream(client.getInputStream());
+			OutputStream out = new BufferedOutputStream(client.getOutputStream());
+
+			while(true) {
+				AssemblyResult result;
+				try {
+					String line = readLine(in);
+					if(line == null) {
+						return;
+					}
+					result = handleRequest(line, in);
+				}
+				catch(InvalidRequestException e) {
+					// la suite du flux ne peut plus être lue, on répond puis on ferme
+					writeResult(Assembler.failure(e.getMessage()), out);
+					out.flush();
+					return;
+				}
+				writeResult(result, out);
+				out.flush();
+			}
+		}
+		catch(IOException e) {
+			// connexion perdue, on ferme la connexion
+		}
+	}
+
+	// lit les champs d'une requête (la première ligne est déjà lue) puis l'assemble
+	private AssemblyResult handleRequest(String line, InputStream in) throws IOException {
+		AssemblerOptions options = new AssemblerOptions();
+		String source = null;
+		String path = null;
+		String error = null;
+
+		while(!line.equals("end")) {
+			int space = line.lastIndexOf(' ');
+			if(space < 0) {
+				throw new InvalidRequestException("Invalid field " + line);
+			}
+
+			String name = line.substring(0, space);
+			int length;
+			try {
+				length = Integer.parseInt(line.substring(space + 1));
+			}
+			catch(NumberFormatException e) {
+				length = -1;
+			}
+			if(length < 0) {
+				throw new InvalidRequestException("Invalid length for field " + name);
+			}
+			if(length > Consts.DAEMON_MAX_FIELD) {
+				skipBytes(in, length);
+				error = "Field " + name + " is larger than " + Consts.DAEMON_MAX_FIELD + " bytes";
+				line = readRequestLine(in);
+				continue;
+			}
+			String value = new String(readBytes(in, length), StandardCharsets.UTF_8);
+
+			if(name.equals("source")) {
+				source = value;
+				path = null;
+			}
+			else if(name.equals("path")) {
+				try {
+					source = new String(Files.readAllBytes(Paths.get(value)), StandardCharsets.UTF_8);
+					path = Paths.get(value).toAbsolutePath().normalize().toString();
+				}
+				catch(IOException e) {
+					error = "The file " + value + " has not been found.";
+				}
+			}
+			else if(name.equals("max-macro-depth")) {
+				int maxMacroDepth;
+				try {
+					maxMacroDepth = Integer.parseInt(value);
+				}
+				catch(NumberFormatException e) {
+					maxMacroDepth = -1;
+				}
+				if(maxMacroDepth <= 0) {
+					error = "Invalid macro depth: " + value;
+				}
+				else {
+					options.setMaxMacroDepth(maxMacroDepth);
+				}
+			}
+			else {
+				error = "Unknown request field " + name;
+			}
+
+			line = readRequestLine(in);
+		}
+
+		if(error == null && source == null) {
+			error = "Request has no path or source";
+		}
+		if(error != null) {
+			return Assembler.failure(error);
+		}
+		if(path != null) {
+			return this.assemblers.computeIfAbsent(path, key -> new IncrementalAssembler())
+					.assemble(source, options);
+		}
+		return Assembler.assemble(source, options);
+	}
+
+	private void writeResult(AssemblyResult result, OutputStream out) throws IOException {
+		writeField(out, "status", result.isSuccess() ? "ok" : "error");
+
+		for(String diagnostic: result.getDiagnostics()) {
+			writeField(out, "diagnostic", diagnostic);
+		}
+		for(Map.Entry<String, Integer> symbol: result.getSymbols().entrySet()) {
+			writeField(out, "symbol", symbol.getKey() + " " + symbol.getValue());
+		}
+
+		StringBuilder listing = new StringBuilder();
+		for(String line: result.getListing()) {
+			listing.append(line).append('\n');
+		}
+		writeField(out, "listing", listing.toString());
+		writeField(out, "output", result.getOutput());
+		writeField(out, "image", result.getImage());
+
+		out.write("end\n".getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void writeField(OutputStream out, String name, String value) throws IOException {
+		writeField(out, name, value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void writeField(OutputStream out, String name, byte[] value) throws IOException {
+		out.write((name + " " + value.length + "\n").getBytes(StandardCharsets.UTF_8));
+		out.write(value);
+	}
+
+	// ligne terminée par '\n', null à la fin du flux
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b = in.read();
+		if(b < 0) {
+			return null;
+		}
+		while(b >= 0 && b != '\n') {
+			if(line.size() == Consts.DAEMON_MAX_LINE) {
+				throw new InvalidRequestException("Request line is longer than " + Consts.DAEMON_MAX_LINE + " bytes");
+			}
+			line.write(b);
+			b = in.read();
+		}
+		return new String(line.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	// ligne dans une requête, le flux ne peut pas finir avant "end"
+	private static String readRequestLine(InputStream in) throws IOException {
+		String line = readLine(in);
+		if(line == null) {
+			throw new EOFException();
+		}
+		return line;
+	}
+
+	private static void skipBytes(InputStream in, int length) throws IOException {
+		long skipped = 0;
+		while(skipped < length) {
+			long count = in.skip(length - skipped);
+			if(count <= 0) {
+				if(in.read() < 0) {
+					throw new EOFException();
+				}
+				count = 1;
+			}
+			skipped += count;
+		}
+	}
+
+	private static byte[] readBytes(InputStream in, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		int read = 0;
+		while(read < length) {
+			int count = in.read(bytes, read, length - read);
+			if(count < 0) {
+				throw new EOFException();
+			}
+			read += count;
+		}
+		return bytes;
+	}
+
+	// requête dont le format ne permet pas de lire la suite de la connexion
+	private static class InvalidRequestException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public InvalidRequestException(String message) {
+			super(message);
+		}
+	}
+}
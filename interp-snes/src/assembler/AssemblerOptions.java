@@ -0,0 +1,17 @@
+package assembler;
+
+// options d'un appel à Assembler.assemble
+
+public class AssemblerOptions {
+
+	// nombre maximal de macros imbriqués
+	private int maxMacroDepth = Consts.MAX_MACRO_DEPTH;
+
+	public int getMaxMacroDepth() {
+		return this.maxMacroDepth;
+	}
+
+	public void setMaxMacroDepth(int maxMacroDepth) {
+		this.maxMacroDepth = maxMacroDepth;
+	}
+}
@@ -0,0 +1,114 @@
+package assembler;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// réassemble les fichiers sources vers results/ chaque fois qu'ils sont
+// sauvegardés. La JVM reste chaude et chaque fichier garde ses sections
+// du build précédent (voir SectionCache), seules les sections changées
+// sont exécutées de nouveau. Les sauvegardes rapprochées (un éditeur écrit
+// souvent le fichier en plusieurs fois) ne donnent qu'un seul build
+//
+// Seule l'interprétation est incrémentale: chaque build relit le fichier,
+// refait le parse (l'AstCache ne sert que si le contenu n'a pas changé),
+// les deux phases sémantiques et la compilation des blocs sur tout
+// l'arbre, puis résout tous les fixups. Pour un gros fichier ces phases
+// dominent le temps d'un rebuild (voir bench.sh)
+
+public class AssemblerWatcher {
+
+	// délai sans modification avant de réassembler, en millisecondes
+	private static final int DEBOUNCE_MS = 50;
+
+	private int maxMacroDepth;
+
+	// cache des arbres syntaxiques, null si elle n'est pas utilisée
+	private AstCache astCache;
+
+	// fichiers écrits à chaque build
+	private OutputOptions outputOptions;
+
+	// sections du build précédent de chaque fichier surveillé
+	private Map<Path, SectionCache> caches = new LinkedHashMap<>();
+
+	public AssemblerWatcher(int maxMacroDepth, AstCache astCache, OutputOptions outputOptions) {
+		this.maxMacroDepth = maxMacroDepth;
+		this.astCache = astCache;
+		this.outputOptions = outputOptions;
+	}
+
+	public void addFile(String file) {
+		this.caches.put(Paths.get(file).toAbsolutePath().normalize(), new SectionCache());
+	}
+
+	public void run() throws IOException, InterruptedException {
+		try(WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			// on surveille les dossiers, un éditeur peut remplacer le fichier
+			Map<WatchKey, Path> dirs = new HashMap<>();
+			for(Path file: this.caches.keySet()) {
+				Path dir = file.getParent();
+				if(!dirs.containsValue(dir)) {
+					dirs.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_MODIFY), dir);
+				}
+			}
+
+			for(Path file: this.caches.keySet()) {
+				rebuild(file);
+			}
+			System.out.println("Watching " + this.caches.size() + " file(s), Ctrl-C to stop");
+
+			while(true) {
+				// attend une modification, puis qu'il n'y en ait plus pendant DEBOUNCE_MS
+				Set<Path> changed = new LinkedHashSet<>();
+				WatchKey key = watcher.take();
+				while(key != null) {
+					Path dir = dirs.get(key);
+					for(WatchEvent<?> event: key.pollEvents()) {
+						if(event.kind() != StandardWatchEventKinds.OVERFLOW) {
+							Path file = dir.resolve((Path)event.context());
+							if(this.caches.containsKey(file)) {
+								changed.add(file);
+							}
+						}
+						else {
+							changed.addAll(this.caches.keySet());
+						}
+					}
+					key.reset();
+					key = watcher.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+				}
+
+				for(Path file: changed) {
+					rebuild(file);
+				}
+			}
+		}
+	}
+
+	private void rebuild(Path file) {
+		long start = System.nanoTime();
+		String error = Interp.assemble(file.toString(), this.maxMacroDepth, System.out, this.caches.get(file),
+				this.astCache, this.outputOptions);
+		long time = (System.nanoTime() - start) / 1000000;
+
+		if(error == null) {
+			System.out.println(file + ": OK (" + time + " ms)");
+		}
+		else {
+			System.out.println(file + ": " + error + " (" + time + " ms)");
+		}
+	}
+}
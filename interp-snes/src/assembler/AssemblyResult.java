@@ -0,0 +1,79 @@
+package assembler;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// résultat immuable d'un appel à Assembler.assemble. Si l'assemblage a
+// échoué, diagnostics contient l'erreur et l'image est vide
+
+public class AssemblyResult {
+
+	private byte[] image;
+	private int[] segmentOffsets;
+	private int[] segmentLengths;
+
+	// offset des labels du programme principal
+	private Map<String, Integer> symbols;
+
+	// lignes du listing (e.g. "000000: A5 10")
+	private List<String> listing;
+
+	// messages d'erreur (e.g. "SYNTAX ERROR: [1,5] ...")
+	private List<String> diagnostics;
+
+	// sortie des instructions print et println
+	private String output;
+
+	public AssemblyResult(byte[] image, int[] segmentOffsets, int[] segmentLengths, Map<String, Integer> symbols,
+			List<String> listing, List<String> diagnostics, String output) {
+		this.image = image;
+		this.segmentOffsets = segmentOffsets;
+		this.segmentLengths = segmentLengths;
+		this.symbols = Collections.unmodifiableMap(symbols);
+		this.listing = Collections.unmodifiableList(listing);
+		this.diagnostics = Collections.unmodifiableList(diagnostics);
+		this.output = output;
+	}
+
+	public boolean isSuccess() {
+		return this.diagnostics.isEmpty();
+	}
+
+	// copie de l'image, de l'offset 0 jusqu'au dernier octet écrit
+	public byte[] getImage() {
+		return this.image.clone();
+	}
+
+	public int getImageSize() {
+		return this.image.length;
+	}
+
+	public int getNumSegments() {
+		return this.segmentOffsets.length;
+	}
+
+	public int getSegmentOffset(int segment) {
+		return this.segmentOffsets[segment];
+	}
+
+	public int getSegmentLength(int segment) {
+		return this.segmentLengths[segment];
+	}
+
+	public Map<String, Integer> getSymbols() {
+		return this.symbols;
+	}
+
+	public List<String> getListing() {
+		return this.listing;
+	}
+
+	public List<String> getDiagnostics() {
+		return this.diagnostics;
+	}
+
+	public String getOutput() {
+		return this.output;
+	}
+}
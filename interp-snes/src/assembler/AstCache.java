@@ -0,0 +1,427 @@
+package assembler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import assembler.syntax.lexer.Lexer;
+import assembler.syntax.lexer.LexerException;
+import assembler.syntax.node.*;
+import assembler.syntax.parser.Parser;
+import assembler.syntax.parser.ParserException;
+
+// cache sur disque des arbres syntaxiques, pour ne pas refaire le lexer et
+// le parser d'un fichier qui n'a pas changé (e.g. une librairie de macros).
+// Une entrée est nommée par l'empreinte SHA-256 de la grammaire (tables du
+// lexer et du parser) et du contenu du fichier, et elle est lue en mémoire
+// mappée. Une entrée invalide (tronquée, CRC faux, classes de noeuds
+// différentes) est ignorée et remplacée.
+//
+// format: "ASTC", version, empreinte du fichier, puis l'arbre en préordre.
+// Une chaîne (nom de classe ou texte de token) est écrite à sa première
+// utilisation puis désignée par son index. Une classe de noeud est décrite
+// (nom de ses enfants) à sa première utilisation. Le CRC32 de tout ce qui
+// précède termine l'entrée
+
+public class AstCache {
+
+	private static final int MAGIC = 0x41535443;
+	private static final int VERSION = 1;
+
+	private static final byte NULL = 0;
+	private static final byte TOKEN = 1;
+	private static final byte NODE = 2;
+
+	// une chaîne ou une classe pas encore vue dans l'entrée
+	private static final int NEW = -1;
+
+	// enfants de chaque classe de noeud, dans l'ordre de la grammaire
+	private static final Map<Class<?>, NodeLayout> layouts = new ConcurrentHashMap<>();
+
+	private static volatile String grammarDigest;
+
+	private Path dir;
+
+	public AstCache(Path dir) {
+		this.dir = dir;
+	}
+
+	// arbre du fichier source, depuis la cache si possible
+	public Start parse(byte[] source) throws ParserException, LexerException, IOException {
+		String digest = getDigest(source);
+		Path file = this.dir.resolve(digest + ".ast");
+
+		if(Files.exists(file)) {
+			Start tree = read(file, digest);
+			if(tree != null) {
+				return tree;
+			}
+		}
+
+		Start tree = Assembler.parse(SourceReader.decode(ByteBuffer.wrap(source)));
+		write(file, digest, tree);
+		return tree;
+	}
+
+	private static String getDigest(byte[] source) {
+		MessageDigest digest = newDigest();
+		digest.update(getGrammarDigest().getBytes(StandardCharsets.UTF_8));
+		digest.update(source);
+		return toHex(digest.digest());
+	}
+
+	// empreinte des tables générées par SableCC, qui changent avec la grammaire
+	private static String getGrammarDigest() {
+		if(grammarDigest == null) {
+			MessageDigest digest = newDigest();
+			digest.update(("ASTC" + VERSION).getBytes(StandardCharsets.UTF_8));
+			for(InputStream table: new InputStream[] {
+					Lexer.class.getResourceAsStream("lexer.dat"), Parser.class.getResourceAsStream("parser.dat")}) {
+				if(table != null) {
+					try(InputStream in = table) {
+						byte[] buffer = new byte[8192];
+						int length;
+						while((length = in.read(buffer)) > 0) {
+							digest.update(buffer, 0, length);
+						}
+					}
+					catch(IOException e) {
+						// sans la table, seule la description des classes valide l'entrée
+					}
+				}
+			}
+			grammarDigest = toHex(digest.digest());
+		}
+		return grammarDigest;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e) {
+			// SHA-256 est toujours disponible
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for(byte b: bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	// lit une entrée, retourne null si elle est invalide
+	private static Start read(Path file, String digest) {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if(channel.size() < 12 || channel.size() > Integer.MAX_VALUE) {
+				return null;
+			}
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			// le CRC32 couvre tout sauf ses propres 8 octets
+			CRC32 crc = new CRC32();
+			ByteBuffer content = buffer.duplicate();
+			content.limit(buffer.limit() - 8);
+			crc.update(content);
+			if(crc.getValue() != buffer.getLong(buffer.limit() - 8)) {
+				return null;
+			}
+
+			TreeReader reader = new TreeReader(buffer);
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !reader.readString().equals(digest)) {
+				return null;
+			}
+
+			PProg prog = (PProg)reader.readNode();
+			EOF eof = (EOF)reader.readNode();
+			if(buffer.position() != buffer.limit() - 8) {
+				return null;
+			}
+			return new Start(prog, eof);
+		}
+		catch(IOException | ReflectiveOperationException | RuntimeException e) {
+			// entrée corrompue ou écrite par une autre version des classes de noeuds
+			return null;
+		}
+	}
+
+	// écrit l'entrée dans un fichier temporaire puis la renomme, un autre
+	// processus (ou thread du batch) ne voit donc jamais une entrée incomplète
+	private void write(Path file, String digest, Start tree) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			TreeWriter writer = new TreeWriter(out);
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writer.writeString(digest);
+			writer.writeNode(tree.getPProg());
+			writer.writeNode(tree.getEOF());
+
+			CRC32 crc = new CRC32();
+			crc.update(bytes.toByteArray());
+			out.writeLong(crc.getValue());
+			out.flush();
+
+			Files.createDirectories(this.dir);
+			Path temp = Files.createTempFile(this.dir, digest, ".tmp");
+			try {
+				Files.write(temp, bytes.toByteArray());
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+		catch(IOException | ReflectiveOperationException e) {
+			// la cache est une optimisation, le build continue sans elle
+		}
+	}
+
+	private static NodeLayout getLayout(Class<?> nodeClass) throws ReflectiveOperationException {
+		NodeLayout layout = layouts.get(nodeClass);
+		if(layout == null) {
+			layout = new NodeLayout(nodeClass);
+			layouts.put(nodeClass, layout);
+		}
+		return layout;
+	}
+
+	// enfants d'une classe de noeud générée par SableCC: les champs "_nom_"
+	// dans l'ordre de déclaration, modifiés par leur setter qui met à jour
+	// le parent (e.g. _macroDecl_ et setMacroDecl)
+	private static class NodeLayout {
+		private List<Field> fields = new ArrayList<>();
+		private List<Method> setters = new ArrayList<>();
+		private String description;
+
+		public NodeLayout(Class<?> nodeClass) throws ReflectiveOperationException {
+			StringBuilder description = new StringBuilder(nodeClass.getName());
+
+			for(Field field: nodeClass.getDeclaredFields()) {
+				String name = field.getName();
+				if(Modifier.isStatic(field.getModifiers()) || !name.startsWith("_") || !name.endsWith("_")
+						|| name.length() < 3) {
+					continue;
+				}
+				field.setAccessible(true);
+				this.fields.add(field);
+
+				String child = name.substring(1, name.length() - 1);
+				this.setters.add(getSetter(nodeClass, "set" + child.replace("_", "")));
+
+				description.append(' ').append(child);
+				if(isList(field)) {
+					description.append('*');
+				}
+			}
+			this.description = description.toString();
+		}
+
+		private static Method getSetter(Class<?> nodeClass, String name) throws NoSuchMethodException {
+			for(Method method: nodeClass.getMethods()) {
+				if(method.getName().equalsIgnoreCase(name) && method.getParameterCount() == 1) {
+					return method;
+				}
+			}
+			throw new NoSuchMethodException(nodeClass.getName() + "." + name);
+		}
+
+		public boolean isList(int child) {
+			return isList(this.fields.get(child));
+		}
+
+		private static boolean isList(Field field) {
+			return List.class.isAssignableFrom(field.getType());
+		}
+	}
+
+	private static class TreeWriter {
+		private DataOutputStream out;
+		private Map<String, Integer> strings = new HashMap<>();
+		private Map<Class<?>, Integer> classes = new HashMap<>();
+
+		public TreeWriter(DataOutputStream out) {
+			this.out = out;
+		}
+
+		public void writeString(String string) throws IOException {
+			Integer index = this.strings.get(string);
+			if(index != null) {
+				this.out.writeInt(index);
+				return;
+			}
+			this.strings.put(string, this.strings.size());
+
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			this.out.writeInt(NEW);
+			this.out.writeInt(bytes.length);
+			this.out.write(bytes);
+		}
+
+		public void writeNode(Node node) throws IOException, ReflectiveOperationException {
+			if(node == null) {
+				this.out.writeByte(NULL);
+			}
+			else if(node instanceof Token) {
+				Token token = (Token)node;
+				this.out.writeByte(TOKEN);
+				writeClass(node.getClass());
+				writeString(token.getText());
+				this.out.writeInt(token.getLine());
+				this.out.writeInt(token.getPos());
+			}
+			else {
+				NodeLayout layout = getLayout(node.getClass());
+				this.out.writeByte(NODE);
+				writeClass(node.getClass());
+
+				for(int child = 0; child < layout.fields.size(); child++) {
+					Object value = layout.fields.get(child).get(node);
+					if(layout.isList(child)) {
+						List<?> list = (List<?>)value;
+						this.out.writeInt(list.size());
+						for(Object element: list) {
+							writeNode((Node)element);
+						}
+					}
+					else {
+						writeNode((Node)value);
+					}
+				}
+			}
+		}
+
+		// la première fois, le nom de la classe et la description de ses enfants
+		private void writeClass(Class<?> nodeClass) throws IOException, ReflectiveOperationException {
+			Integer index = this.classes.get(nodeClass);
+			if(index != null) {
+				this.out.writeInt(index);
+				return;
+			}
+			this.classes.put(nodeClass, this.classes.size());
+
+			this.out.writeInt(NEW);
+			writeString(nodeClass.getName());
+			writeString(Token.class.isAssignableFrom(nodeClass) ? "" : getLayout(nodeClass).description);
+		}
+	}
+
+	private static class TreeReader {
+		private ByteBuffer in;
+		private List<String> strings = new ArrayList<>();
+		private List<Class<?>> classes = new ArrayList<>();
+
+		public TreeReader(ByteBuffer in) {
+			this.in = in;
+		}
+
+		public String readString() {
+			int index = this.in.getInt();
+			if(index != NEW) {
+				return this.strings.get(index);
+			}
+
+			byte[] bytes = new byte[this.in.getInt()];
+			this.in.get(bytes);
+			String string = new String(bytes, StandardCharsets.UTF_8);
+			this.strings.add(string);
+			return string;
+		}
+
+		public Node readNode() throws ReflectiveOperationException {
+			byte kind = this.in.get();
+			if(kind == NULL) {
+				return null;
+			}
+
+			Class<?> nodeClass = readClass();
+			if(kind == TOKEN) {
+				String text = readString();
+				Token token = newToken(nodeClass, text);
+				token.setLine(this.in.getInt());
+				token.setPos(this.in.getInt());
+				return token;
+			}
+			if(kind != NODE) {
+				throw new IllegalStateException("Invalid node kind " + kind);
+			}
+
+			NodeLayout layout = getLayout(nodeClass);
+			Node node = (Node)nodeClass.getConstructor().newInstance();
+
+			for(int child = 0; child < layout.fields.size(); child++) {
+				Object value;
+				if(layout.isList(child)) {
+					int size = this.in.getInt();
+					List<Node> list = new LinkedList<>();
+					for(int i = 0; i < size; i++) {
+						list.add(readNode());
+					}
+					value = list;
+				}
+				else {
+					value = readNode();
+				}
+				layout.setters.get(child).invoke(node, value);
+			}
+			return node;
+		}
+
+		// un token de texte fixe n'a qu'un constructeur sans texte
+		private static Token newToken(Class<?> nodeClass, String text) throws ReflectiveOperationException {
+			try {
+				return (Token)nodeClass.getConstructor(String.class).newInstance(text);
+			}
+			catch(NoSuchMethodException e) {
+				Token token = (Token)nodeClass.getConstructor().newInstance();
+				if(!token.getText().equals(text)) {
+					throw new IllegalStateException("Invalid text for " + nodeClass.getName());
+				}
+				return token;
+			}
+		}
+
+		// la description doit être celle des classes chargées
+		private Class<?> readClass() throws ReflectiveOperationException {
+			int index = this.in.getInt();
+			if(index != NEW) {
+				return this.classes.get(index);
+			}
+
+			// la classe n'est pas initialisée avant d'avoir été validée
+			Class<?> nodeClass = Class.forName(readString(), false, AstCache.class.getClassLoader());
+			String description = readString();
+			if(!Node.class.isAssignableFrom(nodeClass) || (!Token.class.isAssignableFrom(nodeClass)
+					&& !getLayout(nodeClass).description.equals(description))) {
+				throw new IllegalStateException("Node class " + nodeClass.getName() + " has changed");
+			}
+			this.classes.add(nodeClass);
+			return nodeClass;
+		}
+	}
+}
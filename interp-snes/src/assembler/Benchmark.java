@@ -0,0 +1,69 @@
+package assembler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+
+import assembler.syntax.lexer.LexerException;
+import assembler.syntax.node.Start;
+import assembler.syntax.parser.ParserException;
+
+// mesure dans une seule JVM le temps de chaque phase de l'assemblage d'un
+// fichier: parse, analyse sémantique, interprétation et résolution des
+// fixups par le CompilationEngine. Chaque phase est refaite plusieurs fois
+// et on garde le meilleur temps, pour ne pas compter le démarrage de la JVM
+// ni la compilation JIT. Utilisé par bench.sh
+
+public class Benchmark {
+
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws IOException, ParserException, LexerException {
+		if(args.length < 2) {
+			System.err.println("usage: Benchmark <file> <instructions> [runs]");
+			System.exit(1);
+		}
+
+		String file = args[0];
+		long instructions = Long.parseLong(args[1]);
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : RUNS;
+
+		PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+
+		long parse = Long.MAX_VALUE;
+		long analyze = Long.MAX_VALUE;
+		long interpret = Long.MAX_VALUE;
+		long resolve = Long.MAX_VALUE;
+		for(int i = 0; i < runs; i++) {
+			long start = System.nanoTime();
+			Start tree;
+			try(SourceReader reader = SourceReader.open(Paths.get(file))) {
+				tree = Assembler.parse(reader);
+			}
+			long parsed = System.nanoTime();
+			SemanticInfo semantics = Assembler.analyze(tree);
+			long analyzed = System.nanoTime();
+			CompilationEngine compiler = Assembler.interpret(tree, semantics, "", Consts.MAX_MACRO_DEPTH, out, null);
+			long interpreted = System.nanoTime();
+			compiler.resolve();
+			long resolved = System.nanoTime();
+
+			parse = Math.min(parse, parsed - start);
+			analyze = Math.min(analyze, analyzed - parsed);
+			interpret = Math.min(interpret, interpreted - analyzed);
+			resolve = Math.min(resolve, resolved - interpreted);
+		}
+
+		System.out.println("BENCH " + instructions + " instructions:");
+		printPhase("parse", parse, instructions);
+		printPhase("analyze", analyze, instructions);
+		printPhase("interpret", interpret, instructions);
+		printPhase("resolve", resolve, instructions);
+	}
+
+	private static void printPhase(String phase, long nanos, long instructions) {
+		System.out.println(String.format("\t%-10s %8d ms (%d ns/instruction)", phase, nanos / 1000000,
+				nanos / Math.max(instructions, 1)));
+	}
+}
@@ -0,0 +1,28 @@
+package assembler;
+
+// format du fichier binaire écrit dans results/
+
+public enum BinaryFormat {
+	// image au complet dans nom.bin, les trous sont remplis de 0
+	FLAT(".bin"),
+	// même contenu que FLAT, mais seuls les octets émis sont écrits: les
+	// trous restent des trous du fichier et ne prennent pas de place sur disque
+	SPARSE(".bin"),
+	// nom.seg: seulement les plages émises, voir RomImage.writeSegments
+	SEGMENTS(".seg"),
+	// patchs des octets émis, contre la ROM de base s'il y en a une
+	IPS(".ips"),
+	BPS(".bps"),
+	// aucun fichier binaire (e.g. seulement le listing ou les symboles)
+	NONE("");
+
+	private String extension;
+
+	private BinaryFormat(String extension) {
+		this.extension = extension;
+	}
+
+	public String getExtension() {
+		return this.extension;
+	}
+}
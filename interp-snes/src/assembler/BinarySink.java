@@ -0,0 +1,216 @@
+package assembler;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// fichier binaire results/<nom> dans le format choisi (voir BinaryFormat).
+// Les formats FLAT et SPARSE sont écrits segment par segment: les segments
+// qui se suivent sont regroupés dans un tampon, écrit à sa position dans le
+// fichier quand un segment ne suit pas le précédent. Un segment écrit après
+// un autre au même offset le remplace, comme dans l'image.
+//
+// Les autres formats ont besoin des plages triées de l'image complète et
+// sont écrits par close
+
+public class BinarySink implements OutputSink {
+
+	// taille du tampon des segments qui se suivent
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private String filename;
+	private OutputOptions outputOptions;
+
+	// fichier FLAT ou SPARSE, ouvert au premier segment
+	private FileChannel channel;
+	private ByteBuffer buffer;
+
+	// offset du début du tampon dans le fichier
+	private int bufferStart;
+
+	// fin de la partie du fichier déjà écrite ou remplie de 0
+	private long fileEnd;
+
+	public BinarySink(String filename, OutputOptions outputOptions) {
+		this.filename = filename;
+		this.outputOptions = outputOptions;
+	}
+
+	@Override
+	public void segment(RomImage image, int segment) throws IOException {
+		BinaryFormat binaryFormat = this.outputOptions.getBinaryFormat();
+		if(binaryFormat != BinaryFormat.FLAT && binaryFormat != BinaryFormat.SPARSE) {
+			return;
+		}
+		if(this.channel == null) {
+			open(binaryFormat);
+		}
+
+		int offset = image.getSegmentOffset(segment);
+		int length = image.getSegmentLength(segment);
+		if(this.buffer.position() > 0 && offset != this.bufferStart + this.buffer.position()) {
+			flushBuffer();
+		}
+		if(this.buffer.position() == 0) {
+			this.bufferStart = offset;
+		}
+
+		// les octets sont ceux de l'image: un segment remplacé plus loin dans
+		// l'ordre d'émission est écrit avec les octets qui le remplacent
+		while(length > 0) {
+			int count = Math.min(length, this.buffer.remaining());
+			image.copyTo(offset, this.buffer, this.buffer.position(), count);
+			this.buffer.position(this.buffer.position() + count);
+			offset += count;
+			length -= count;
+
+			if(!this.buffer.hasRemaining()) {
+				flushBuffer();
+				this.bufferStart = offset;
+			}
+		}
+	}
+
+	@Override
+	public void close(RomImage image) throws IOException {
+		if(image.getNumSegments() == 0) {
+			return;
+		}
+
+		BinaryFormat binaryFormat = this.outputOptions.getBinaryFormat();
+		if(this.channel != null) {
+			flushBuffer();
+
+			// l'image peut finir par un trou si on lit un fichier de segments
+			if(this.fileEnd < image.getSize()) {
+				if(binaryFormat == BinaryFormat.FLAT) {
+					fillZeros(image.getSize());
+				}
+				else {
+					this.channel.write(ByteBuffer.wrap(new byte[1]), image.getSize() - 1);
+				}
+			}
+			this.channel.close();
+			this.channel = null;
+			return;
+		}
+
+		try {
+			// création du dossier s'il n'existe pas
+			Files.createDirectories(Paths.get("results"));
+
+			String output = "results/" + this.filename + binaryFormat.getExtension();
+
+			switch(binaryFormat) {
+			case SEGMENTS:
+				try(OutputStream segments = new FileOutputStream(output)) {
+					image.writeSegments(segments);
+				}
+				break;
+			case IPS:
+			case BPS:
+				PatchWriter writer = newPatchWriter(image);
+				try(OutputStream patch = new FileOutputStream(output)) {
+					if(binaryFormat == BinaryFormat.IPS) {
+						writer.writeIps(patch);
+					}
+					else {
+						writer.writeBps(patch);
+					}
+				}
+				break;
+			default:
+				break;
+			}
+		} catch (IOException e) {
+			throw new CompilationException("Error writing binary file: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public void abort() throws IOException {
+		if(this.channel != null) {
+			this.channel.close();
+			this.channel = null;
+		}
+	}
+
+	private void open(BinaryFormat binaryFormat) {
+		try {
+			// création du dossier s'il n'existe pas
+			Files.createDirectories(Paths.get("results"));
+			Path path = Paths.get("results/" + this.filename + binaryFormat.getExtension());
+
+			if(binaryFormat == BinaryFormat.SPARSE) {
+				// le fichier doit être nouveau pour que les trous ne soient pas alloués
+				Files.deleteIfExists(path);
+				this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+						StandardOpenOption.WRITE, StandardOpenOption.SPARSE);
+			}
+			else {
+				this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			}
+		} catch (IOException e) {
+			throw new CompilationException("Error writing binary file: " + e.getMessage());
+		}
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.fileEnd = 0;
+	}
+
+	// écrit le tampon à sa position. En FLAT, les trous avant le tampon sont
+	// remplis de 0, en SPARSE ils restent des trous du fichier
+	private void flushBuffer() throws IOException {
+		if(this.buffer.position() == 0) {
+			return;
+		}
+		if(this.outputOptions.getBinaryFormat() == BinaryFormat.FLAT) {
+			fillZeros(this.bufferStart);
+		}
+
+		this.buffer.flip();
+		long position = this.bufferStart;
+		while(this.buffer.hasRemaining()) {
+			position += this.channel.write(this.buffer, position);
+		}
+		this.buffer.clear();
+		this.fileEnd = Math.max(this.fileEnd, position);
+	}
+
+	private void fillZeros(long end) throws IOException {
+		ByteBuffer zeros = ByteBuffer.allocate((int)Math.min(BUFFER_SIZE, Math.max(0, end - this.fileEnd)));
+		while(this.fileEnd < end) {
+			zeros.clear();
+			zeros.limit((int)Math.min(zeros.capacity(), end - this.fileEnd));
+			this.fileEnd += this.channel.write(zeros, this.fileEnd);
+		}
+	}
+
+	// patch à partir des plages émises, contre la ROM de base s'il y en a une
+	private PatchWriter newPatchWriter(RomImage image) {
+		RomMapping mapping = this.outputOptions.getMapping();
+		Path baseRom = this.outputOptions.getBaseRom();
+		if(baseRom == null) {
+			return new PatchWriter(mapping.translate(image, Integer.MAX_VALUE), null);
+		}
+
+		// la base est mappée en mémoire, seules les pages lues sont chargées
+		ByteBuffer base;
+		try(FileChannel channel = FileChannel.open(baseRom, StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new CompilationException("The file " + baseRom + " is too large.");
+			}
+			int header = RomPatch.getHeaderSize(channel.size());
+			base = channel.map(FileChannel.MapMode.READ_ONLY, header, channel.size() - header);
+		} catch (IOException e) {
+			throw new CompilationException("Error reading base ROM " + baseRom + ": " + e.getMessage());
+		}
+		return new PatchWriter(mapping.translate(image, Integer.MAX_VALUE), base);
+	}
+}
@@ -0,0 +1,102 @@
+package assembler;
+
+// code compilé du corps d'un programme main ou d'un macro.
+// Chaque instruction est un opcode suivi de ses opérandes dans le
+// même tableau d'int. Les opérandes a, b et c sont des registres: les
+// variables occupent les premiers registres (leur slot) et les valeurs
+// temporaires des expressions suivent. Un registre a une case entière
+// (entiers et booléens 0/1) et une case Value (chaînes).
+
+public class Bytecode {
+
+	// a = imm
+	public static final int LOADI = 0;
+	// a = constants[k]
+	public static final int LOADK = 1;
+	// a = b (case entière)
+	public static final int MOV = 2;
+	// a = b (case Value)
+	public static final int MOVV = 3;
+
+	// a = b op c
+	public static final int ADD = 4;
+	public static final int SUB = 5;
+	public static final int MUL = 6;
+	public static final int DIV = 7;
+	public static final int MOD = 8;
+	public static final int AND = 9;
+	public static final int OR = 10;
+	public static final int XOR = 11;
+	public static final int SHL = 12;
+	public static final int SHR = 13;
+	public static final int EQ = 14;
+	public static final int NE = 15;
+	public static final int LT = 16;
+	public static final int LE = 17;
+	public static final int GT = 18;
+	public static final int GE = 19;
+
+	// a = !b
+	public static final int NOT = 20;
+
+	// a = b == c pour des chaînes
+	public static final int SEQ = 21;
+	public static final int SNE = 22;
+
+	// a = b + c pour des chaînes
+	public static final int CONCAT = 23;
+
+	// a = chaîne de b
+	public static final int INT_STR = 24;
+	public static final int BOOL_STR = 25;
+	public static final int HEX_STR = 26;
+	public static final int BIN_STR = 27;
+
+	// a = pc()
+	public static final int PC = 28;
+
+	// saut à target, sinon si a est faux
+	public static final int JMP = 29;
+	public static final int JMP_FALSE = 30;
+
+	// print de a, suivi d'un retour de ligne si nl != 0
+	public static final int PRINT_INT = 31;
+	public static final int PRINT_BOOL = 32;
+	public static final int PRINT_STR = 33;
+	public static final int PRINT_NL = 34;
+
+	// instruction d'assembleur constants[k] exécutée par l'interpréteur
+	public static final int EMIT = 35;
+
+	// entrée/sortie du namespace constants[k]
+	public static final int NS_ENTER = 36;
+	public static final int NS_EXIT = 37;
+
+	// appel constants[k] du macro constants[m], les arguments
+	// sont dans les registres consécutifs à partir de a
+	public static final int CALL = 38;
+
+	public static final int RETURN = 39;
+
+	private int[] code;
+	private Object[] constants;
+	private int numRegisters;
+
+	public Bytecode(int[] code, Object[] constants, int numRegisters) {
+		this.code = code;
+		this.constants = constants;
+		this.numRegisters = numRegisters;
+	}
+
+	public int[] getCode() {
+		return this.code;
+	}
+
+	public Object[] getConstants() {
+		return this.constants;
+	}
+
+	public int getNumRegisters() {
+		return this.numRegisters;
+	}
+}
@@ -0,0 +1,602 @@
+package assembler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import assembler.syntax.analysis.DepthFirstAdapter;
+import assembler.syntax.node.*;
+
+// compile le corps du programme main et de chaque macro en bytecode.
+// Les instructions du méta-langage (déclarations, if, while, expressions,
+// print, appels de macro) sont traduites, les instructions d'assembleur
+// deviennent un EMIT qui les fait exécuter par l'interpréteur
+
+public class BytecodeCompiler extends DepthFirstAdapter {
+
+	private SemanticInfo semantics;
+
+	// code du corps en cours de compilation
+	private int[] code;
+	private int codeLength;
+	private List<Object> constants;
+
+	// prochain registre temporaire libre et nombre de registres utilisés
+	private int nextRegister;
+	private int numRegisters;
+
+	// registre où l'expression courante doit mettre son résultat, -1 si libre
+	private int currentTarget;
+
+	// registre et type du résultat de la dernière expression compilée
+	private int resultRegister;
+	private Type resultType;
+
+	// false si le corps courant a un effet de bord qui empêche de
+	// mettre son développement en cache (print, pc(), org, appel de macro)
+	private boolean currentIsCacheable;
+
+	// expressions des arguments de l'appel de macro courant
+	private List<PNegation> currentArgs;
+
+	public BytecodeCompiler(SemanticInfo semantics) {
+		this.semantics = semantics;
+	}
+
+	private void visit(Node node) {
+		if(node != null) {
+			node.apply(this);
+		}
+	}
+
+	// début de la compilation d'un corps dont les variables occupent numSlots registres
+	private void startBody(int numSlots) {
+		this.code = new int[256];
+		this.codeLength = 0;
+		this.constants = new ArrayList<>();
+		this.nextRegister = numSlots;
+		this.numRegisters = numSlots;
+		this.currentTarget = -1;
+		this.currentIsCacheable = true;
+	}
+
+	private Bytecode endBody() {
+		emit(Bytecode.RETURN);
+		return new Bytecode(Arrays.copyOf(this.code, this.codeLength), this.constants.toArray(), this.numRegisters);
+	}
+
+	private void emit(int... values) {
+		if(this.codeLength + values.length > this.code.length) {
+			this.code = Arrays.copyOf(this.code, Math.max(this.code.length * 2, this.codeLength + values.length));
+		}
+		for(int value : values) {
+			this.code[this.codeLength++] = value;
+		}
+	}
+
+	private int addConstant(Object constant) {
+		this.constants.add(constant);
+		return this.constants.size() - 1;
+	}
+
+	private int newRegister() {
+		int register = this.nextRegister++;
+		if(this.nextRegister > this.numRegisters) {
+			this.numRegisters = this.nextRegister;
+		}
+		return register;
+	}
+
+	// registre du résultat de l'expression courante, celui demandé par le parent sinon un temporaire
+	private int getTarget() {
+		int target = this.currentTarget;
+		this.currentTarget = -1;
+		return target >= 0 ? target : newRegister();
+	}
+
+	// compile une expression dans target (ou dans un registre choisi si -1) et retourne le registre
+	private int compileExp(Node node, int target) {
+		int previousTarget = this.currentTarget;
+		this.currentTarget = target;
+
+		// une expression pure a déjà été calculée par ConstantFolder
+		Value constant = this.semantics.getConstant(node);
+		if(constant != null) {
+			compileConstant(constant);
+		}
+		else {
+			visit(node);
+		}
+
+		this.currentTarget = previousTarget;
+		return this.resultRegister;
+	}
+
+	private void compileConstant(Value constant) {
+		int target = getTarget();
+		if(constant instanceof IntValue) {
+			emit(Bytecode.LOADI, target, ((IntValue)constant).getValue());
+			setResult(target, Type.INT);
+		}
+		else if(constant instanceof BoolValue) {
+			emit(Bytecode.LOADI, target, ((BoolValue)constant).getValue() ? 1 : 0);
+			setResult(target, Type.BOOL);
+		}
+		else {
+			emit(Bytecode.LOADK, target, addConstant(constant));
+			setResult(target, Type.STRING);
+		}
+	}
+
+	private void setResult(int register, Type type) {
+		this.resultRegister = register;
+		this.resultType = type;
+	}
+
+	// opération binaire a = b op c, les temporaires des opérandes sont libérés ensuite
+	private void compileBinary(int op, Node left, Node right, Type type) {
+		int target = getTarget();
+		int mark = this.nextRegister;
+
+		int leftRegister = compileExp(left, -1);
+		int rightRegister = compileExp(right, -1);
+		emit(op, target, leftRegister, rightRegister);
+
+		this.nextRegister = mark;
+		setResult(target, type);
+	}
+
+	// opération unaire a = op b
+	private void compileUnary(int op, Node exp, Type type) {
+		int target = getTarget();
+		int mark = this.nextRegister;
+
+		int register = compileExp(exp, -1);
+		emit(op, target, register);
+
+		this.nextRegister = mark;
+		setResult(target, type);
+	}
+
+	// saut dont la destination sera connue plus tard, retourne la position à corriger
+	private int emitJump(int op, int register) {
+		if(op == Bytecode.JMP) {
+			emit(op, -1);
+		}
+		else {
+			emit(op, register, -1);
+		}
+		return this.codeLength - 1;
+	}
+
+	private void patchJump(int position) {
+		this.code[position] = this.codeLength;
+	}
+
+	// l'instruction d'assembleur sera exécutée telle quelle par l'interpréteur.
+	// Ses arguments ne sont pas compilés, un pc() dans un argument doit quand
+	// même empêcher la mise en cache du macro
+	private void emitAssembly(Node node) {
+		if(usesPc(node)) {
+			this.currentIsCacheable = false;
+		}
+		emit(Bytecode.EMIT, addConstant(node));
+	}
+
+	private static boolean usesPc(Node node) {
+		boolean[] found = { false };
+		node.apply(new DepthFirstAdapter() {
+			@Override
+			public void caseAPcTerm(APcTerm node) {
+				found[0] = true;
+			}
+		});
+		return found[0];
+	}
+
+	@Override
+	public void caseAProg(AProg node) {
+		visit(node.getMacros());
+
+		// le main est compilé par section (au début puis à chaque org de
+		// premier niveau), les sections partagent les registres du main
+		int numSlots = this.semantics.getGlobalScope(node).getNumSlots();
+		List<Section> sections = new ArrayList<>();
+		List<PInst> insts = new ArrayList<>();
+
+		for(PInst inst: ((AInsts)node.getInsts()).getInst()) {
+			if(inst instanceof AOrgInst && !insts.isEmpty()) {
+				sections.add(compileSection(insts, numSlots));
+				insts = new ArrayList<>();
+			}
+			insts.add(inst);
+		}
+		sections.add(compileSection(insts, numSlots));
+
+		this.semantics.setMainSections(sections);
+	}
+
+	private Section compileSection(List<PInst> insts, int numSlots) {
+		startBody(numSlots);
+		for(PInst inst: insts) {
+			visit(inst);
+		}
+		return new Section(insts, endBody());
+	}
+
+	@Override
+	public void caseAMacroDecl(AMacroDecl node) {
+		MacroInfo macroInfo = this.semantics.getMacroInfo(node.getIdent().getText());
+
+		startBody(this.semantics.getGlobalScope(node).getNumSlots());
+		visit(node.getBody());
+		macroInfo.setBytecode(endBody());
+		macroInfo.setCacheable(this.currentIsCacheable);
+	}
+
+	@Override
+	public void caseADeclInst(ADeclInst node) {
+		int slot = this.semantics.getVariableInfo(node.getIdent()).getSlot();
+		compileExp(node.getExp(), slot);
+	}
+
+	@Override
+	public void caseAAssignInst(AAssignInst node) {
+		int slot = this.semantics.getVariableInfo(node.getIdent()).getSlot();
+		compileExp(node.getExp(), slot);
+	}
+
+	@Override
+	public void caseAIfInst(AIfInst node) {
+		int mark = this.nextRegister;
+		int register = compileExp(node.getExp(), -1);
+		this.nextRegister = mark;
+
+		int jumpEnd = emitJump(Bytecode.JMP_FALSE, register);
+		visit(node.getBody());
+		patchJump(jumpEnd);
+	}
+
+	@Override
+	public void caseAWhileInst(AWhileInst node) {
+		int start = this.codeLength;
+
+		int mark = this.nextRegister;
+		int register = compileExp(node.getExp(), -1);
+		this.nextRegister = mark;
+
+		int jumpEnd = emitJump(Bytecode.JMP_FALSE, register);
+		visit(node.getBody());
+		emit(Bytecode.JMP, start);
+		patchJump(jumpEnd);
+	}
+
+	@Override
+	public void caseANamespaceInst(ANamespaceInst node) {
+		emit(Bytecode.NS_ENTER, addConstant(node.getIdent().getText()));
+		visit(node.getBody());
+		emit(Bytecode.NS_EXIT);
+	}
+
+	@Override
+	public void caseAMacroCallInst(AMacroCallInst node) {
+		MacroInfo macroInfo = this.semantics.getMacroInfo(node.getIdent().getText());
+
+		// liste des expressions des arguments
+		List<PNegation> previousArgs = this.currentArgs;
+		this.currentArgs = new LinkedList<>();
+		visit(node.getArgs());
+		List<PNegation> args = this.currentArgs;
+		this.currentArgs = previousArgs;
+
+		// chaque argument est calculé dans un registre consécutif
+		int mark = this.nextRegister;
+		int first = this.nextRegister;
+		for(int i = 0; i < args.size(); i++) {
+			newRegister();
+		}
+		for(int i = 0; i < args.size(); i++) {
+			compileExp(args.get(i), first + i);
+		}
+		this.nextRegister = mark;
+
+		emit(Bytecode.CALL, addConstant(node), addConstant(macroInfo), first);
+		this.currentIsCacheable = false;
+	}
+
+	@Override
+	public void caseAArg(AArg node) {
+		this.currentArgs.add(node.getExp());
+	}
+
+	@Override
+	public void caseAPrintInst(APrintInst node) {
+		this.currentIsCacheable = false;
+		compilePrint(node.getExp(), 0);
+	}
+
+	@Override
+	public void caseAPrintLnInst(APrintLnInst node) {
+		this.currentIsCacheable = false;
+		if(node.getExp() == null) {
+			emit(Bytecode.PRINT_NL);
+		}
+		else {
+			compilePrint(node.getExp(), 1);
+		}
+	}
+
+	private void compilePrint(Node exp, int newLine) {
+		int mark = this.nextRegister;
+		int register = compileExp(exp, -1);
+		this.nextRegister = mark;
+
+		if(this.resultType == Type.INT) {
+			emit(Bytecode.PRINT_INT, register, newLine);
+		}
+		else if(this.resultType == Type.BOOL) {
+			emit(Bytecode.PRINT_BOOL, register, newLine);
+		}
+		else {
+			emit(Bytecode.PRINT_STR, register, newLine);
+		}
+	}
+
+	@Override
+	public void caseAOrgInst(AOrgInst node) {
+		this.currentIsCacheable = false;
+		emitAssembly(node);
+	}
+
+	@Override
+	public void caseADbInst(ADbInst node) {
+		emitAssembly(node);
+	}
+
+	@Override
+	public void caseADwInst(ADwInst node) {
+		emitAssembly(node);
+	}
+
+	@Override
+	public void caseADlInst(ADlInst node) {
+		emitAssembly(node);
+	}
+
+	@Override
+	public void caseAFillInst(AFillInst node) {
+		emitAssembly(node);
+	}
+
+	@Override
+	public void caseALabelInst(ALabelInst node) {
+		emitAssembly(node);
+	}
+
+	@Override
+	public void caseAOpcodeInst(AOpcodeInst node) {
+		emitAssembly(node);
+	}
+
+	@Override
+	public void caseANotNegation(ANotNegation node) {
+		compileUnary(Bytecode.NOT, node.getExp(), Type.BOOL);
+	}
+
+	@Override
+	public void caseAAndLogicalOp(AAndLogicalOp node) {
+		// booléens 0/1, les deux côtés sont toujours évalués
+		compileBinary(Bytecode.AND, node.getLeft(), node.getRight(), Type.BOOL);
+	}
+
+	@Override
+	public void caseAOrLogicalOp(AOrLogicalOp node) {
+		compileBinary(Bytecode.OR, node.getLeft(), node.getRight(), Type.BOOL);
+	}
+
+	@Override
+	public void caseAEqComparison(AEqComparison node) {
+		compileEquals(Bytecode.EQ, Bytecode.SEQ, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseANotEqComparison(ANotEqComparison node) {
+		compileEquals(Bytecode.NE, Bytecode.SNE, node.getLeft(), node.getRight());
+	}
+
+	// comparaison de deux entiers, booléens ou chaînes
+	private void compileEquals(int op, int stringOp, Node left, Node right) {
+		int target = getTarget();
+		int mark = this.nextRegister;
+
+		int leftRegister = compileExp(left, -1);
+		Type type = this.resultType;
+		int rightRegister = compileExp(right, -1);
+		emit(type == Type.STRING ? stringOp : op, target, leftRegister, rightRegister);
+
+		this.nextRegister = mark;
+		setResult(target, Type.BOOL);
+	}
+
+	@Override
+	public void caseALtComparison(ALtComparison node) {
+		compileBinary(Bytecode.LT, node.getLeft(), node.getRight(), Type.BOOL);
+	}
+
+	@Override
+	public void caseALtEqComparison(ALtEqComparison node) {
+		compileBinary(Bytecode.LE, node.getLeft(), node.getRight(), Type.BOOL);
+	}
+
+	@Override
+	public void caseAGtComparison(AGtComparison node) {
+		compileBinary(Bytecode.GT, node.getLeft(), node.getRight(), Type.BOOL);
+	}
+
+	@Override
+	public void caseAGtEqComparison(AGtEqComparison node) {
+		compileBinary(Bytecode.GE, node.getLeft(), node.getRight(), Type.BOOL);
+	}
+
+	@Override
+	public void caseAAndBitwise(AAndBitwise node) {
+		compileBinary(Bytecode.AND, node.getLeft(), node.getRight(), Type.INT);
+	}
+
+	@Override
+	public void caseAOrBitwise(AOrBitwise node) {
+		compileBinary(Bytecode.OR, node.getLeft(), node.getRight(), Type.INT);
+	}
+
+	@Override
+	public void caseAXorBitwise(AXorBitwise node) {
+		compileBinary(Bytecode.XOR, node.getLeft(), node.getRight(), Type.INT);
+	}
+
+	@Override
+	public void caseAShiftLeftShift(AShiftLeftShift node) {
+		compileBinary(Bytecode.SHL, node.getLeft(), node.getRight(), Type.INT);
+	}
+
+	@Override
+	public void caseAShiftRightShift(AShiftRightShift node) {
+		compileBinary(Bytecode.SHR, node.getLeft(), node.getRight(), Type.INT);
+	}
+
+	@Override
+	public void caseAAddAdditiveExp(AAddAdditiveExp node) {
+		int target = getTarget();
+		int mark = this.nextRegister;
+
+		int leftRegister = compileExp(node.getLeft(), -1);
+		Type leftType = this.resultType;
+		int rightRegister = compileExp(node.getRight(), -1);
+		Type rightType = this.resultType;
+
+		// concaténation si un des deux côtés est une chaîne
+		if(leftType == Type.STRING || rightType == Type.STRING) {
+			leftRegister = compileToString(leftRegister, leftType);
+			rightRegister = compileToString(rightRegister, rightType);
+			emit(Bytecode.CONCAT, target, leftRegister, rightRegister);
+			setResult(target, Type.STRING);
+		}
+		else {
+			emit(Bytecode.ADD, target, leftRegister, rightRegister);
+			setResult(target, Type.INT);
+		}
+
+		this.nextRegister = mark;
+	}
+
+	// convertis un entier ou un booléen en chaîne dans un temporaire
+	private int compileToString(int register, Type type) {
+		if(type == Type.STRING) {
+			return register;
+		}
+		int target = newRegister();
+		emit(type == Type.INT ? Bytecode.INT_STR : Bytecode.BOOL_STR, target, register);
+		return target;
+	}
+
+	@Override
+	public void caseASubAdditiveExp(ASubAdditiveExp node) {
+		compileBinary(Bytecode.SUB, node.getLeft(), node.getRight(), Type.INT);
+	}
+
+	@Override
+	public void caseAMulFactor(AMulFactor node) {
+		compileBinary(Bytecode.MUL, node.getLeft(), node.getRight(), Type.INT);
+	}
+
+	@Override
+	public void caseADivFactor(ADivFactor node) {
+		compileBinary(Bytecode.DIV, node.getLeft(), node.getRight(), Type.INT);
+	}
+
+	@Override
+	public void caseAModFactor(AModFactor node) {
+		compileBinary(Bytecode.MOD, node.getLeft(), node.getRight(), Type.INT);
+	}
+
+	@Override
+	public void caseATrueTerm(ATrueTerm node) {
+		int target = getTarget();
+		emit(Bytecode.LOADI, target, 1);
+		setResult(target, Type.BOOL);
+	}
+
+	@Override
+	public void caseAFalseTerm(AFalseTerm node) {
+		int target = getTarget();
+		emit(Bytecode.LOADI, target, 0);
+		setResult(target, Type.BOOL);
+	}
+
+	@Override
+	public void caseAStringTerm(AStringTerm node) {
+		String string = node.getStr().getText();
+		// on enlève les doubles guillements
+		string = string.substring(1, string.length() - 1);
+
+		int target = getTarget();
+		emit(Bytecode.LOADK, target, addConstant(new StringValue(string)));
+		setResult(target, Type.STRING);
+	}
+
+	@Override
+	public void caseAVarTerm(AVarTerm node) {
+		VariableInfo variable = this.semantics.getVariableInfo(node.getIdent());
+		int slot = variable.getSlot();
+
+		// la variable est lue directement dans son registre,
+		// sauf si le parent demande le résultat ailleurs
+		if(this.currentTarget >= 0) {
+			int target = getTarget();
+			emit(variable.getType() == Type.STRING ? Bytecode.MOVV : Bytecode.MOV, target, slot);
+			setResult(target, variable.getType());
+		}
+		else {
+			setResult(slot, variable.getType());
+		}
+	}
+
+	@Override
+	public void caseAHexStrTerm(AHexStrTerm node) {
+		compileUnary(Bytecode.HEX_STR, node.getExp(), Type.STRING);
+	}
+
+	@Override
+	public void caseABinStrTerm(ABinStrTerm node) {
+		compileUnary(Bytecode.BIN_STR, node.getExp(), Type.STRING);
+	}
+
+	@Override
+	public void caseAPcTerm(APcTerm node) {
+		int target = getTarget();
+		emit(Bytecode.PC, target);
+		this.currentIsCacheable = false;
+		setResult(target, Type.INT);
+	}
+
+	@Override
+	public void caseAHexNumber(AHexNumber node) {
+		compileNumber(node);
+	}
+
+	@Override
+	public void caseABinaryNumber(ABinaryNumber node) {
+		compileNumber(node);
+	}
+
+	@Override
+	public void caseADecimalNumber(ADecimalNumber node) {
+		compileNumber(node);
+	}
+
+	private void compileNumber(Node node) {
+		int target = getTarget();
+		emit(Bytecode.LOADI, target, this.semantics.getNumber(node));
+		setResult(target, Type.INT);
+	}
+}
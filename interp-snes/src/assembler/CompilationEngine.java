@@ -1,503 +1,180 @@
 package assembler;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
-import assembler.syntax.analysis.DepthFirstAdapter;
 import assembler.syntax.node.*;
 
-public class CompilationEngine  extends DepthFirstAdapter{
+// dernière phase: résout les corrections notées par l'interpréteur
+// lors de l'émission, puis écrit les fichiers (voir OutputSink)
+
+public class CompilationEngine {
 	
-	private SemanticInfo semantics;
+	// image binaire à écrire dans le fichier binaire
+	private RomImage image;
 	
-	// liste d'instruction à écrire dans le fichier binaire
-	private Map<DataNode, WriteData> data;
+	// corrections des instructions dont l'argument est un label
+	private List<Fixup> fixups;
 	
-	private Map<Node, Frame> frames;
-	private Frame currentFrame;
 	private Frame mainFrame;
 	private String filename;
-	private int macroId = 0;
-	private String labelPrefix = "";
 	
-	public CompilationEngine(SemanticInfo semantics, Map<DataNode, WriteData> data, Map<Node, Frame> frames, String filename) {
-		this.semantics = semantics;
-		this.data = data;
-		this.frames = frames;
+	// sortie où le listing est aussi affiché
+	private PrintStream out = System.out;
+	
+	// fichiers à écrire
+	private OutputOptions outputOptions = new OutputOptions();
+	
+	public CompilationEngine(RomImage image, List<Fixup> fixups, Frame mainFrame, String filename) {
+		this.image = image;
+		this.fixups = fixups;
+		this.mainFrame = mainFrame;
 		this.filename = filename;
 	}
 	
-	private void visit(Node node) {
-        if (node != null) {
-            node.apply(this);
-        }
-    }
+	public void setOutput(PrintStream out) {
+		this.out = out;
+	}
 	
-	// calcul la valeur hexadécimal du branchement et met à jour le write data
-	private void changeBranchWriteData(WriteData writeData, int labelOffset, Token token) {
-		int difference = 0;
-		
-		// on va chercher le offset du branch
-		int branchOffset = writeData.getOffset();
-		
-		// branchement négatif (vers l'arrière)
-		if(labelOffset <= branchOffset) {
-			difference = 0xFE - (branchOffset - labelOffset);
-			
-			// branchement trop long
-			if(difference < 0x80) {
-				throw new InterpreterException(token, "negative branching exceed limit");
-			}
-		}
-		// branchement positif (vers l'avant)
-		else {
-			difference = (labelOffset - branchOffset) - 2;
-			
-			// branchement trop long
-			if(difference > 0x7F) {
-				throw new InterpreterException(token, "positive branching exceed limit");
-			}
-		}
-		
-		// on met à jour le write data avec le branchement
-		byte[] newData = writeData.getData();
-		newData[1] = (byte)difference;
-		writeData.setData(newData);
-		
-		// les octets sont prêts à être écris dans le fichier
-		writeData.setReady(true);
+	public void setOutputOptions(OutputOptions outputOptions) {
+		this.outputOptions = outputOptions;
 	}
 	
-	// calcu la valeur du label et met à jour le write data de l'instruction
-	private void changeAbsWriteData(Token token, WriteData writeData, String name) {
-		
-		// on va cherche le offset du label
-		Integer labelOffset = getLabelOffset(name);
-		
-		// si il y a une expression à additionner on l'additionne
-		if(writeData.getExtraValue() != null) {
-			labelOffset += writeData.getExtraValue();
-			if(labelOffset < 0 || labelOffset > 0xFFFFFF) {
-				throw new InterpreterException(token, "label offset is out of bound");
-			}
+	// les fichiers sont écrits en même temps, en un seul parcours des segments
+	public void writeFiles() {
+		List<OutputSink> sinks = new ArrayList<>();
+		if(this.outputOptions.getPatchRom() != null) {
+			// écrit dans la ROM au lieu du fichier binaire
+			sinks.add(new RomPatch(this.outputOptions.getPatchRom(), this.outputOptions.getMapping()));
 		}
-		
-		byte[] oldData = writeData.getData();
-		byte[] newData = new byte[oldData.length];
-		
-		// l'octet d'instruction ne change pas
-		newData[0] = oldData[0];
-		
-		// nouvel argument qui remplace l'ancienne suite de 00
-		byte[] offset = new byte[] {
-				(byte)((int)labelOffset),
-				(byte)((int)labelOffset >>> 8),
-				(byte)((int)labelOffset >>> 16)
-		};
-		
-		// copier dans le nouvel write data
-		for(int i = 1; i < newData.length; i++) {
-			newData[i] = offset[i - 1];
+		else if(this.outputOptions.getBinaryFormat() != BinaryFormat.NONE) {
+			sinks.add(new BinarySink(this.filename, this.outputOptions));
 		}
-		writeData.setData(newData);
-		
-		// les octets sont prêts à être écris dans le fichier
-		writeData.setReady(true);
-	}
-
-	// Trouve le bon label et retourne son offset, si le frame courant ne l'a pas on va voir dans le main
-	private Integer getLabelOffset(String name) {
-		Integer labelOffset = this.currentFrame.getLabelOffset(name, this.labelPrefix, this.macroId);
-		if(labelOffset == null) {
-			labelOffset = this.mainFrame.getLabelOffset(name);
-		}		
-		return labelOffset;
-	}
-	
-	// retourne la node de l'instruction courante
-	private WriteData getWriteData(Node node) {
-		DataNode currentDataNode = new DataNode(node, this.macroId);
-		for(DataNode dataNode: this.data.keySet()) {
-			if(dataNode.equals(currentDataNode)) {
-				return this.data.get(dataNode);
-			}
+		if(this.outputOptions.isListing()) {
+			// écrit le fichier texte et dans la console
+			sinks.add(new ListingSink(this.filename, this.outputOptions.isEcho() ? this.out : null));
 		}
-		return null;
-	}
-	
-	// écris les données dans le fichier binaires
-	private void writeBinaryToFile() {
-		if(this.data.size() > 0) {
-			
-			// création du dossier s'il n'existe pas
-			String folder = "results/";
-			File dir = new File(folder);
-			
-			if(!dir.exists()) {
-				dir.mkdir();
-			}
-			
-			try {
-				String output = folder + this.filename + ".bin";
-				RandomAccessFile raf = new RandomAccessFile(output, "rw");
-				for(Map.Entry<DataNode, WriteData> entry : this.data.entrySet()) {
-					WriteData writeData = entry.getValue();
-					
-					// le offset où on écrit
-					int offset = writeData.getOffset();
-					
-					// les octets à écrire
-					byte[] bytes = writeData.getData();
-					
-					// ne devrait jamais se produire
-					if(!writeData.isReady()) {
-						String strOffset = Integer.toHexString(offset);
-						throw new CompilationException("Data at offset $" + strOffset + "is not ready to write");
-					}
-					
-					// écriture des octets
-					raf.seek(offset);
-					raf.write(bytes, 0, bytes.length);
-				}
-			} catch (IOException e) {
-				throw new CompilationException("Error writing binary file");
-			}
+		if(this.outputOptions.isSymbols()) {
+			sinks.add(new SymbolSink(this.filename, getSymbols()));
 		}
+		OutputPipeline.run(this.image, sinks);
 	}
 	
-	private void writeBinaryToText() {
-		String nl = "\r\n";
-		if(this.data.size() > 0) {
-			
-			// création du dossier s'il n'existe pas
-			String folder = "results/";
-			File dir = new File(folder);
-			
-			if(!dir.exists()) {
-				dir.mkdir();
-			}
-			
-			try {
-				String output = folder + this.filename + ".txt";
-				FileWriter fileWriter = new FileWriter(output);
-				
-				// écriture du header du fichier
-				String headerA = "Program " + this.filename + nl;
-				String headerB = "--------------------" + nl;
-				fileWriter.write(headerA);
-				fileWriter.write(headerB);
-				System.out.println();
-				System.out.print(headerA);
-				System.out.print(headerB);
-				
-				for(Map.Entry<DataNode, WriteData> entry : this.data.entrySet()) {
-					WriteData writeData = entry.getValue();
-					
-					// le offset où on écrit
-					int offset = writeData.getOffset();
-					
-					// offset version texte
-					String strOffset = Integer.toHexString(offset).toUpperCase();
-					strOffset = strOffset.length() % 2 != 0 ? "0" + strOffset: strOffset;
-					if(strOffset.length() == 2) {
-						strOffset = "0000" + strOffset;
-					}
-					else if(strOffset.length() == 4) {
-						strOffset = "00" + strOffset;
-					}
-					strOffset += ": ";
-					
-					// les octets à écrire
-					byte[] bytes = writeData.getData();
-					
-					// octets version texte
-					String strBytes = "";
-					for(int i = 0; i < bytes.length; i++) {
-						String strByte = Integer.toHexString(Byte.toUnsignedInt(bytes[i])).toUpperCase();
-						strByte = strByte.length() % 2 != 0 ? "0" + strByte: strByte;
-						
-						if(i < bytes.length - 1) {
-							strByte += " ";
-						}
-						
-						strBytes += strByte;
-					}
-					
-					// ne devrait jamais se produire
-					if(!writeData.isReady()) {
-						throw new CompilationException("Data at offset " + strOffset + "is not ready to write");
-					}
-					
-					// écriture de l'instruction
-					String line = strOffset + strBytes + nl;
-					fileWriter.write(line);
-					System.out.print(line);				
-				}
-				fileWriter.close();
-			} catch (IOException e) {
-				throw new CompilationException("Error writing binary file");
-			}
+	// met à jour l'image avec l'offset des labels, sans rien écrire sur disque
+	public void resolve() {
+		// une seule passe linéaire sur les corrections
+		for(Fixup fixup: this.fixups) {
+			resolveFixup(fixup);
 		}
-	}
-
-	@Override
-	public void caseAProg(AProg node) {
-		this.currentFrame = frames.get(node);
-		this.mainFrame = frames.get(node);
-		visit(node.getInsts());
-		
-		// écrit le fichier binaire
-		writeBinaryToFile();
-		
-		// écrit le fichier texte et dans la console
-		writeBinaryToText();
+		this.image.applyFixups();
 	}
 	
-	@Override
-	public void caseAMacroCallInst(AMacroCallInst node) {
-		
-		String macroName = node.getIdent().getText();
-        MacroInfo macroInfo = this.semantics.getMacroInfo(macroName);
-        
-		this.currentFrame = frames.get(node);
-		
-		this.macroId++;
-
-        visit(macroInfo.getMacroBody());
-
-        this.currentFrame = this.currentFrame.getParentFrame();
+	public RomImage getImage() {
+		return this.image;
 	}
 	
-	@Override
-	public void caseANamespaceInst(ANamespaceInst node) {
-		String name = "";
-		
-		// concaténation du préfix courant
-		if(!this.labelPrefix.equals(""))
-			name = "-" + node.getIdent().getText();
-		else {
-			name = node.getIdent().getText();
-		}
-		
-		this.labelPrefix += name;
-		
-		visit(node.getBody());
-		
-		// retrait du préfix courant
-		this.labelPrefix = this.labelPrefix.replace(name, "");
-	}
-	
-	@Override
-	public void caseABeqOpcode(ABeqOpcode node) {
-		WriteData writeData = getWriteData(node);
-		int labelOffset = -1;
-		
-		if(writeData != null) {
-			if(node.getBranchType() instanceof AIdentBranchType) {	
-				// nom du label
-				String labelName = ((AIdentBranchType)node.getBranchType()).getIdent().getText();
-				
-				// on va cherche le offset du label
-				labelOffset = getLabelOffset(labelName);
-			}
-			else if(node.getBranchType() instanceof APlusBranchType) {
-				// on va cherche le offset du label
-				labelOffset = this.currentFrame.getAnonLabelOffset(writeData.getOffset(), this.macroId, "+", node.getBeq());
-			}
-			else {
-				// on va cherche le offset du label
-				labelOffset = this.currentFrame.getAnonLabelOffset(writeData.getOffset(), this.macroId, "-", node.getBeq());
-			}
-			
-			// on met à jour le write data avec la longeur du branchement
-			changeBranchWriteData(writeData, labelOffset, node.getBeq());		
-		}
-	}
-
-	@Override
-	public void caseABneOpcode(ABneOpcode node) {
-		WriteData writeData = getWriteData(node);
-		int labelOffset = -1;
-		
-		if(writeData != null) {
-			if(node.getBranchType() instanceof AIdentBranchType) {	
-				// nom du label
-				String labelName = ((AIdentBranchType)node.getBranchType()).getIdent().getText();
-				
-				// on va cherche le offset du label
-				labelOffset = getLabelOffset(labelName);
-			}
-			else if(node.getBranchType() instanceof APlusBranchType) {
-				// on va cherche le offset du label
-				labelOffset = this.currentFrame.getAnonLabelOffset(writeData.getOffset(), this.macroId, "+", node.getBne());
-			}
-			else {
-				// on va cherche le offset du label
-				labelOffset = this.currentFrame.getAnonLabelOffset(writeData.getOffset(), this.macroId, "-", node.getBne());
-			}
-			
-			// on met à jour le write data avec la longeur du branchement
-			changeBranchWriteData(writeData, labelOffset, node.getBne());		
+	// labels du programme principal, dans l'ordre de déclaration. Le nom
+	// d'un label dans un namespace est précédé du préfix (e.g. "nsa-label_a")
+	public Map<String, Integer> getSymbols() {
+		Map<String, Integer> symbols = new LinkedHashMap<>();
+		for(Label label: this.mainFrame.getLabels()) {
+			String name = label.getPrefix().equals("") ? label.getName() : label.getPrefix() + "-" + label.getName();
+			symbols.putIfAbsent(name, label.getOffset());
 		}
+		return symbols;
 	}
 	
-	@Override
-	public void caseACmpAbsOpcode(ACmpAbsOpcode node) {
-		WriteData writeData = getWriteData(node);
-		
-		// si on a affaire à un label
-		if(writeData != null && !writeData.isReady()) {
-			// nom du label
-			String name = ((ALabelOpArg)node.getOpArg()).getIdent().getText();
-			// on met à jour le write data avec l'offset du label
-			changeAbsWriteData(node.getCmp(), writeData, name);			
+	// lignes du listing, une par segment (e.g. "000000: A5 10")
+	public List<String> getListing() {
+		List<String> listing = new ArrayList<>();
+		for(int segment = 0; segment < this.image.getNumSegments(); segment++) {
+			listing.add(ListingSink.getLine(this.image, segment));
 		}
+		return listing;
 	}
 	
-	@Override
-	public void caseACmpConstOpcode(ACmpConstOpcode node) {
-		WriteData writeData = getWriteData(node);
+	private void resolveFixup(Fixup fixup) {
+		Integer labelOffset;
 		
-		// si on a affaire à un label
-		if(writeData != null && !writeData.isReady()) {
-			// nom du label
-			String name = ((ALabelOpArg)node.getOpArg()).getIdent().getText();
-			// on met à jour le write data avec l'offset du label
-			changeAbsWriteData(node.getCmp(), writeData, name);			
+		if(fixup.isAnonymous()) {
+			// on va cherche le offset du label anonyme le plus proche
+			labelOffset = fixup.findInFrame();
 		}
-	}
-	
-	@Override
-	public void caseADecAbsOpcode(ADecAbsOpcode node) {
-		WriteData writeData = getWriteData(node);
-		
-		// si on a affaire à un label
-		if(writeData != null && !writeData.isReady()) {
-			// nom du label
-			String name = ((ALabelOpArg)node.getOpArg()).getIdent().getText();
-			// on met à jour le write data avec l'offset du label
-			changeAbsWriteData(node.getDec(), writeData, name);			
+		else {
+			// on va cherche le offset du label
+			labelOffset = getLabelOffset(fixup);
 		}
-	}
-	
-	@Override
-	public void caseAIncAbsOpcode(AIncAbsOpcode node) {
-		WriteData writeData = getWriteData(node);
 		
-		// si on a affaire à un label
-		if(writeData != null && !writeData.isReady()) {
-			// nom du label
-			String name = ((ALabelOpArg)node.getOpArg()).getIdent().getText();
-			// on met à jour le write data avec l'offset du label
-			changeAbsWriteData(node.getInc(), writeData, name);			
+		if(fixup.getKind() == Fixup.Kind.RELATIVE) {
+			// on met à jour l'image avec la longeur du branchement
+			changeBranchWriteData(fixup, labelOffset);
 		}
-	}
-	
-	@Override
-	public void caseAJmpOpcode(AJmpOpcode node) {
-		WriteData writeData = getWriteData(node);
-		
-		// si on a affaire à un label
-		if(writeData != null && !writeData.isReady()) {
-			// nom du label
-			String name = ((ALabelOpArg)node.getOpArg()).getIdent().getText();
-			// on met à jour le write data avec l'offset du label
-			changeAbsWriteData(node.getJmp(), writeData, name);			
+		else {
+			// on met à jour l'image avec l'offset du label
+			changeAbsWriteData(fixup, labelOffset);
 		}
 	}
 	
-	@Override
-	public void caseALdaAbsOpcode(ALdaAbsOpcode node) {
-		WriteData writeData = getWriteData(node);
+	// calcul la valeur hexadécimal du branchement et met à jour l'image
+	private void changeBranchWriteData(Fixup fixup, int labelOffset) {
+		int branchOffset = fixup.getOffset();
+		Token token = fixup.getToken();
+		int difference = 0;
 		
-		// si on a affaire à un label
-		if(writeData != null && !writeData.isReady()) {
-			// nom du label
-			String name = ((ALabelOpArg)node.getOpArg()).getIdent().getText();
-			// on met à jour le write data avec l'offset du label
-			changeAbsWriteData(node.getLda(), writeData, name);			
+		// branchement négatif (vers l'arrière)
+		if(labelOffset <= branchOffset) {
+			difference = 0xFE - (branchOffset - labelOffset);
+			
+			// branchement trop long
+			if(difference < 0x80) {
+				throw new InterpreterException(token, "negative branching exceed limit");
+			}
 		}
-	}
-	
-	@Override
-	public void caseALdaConstOpcode(ALdaConstOpcode node) {
-		WriteData writeData = getWriteData(node);
-		
-		// si on a affaire à un label
-		if(writeData != null && !writeData.isReady()) {
-			// nom du label
-			String name = ((ALabelOpArg)node.getOpArg()).getIdent().getText();
-			// on met à jour le write data avec l'offset du label
-			changeAbsWriteData(node.getLda(), writeData, name);			
+		// branchement positif (vers l'avant)
+		else {
+			difference = (labelOffset - branchOffset) - 2;
+			
+			// branchement trop long
+			if(difference > 0x7F) {
+				throw new InterpreterException(token, "positive branching exceed limit");
+			}
 		}
-	}
-	
-	@Override
-	public void caseALdaIndXOpcode(ALdaIndXOpcode node) {
-		WriteData writeData = getWriteData(node);
 		
-		// si on a affaire à un label
-		if(writeData != null && !writeData.isReady()) {
-			// nom du label
-			String name = ((ALabelOpArg)node.getOpArg()).getIdent().getText();
-			// on met à jour le write data avec l'offset du label
-			changeAbsWriteData(node.getLda(), writeData, name);			
-		}
+		// on met à jour l'argument du branchement
+		this.image.writeSegment(fixup.getSegment(), 1, (byte)difference);
 	}
 	
-	@Override
-	public void caseALdxAbsOpcode(ALdxAbsOpcode node) {
-		WriteData writeData = getWriteData(node);
+	// calcu la valeur du label et met à jour l'argument de l'instruction
+	private void changeAbsWriteData(Fixup fixup, int labelOffset) {
 		
-		// si on a affaire à un label
-		if(writeData != null && !writeData.isReady()) {
-			// nom du label
-			String name = ((ALabelOpArg)node.getOpArg()).getIdent().getText();
-			// on met à jour le write data avec l'offset du label
-			changeAbsWriteData(node.getLdx(), writeData, name);			
+		// si il y a une expression à additionner on l'additionne
+		if(fixup.getExtraValue() != null) {
+			labelOffset += fixup.getExtraValue();
+			if(labelOffset < 0 || labelOffset > 0xFFFFFF) {
+				throw new InterpreterException(fixup.getToken(), "label offset is out of bound");
+			}
 		}
-	}
-	
-	@Override
-	public void caseALdxConstOpcode(ALdxConstOpcode node) {
-		WriteData writeData = getWriteData(node);
 		
-		// si on a affaire à un label
-		if(writeData != null && !writeData.isReady()) {
-			// nom du label
-			String name = ((ALabelOpArg)node.getOpArg()).getIdent().getText();
-			// on met à jour le write data avec l'offset du label
-			changeAbsWriteData(node.getLdx(), writeData, name);			
+		// l'octet d'instruction ne change pas, le nouvel
+		// argument remplace l'ancienne suite de 00
+		for(int i = 0; i < fixup.getSize(); i++) {
+			this.image.writeSegment(fixup.getSegment(), 1 + i, (byte)(labelOffset >>> (8 * i)));
 		}
 	}
-	
-	@Override
-	public void caseAStaAbsOpcode(AStaAbsOpcode node) {
-		WriteData writeData = getWriteData(node);
-		
-		// si on a affaire à un label
-		if(writeData != null && !writeData.isReady()) {
-			// nom du label
-			String name = ((ALabelOpArg)node.getOpArg()).getIdent().getText();
-			// on met à jour le write data avec l'offset du label
-			changeAbsWriteData(node.getSta(), writeData, name);			
+
+	// Trouve le bon label et retourne son offset, si le frame de la référence ne l'a pas on va voir dans le main
+	private Integer getLabelOffset(Fixup fixup) {
+		String name = fixup.getName();
+		Integer labelOffset = fixup.findInFrame();
+		if(labelOffset == null) {
+			labelOffset = this.mainFrame.getLabelOffset(name);
 		}
-	}
-	
-	@Override
-	public void caseAStaIndXOpcode(AStaIndXOpcode node) {
-		WriteData writeData = getWriteData(node);
-		
-		// si on a affaire à un label
-		if(writeData != null && !writeData.isReady()) {
-			// nom du label
-			String name = ((ALabelOpArg)node.getOpArg()).getIdent().getText();
-			// on met à jour le write data avec l'offset du label
-			changeAbsWriteData(node.getSta(), writeData, name);			
+		if(labelOffset == null) {
+			throw new InterpreterException(fixup.getToken(), "label " + name + " cannot be resolved");
 		}
+		return labelOffset;
 	}
 }
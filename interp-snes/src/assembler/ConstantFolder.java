@@ -0,0 +1,328 @@
+package assembler;
+
+import assembler.syntax.analysis.DepthFirstAdapter;
+import assembler.syntax.node.*;
+
+// calcule une seule fois la valeur des expressions pures (sans variable
+// ni pc()) et la garde dans SemanticInfo. L'interpréteur et le compilateur
+// de bytecode lisent ensuite la constante au lieu de réévaluer l'arbre.
+// Une division par 0 n'est pas pliée pour que l'erreur reste à l'exécution,
+// et les vérifications de bornes sont toujours faites par l'interpréteur
+
+public class ConstantFolder extends DepthFirstAdapter {
+
+	private SemanticInfo semantics;
+
+	// valeur de la dernière expression visitée, null si elle n'est pas constante
+	private Value currentConstant;
+
+	public ConstantFolder(SemanticInfo semantics) {
+		this.semantics = semantics;
+	}
+
+	private void visit(Node node) {
+		if(node != null) {
+			node.apply(this);
+		}
+	}
+
+	private Value fold(Node node) {
+		visit(node);
+		return this.currentConstant;
+	}
+
+	private void setConstant(Node node, Value value) {
+		if(value != null) {
+			this.semantics.addConstant(node, value);
+		}
+		this.currentConstant = value;
+	}
+
+	// opération entière dont le résultat est un entier ou un booléen
+	private void foldBinary(Node node, int op, Node leftNode, Node rightNode) {
+		Value left = fold(leftNode);
+		Value right = fold(rightNode);
+
+		if(!(left instanceof IntValue) || !(right instanceof IntValue)) {
+			setConstant(node, null);
+			return;
+		}
+
+		int a = ((IntValue)left).getValue();
+		int b = ((IntValue)right).getValue();
+
+		switch(op) {
+			case Bytecode.ADD: setConstant(node, new IntValue(a + b)); break;
+			case Bytecode.SUB: setConstant(node, new IntValue(a - b)); break;
+			case Bytecode.MUL: setConstant(node, new IntValue(a * b)); break;
+			case Bytecode.DIV: setConstant(node, b != 0 ? new IntValue(a / b) : null); break;
+			case Bytecode.MOD: setConstant(node, b != 0 ? new IntValue(a % b) : null); break;
+			case Bytecode.AND: setConstant(node, new IntValue(a & b)); break;
+			case Bytecode.OR: setConstant(node, new IntValue(a | b)); break;
+			case Bytecode.XOR: setConstant(node, new IntValue(a ^ b)); break;
+			case Bytecode.SHL: setConstant(node, new IntValue(a << b)); break;
+			case Bytecode.SHR: setConstant(node, new IntValue(a >> b)); break;
+			case Bytecode.LT: setConstant(node, new BoolValue(a < b)); break;
+			case Bytecode.LE: setConstant(node, new BoolValue(a <= b)); break;
+			case Bytecode.GT: setConstant(node, new BoolValue(a > b)); break;
+			default: setConstant(node, new BoolValue(a >= b)); break;
+		}
+	}
+
+	// opération logique entre deux booléens
+	private void foldLogical(Node node, boolean and, Node leftNode, Node rightNode) {
+		Value left = fold(leftNode);
+		Value right = fold(rightNode);
+
+		if(!(left instanceof BoolValue) || !(right instanceof BoolValue)) {
+			setConstant(node, null);
+			return;
+		}
+
+		boolean a = ((BoolValue)left).getValue();
+		boolean b = ((BoolValue)right).getValue();
+		setConstant(node, new BoolValue(and ? a && b : a || b));
+	}
+
+	// comparaison de deux valeurs du même type
+	private void foldEquals(Node node, boolean equals, Node leftNode, Node rightNode) {
+		Value left = fold(leftNode);
+		Value right = fold(rightNode);
+
+		if(left == null || right == null) {
+			setConstant(node, null);
+			return;
+		}
+
+		// toString donne la même chaîne pour deux valeurs égales du même type
+		boolean result = left.toString().equals(right.toString());
+		setConstant(node, new BoolValue(equals ? result : !result));
+	}
+
+	@Override
+	public void caseASimpleNegation(ASimpleNegation node) {
+		setConstant(node, fold(node.getLogicalOp()));
+	}
+
+	@Override
+	public void caseASimpleLogicalOp(ASimpleLogicalOp node) {
+		setConstant(node, fold(node.getComparison()));
+	}
+
+	@Override
+	public void caseASimpleComparison(ASimpleComparison node) {
+		setConstant(node, fold(node.getBitwise()));
+	}
+
+	@Override
+	public void caseASimpleBitwise(ASimpleBitwise node) {
+		setConstant(node, fold(node.getShift()));
+	}
+
+	@Override
+	public void caseASimpleShift(ASimpleShift node) {
+		setConstant(node, fold(node.getAdditiveExp()));
+	}
+
+	@Override
+	public void caseASimpleAdditiveExp(ASimpleAdditiveExp node) {
+		setConstant(node, fold(node.getFactor()));
+	}
+
+	@Override
+	public void caseASimpleFactor(ASimpleFactor node) {
+		setConstant(node, fold(node.getTerm()));
+	}
+
+	@Override
+	public void caseANumTerm(ANumTerm node) {
+		setConstant(node, fold(node.getNumber()));
+	}
+
+	@Override
+	public void caseAParTerm(AParTerm node) {
+		setConstant(node, fold(node.getExp()));
+	}
+
+	@Override
+	public void caseANotNegation(ANotNegation node) {
+		Value value = fold(node.getExp());
+
+		if(value instanceof BoolValue) {
+			setConstant(node, new BoolValue(!((BoolValue)value).getValue()));
+		}
+		else {
+			setConstant(node, null);
+		}
+	}
+
+	@Override
+	public void caseAAndLogicalOp(AAndLogicalOp node) {
+		foldLogical(node, true, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseAOrLogicalOp(AOrLogicalOp node) {
+		foldLogical(node, false, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseAEqComparison(AEqComparison node) {
+		foldEquals(node, true, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseANotEqComparison(ANotEqComparison node) {
+		foldEquals(node, false, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseALtComparison(ALtComparison node) {
+		foldBinary(node, Bytecode.LT, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseALtEqComparison(ALtEqComparison node) {
+		foldBinary(node, Bytecode.LE, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseAGtComparison(AGtComparison node) {
+		foldBinary(node, Bytecode.GT, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseAGtEqComparison(AGtEqComparison node) {
+		foldBinary(node, Bytecode.GE, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseAAndBitwise(AAndBitwise node) {
+		foldBinary(node, Bytecode.AND, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseAOrBitwise(AOrBitwise node) {
+		foldBinary(node, Bytecode.OR, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseAXorBitwise(AXorBitwise node) {
+		foldBinary(node, Bytecode.XOR, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseAShiftLeftShift(AShiftLeftShift node) {
+		foldBinary(node, Bytecode.SHL, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseAShiftRightShift(AShiftRightShift node) {
+		foldBinary(node, Bytecode.SHR, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseAAddAdditiveExp(AAddAdditiveExp node) {
+		Value left = fold(node.getLeft());
+		Value right = fold(node.getRight());
+
+		if(left == null || right == null) {
+			setConstant(node, null);
+		}
+		else if(left instanceof StringValue || right instanceof StringValue) {
+			// concaténation
+			setConstant(node, new StringValue(left.toString() + right.toString()));
+		}
+		else {
+			setConstant(node, new IntValue(((IntValue)left).getValue() + ((IntValue)right).getValue()));
+		}
+	}
+
+	@Override
+	public void caseASubAdditiveExp(ASubAdditiveExp node) {
+		foldBinary(node, Bytecode.SUB, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseAMulFactor(AMulFactor node) {
+		foldBinary(node, Bytecode.MUL, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseADivFactor(ADivFactor node) {
+		foldBinary(node, Bytecode.DIV, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseAModFactor(AModFactor node) {
+		foldBinary(node, Bytecode.MOD, node.getLeft(), node.getRight());
+	}
+
+	@Override
+	public void caseATrueTerm(ATrueTerm node) {
+		setConstant(node, new BoolValue(true));
+	}
+
+	@Override
+	public void caseAFalseTerm(AFalseTerm node) {
+		setConstant(node, new BoolValue(false));
+	}
+
+	@Override
+	public void caseAStringTerm(AStringTerm node) {
+		String string = node.getStr().getText();
+		// on enlève les doubles guillements
+		string = string.substring(1, string.length() - 1);
+		setConstant(node, new StringValue(string));
+	}
+
+	@Override
+	public void caseAVarTerm(AVarTerm node) {
+		this.currentConstant = null;
+	}
+
+	@Override
+	public void caseAPcTerm(APcTerm node) {
+		// pc() dépend de l'offset au moment de l'exécution
+		this.currentConstant = null;
+	}
+
+	@Override
+	public void caseAHexStrTerm(AHexStrTerm node) {
+		Value value = fold(node.getExp());
+
+		if(value instanceof IntValue) {
+			setConstant(node, new StringValue(InterpreterEngine.toHexString(((IntValue)value).getValue())));
+		}
+		else {
+			setConstant(node, null);
+		}
+	}
+
+	@Override
+	public void caseABinStrTerm(ABinStrTerm node) {
+		Value value = fold(node.getExp());
+
+		if(value instanceof IntValue) {
+			setConstant(node, new StringValue(InterpreterEngine.toBinString(((IntValue)value).getValue())));
+		}
+		else {
+			setConstant(node, null);
+		}
+	}
+
+	@Override
+	public void caseAHexNumber(AHexNumber node) {
+		setConstant(node, new IntValue(this.semantics.getNumber(node)));
+	}
+
+	@Override
+	public void caseABinaryNumber(ABinaryNumber node) {
+		setConstant(node, new IntValue(this.semantics.getNumber(node)));
+	}
+
+	@Override
+	public void caseADecimalNumber(ADecimalNumber node) {
+		setConstant(node, new IntValue(this.semantics.getNumber(node)));
+	}
+}
@@ -1,34 +1,24 @@
 package assembler;
 
-// Constantes des instructions
+// Constantes
 
 public class Consts {
-	public static final String BEQ = "beq";
-	public static final String BNE = "bne";
-	public static final String CMP_ABS = "cmp_abs";
-	public static final String CMP_CONST = "cmp_const";
-	public static final String DEC_ACC = "dec_acc";
-	public static final String DEC_ABS = "dec_abs";
-	public static final String INC_ACC = "inc_acc";
-	public static final String INC_ABS = "inc_abs";
-	public static final String JMP = "jmp";
-	public static final String LDA_ABS = "lda_abs";
-	public static final String LDA_CONST = "lda_const";
-	public static final String LDA_IND_X = "lda_ind_x";
-	public static final String LDX_ABS = "ldx_abs";
-	public static final String LDX_CONST = "ldx_const";
-	public static final String MVN = "mvn";
-	public static final String MVP = "mvp";
-	public static final String REP = "rep";
-	public static final String SEP = "sep";
-	public static final String STA_ABS = "sta_abs";
-	public static final String STA_IND_X = "sta_ind_x";
-	public static final String RTS = "rts";
-	
-	public static final String BYTE = "_b";
-	public static final String WORD = "_w";
-	public static final String LONG = "_l";
-	
 	// nombre max 24-bit
 	static final int MAX_INT = 0xFFFFFF;
+	
+	// profondeur maximale par défaut des appels de macro imbriqués
+	static final int MAX_MACRO_DEPTH = 100000;
+	
+	// port TCP local par défaut du mode serveur
+	static final int DAEMON_PORT = 6581;
+	
+	// taille maximale d'un champ et d'une ligne d'une requête du serveur
+	static final int DAEMON_MAX_FIELD = 16 * 1024 * 1024;
+	static final int DAEMON_MAX_LINE = 4096;
+	
+	// nombre de fichiers dont le serveur garde l'assembleur incrémental
+	static final int DAEMON_MAX_FILES = 64;
+	
+	// nombre de connexions servies en même temps par le serveur
+	static final int DAEMON_MAX_CONNECTIONS = 16;
 }
@@ -0,0 +1,142 @@
+package assembler;
+
+import assembler.syntax.node.Token;
+
+// correction à faire sur une instruction émise dont l'argument est un label.
+// L'interpréteur l'ajoute à la liste des corrections au moment d'émettre
+// l'instruction, puis elle est résolue une fois tous les labels connus.
+
+public class Fixup {
+
+	public enum Kind {
+		// branchement relatif de 1 octet (beq, bne)
+		RELATIVE,
+		// offset absolu de 1, 2 ou 3 octets
+		ABSOLUTE;
+	}
+
+	// offset de l'instruction dans l'image
+	private int offset;
+
+	// segment de l'instruction dans l'image, les octets corrigés sont les siens
+	private int segment;
+
+	// nombre d'octets d'argument à corriger
+	private int size;
+	private Kind kind;
+
+	// nom du label, null pour un label anonyme
+	private String name;
+
+	// "+" ou "-" pour un label anonyme, sinon null
+	private String sign;
+
+	// contexte de la référence au moment de l'émission
+	private String prefix;
+	private int macroId;
+	private Frame frame;
+
+	// sans frame (correction d'une section enregistrée), résultat de la
+	// recherche faite dans le frame à l'enregistrement, null si absent
+	private Integer frameOffset;
+
+	// valeur de l'expression qui suit le label (e.g. "$10" dans "lda label_a+$10")
+	private Integer extraValue;
+
+	private Token token;
+
+	public Fixup(int offset, int segment, int size, Kind kind, String name, String sign,
+			String prefix, int macroId, Frame frame, Integer extraValue, Token token) {
+		this.offset = offset;
+		this.segment = segment;
+		this.size = size;
+		this.kind = kind;
+		this.name = name;
+		this.sign = sign;
+		this.prefix = prefix;
+		this.macroId = macroId;
+		this.frame = frame;
+		this.extraValue = extraValue;
+		this.token = token;
+	}
+
+	// copie de la correction déplacée de delta octets et de segmentDelta
+	// segments, pour un autre macro ID et frame
+	public Fixup relocate(int delta, int segmentDelta, int macroId, Frame frame) {
+		return relocate(delta, segmentDelta, macroId, frame, this.token);
+	}
+
+	public Fixup relocate(int delta, int segmentDelta, int macroId, Frame frame, Token token) {
+		Fixup fixup = new Fixup(this.offset + delta, this.segment + segmentDelta, this.size, this.kind, this.name,
+				this.sign, this.prefix, macroId, frame, this.extraValue, token);
+		fixup.frameOffset = this.frameOffset;
+		return fixup;
+	}
+
+	// copie sans frame qui garde seulement le résultat de la recherche dans le frame
+	public Fixup detachFrame() {
+		Fixup fixup = relocate(0, 0, this.macroId, null);
+		fixup.frameOffset = findInFrame();
+		return fixup;
+	}
+
+	// offset du label dans le frame de la référence, null si le frame ne
+	// l'a pas. Un label anonyme introuvable est une erreur
+	public Integer findInFrame() {
+		if(this.frame == null) {
+			return this.frameOffset;
+		}
+		if(isAnonymous()) {
+			return this.frame.getAnonLabelOffset(this.offset, this.macroId, this.sign, this.token);
+		}
+		return this.frame.getLabelOffset(this.name, this.prefix, this.macroId);
+	}
+
+	public int getOffset() {
+		return this.offset;
+	}
+
+	public int getSegment() {
+		return this.segment;
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public Kind getKind() {
+		return this.kind;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public String getSign() {
+		return this.sign;
+	}
+
+	public boolean isAnonymous() {
+		return this.sign != null;
+	}
+
+	public String getPrefix() {
+		return this.prefix;
+	}
+
+	public int getMacroId() {
+		return this.macroId;
+	}
+
+	public Frame getFrame() {
+		return this.frame;
+	}
+
+	public Integer getExtraValue() {
+		return this.extraValue;
+	}
+
+	public Token getToken() {
+		return this.token;
+	}
+}
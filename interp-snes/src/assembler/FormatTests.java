@@ -0,0 +1,371 @@
+package assembler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+
+// tests des formats de sortie pour TestRunner: les patchs IPS et BPS sont
+// appliqués à leur base et comparés à l'image complète, et un fichier de
+// segments est relu et comparé à l'image écrite. Chaque test retourne la
+// description de l'échec ou null
+
+public class FormatTests {
+
+	// offset qu'un record IPS ne peut pas avoir, il se lit "EOF"
+	private static final int IPS_EOF = 0x454F46;
+
+	// commandes BPS
+	private static final int SOURCE_READ = 0;
+	private static final int TARGET_READ = 1;
+	private static final int SOURCE_COPY = 2;
+	private static final int TARGET_COPY = 3;
+
+	// ce que l'application d'un patch a rencontré, pour vérifier qu'un
+	// test passe vraiment par le cas qu'il couvre
+	private static class PatchStats {
+		private int rleRecords;
+		private int maxRecordLength;
+		private boolean recordBeforeEof;
+		private int[] commands = new int[4];
+		private boolean unalignedSourceCopy;
+	}
+
+	// tests qui ne dépendent pas de tests/, dans l'ordre
+	public static Map<String, Callable<String>> getTests() {
+		Map<String, Callable<String>> tests = new LinkedHashMap<>();
+		tests.put("formats_ips_rle", FormatTests::testIpsRle);
+		tests.put("formats_ips_eof", FormatTests::testIpsEof);
+		tests.put("formats_bps_copies", FormatTests::testBpsCopies);
+		tests.put("formats_segments", FormatTests::testSegments);
+		return tests;
+	}
+
+	// tous les formats pour l'image d'un test de tests/, sans base puis
+	// avec une base plus courte que l'image
+	public static String checkImage(RomImage image) throws IOException {
+		String failure = checkSegments(image);
+		if(failure == null) {
+			failure = checkPatches(image, null, null);
+		}
+		if(failure == null) {
+			failure = checkPatches(image, randomBytes(image.getSize() / 2 + 16, 1), null);
+		}
+		return failure;
+	}
+
+	// suites d'octets égaux de 40 et de 70000 octets (plus qu'un record) entre des
+	// octets différents, puis 70000 octets différents qui demandent deux records
+	private static String testIpsRle() throws IOException {
+		RomImage image = new RomImage();
+		image.addSegment(0x100, new byte[] { 1, 2, 3, 4, 5 });
+		image.addSegment(0x105, filled(40, 0xAA));
+		image.addSegment(0x12D, new byte[] { 6, 7, 8, 9, 10 });
+		image.addSegment(0x132, filled(70000, 0x55));
+		image.addSegment(0x132 + 70000, randomBytes(70000, 2));
+
+		PatchStats stats = new PatchStats();
+		String failure = checkPatches(image, null, stats);
+		if(failure == null && stats.rleRecords < 3) {
+			failure = "\texpected 3 RLE records, got " + stats.rleRecords;
+		}
+		if(failure == null && stats.maxRecordLength != 0xFFFF) {
+			failure = "\texpected a record of 65535 bytes, got " + stats.maxRecordLength;
+		}
+		return failure;
+	}
+
+	// un changement à $454F46 avec la base à l'offset précédent: le record
+	// commence un octet plus tôt, avec l'octet émis ou celui de la base
+	private static String testIpsEof() throws IOException {
+		byte[] base = randomBytes(IPS_EOF + 0x100, 3);
+
+		RomImage emitted = new RomImage();
+		byte[] bytes = Arrays.copyOfRange(base, IPS_EOF - 6, IPS_EOF + 4);
+		bytes[6] ^= 0xFF;
+		bytes[9] ^= 0xFF;
+		emitted.addSegment(IPS_EOF - 6, bytes);
+
+		RomImage alone = new RomImage();
+		alone.addSegment(IPS_EOF, new byte[] { (byte)0x99, 0x42 });
+
+		// sans base, tous les octets de emitted changent et le record commence avant $454F46
+		RomImage[] images = { emitted, alone, alone };
+		byte[][] bases = { base, base, null };
+		for(int i = 0; i < images.length; i++) {
+			PatchStats stats = new PatchStats();
+			String failure = checkPatches(images[i], bases[i], stats);
+			if(failure == null && !stats.recordBeforeEof) {
+				failure = "\texpected a record at $454F45";
+			}
+			if(failure != null) {
+				return failure;
+			}
+		}
+		return null;
+	}
+
+	// une suite de la base ailleurs dans le résultat, qui ne commence pas sur
+	// une position de l'index (SOURCE_COPY étendue vers l'arrière), une suite
+	// d'octets égaux (TARGET_COPY) et des octets égaux à la base (SOURCE_READ)
+	private static String testBpsCopies() throws IOException {
+		byte[] base = randomBytes(0x10000, 4);
+
+		RomImage image = new RomImage();
+		image.addSegment(0x8000, Arrays.copyOfRange(base, 100, 300));
+		image.addSegment(0x8000 + 200, filled(50, 0x33));
+		image.addSegment(0x9000, Arrays.copyOfRange(base, 0x9000, 0x9100));
+		image.addSegment(0x9100, new byte[] { 1, 2, 3 });
+		image.addSegment(0x12000, randomBytes(20, 5));
+
+		PatchStats stats = new PatchStats();
+		String failure = checkPatches(image, base, stats);
+		if(failure == null && !stats.unalignedSourceCopy) {
+			failure = "\texpected a source copy extended before an index position";
+		}
+		if(failure == null && stats.commands[TARGET_COPY] == 0) {
+			failure = "\texpected a target copy";
+		}
+		if(failure == null && stats.commands[SOURCE_READ] == 0) {
+			failure = "\texpected a source read";
+		}
+		return failure;
+	}
+
+	// segments qui se touchent, se chevauchent, traversent une page et
+	// laissent des trous
+	private static String testSegments() throws IOException {
+		RomImage image = new RomImage();
+		image.addSegment(0x10, new byte[] { 1, 2, 3 });
+		image.addSegment(0x13, new byte[] { 4 });
+		image.addSegment(0x12, new byte[] { 5, 6, 7 });
+		image.addSegment(RomImage.PAGE_SIZE - 2, randomBytes(10, 6));
+		image.addSegment(0x30000, new byte[0]);
+		image.addSegment(0x50000, randomBytes(3, 7));
+		return checkSegments(image);
+	}
+
+	// readSegments(writeSegments(image)) a la taille, les plages et les octets de l'image
+	private static String checkSegments(RomImage image) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		image.writeSegments(out);
+		RomImage read = RomImage.readSegments(new ByteArrayInputStream(out.toByteArray()));
+
+		if(read.getSize() != image.getSize()) {
+			return "\tsegments: size " + read.getSize() + " instead of " + image.getSize();
+		}
+		if(!Arrays.equals(read.getRuns(), image.getRuns())) {
+			return "\tsegments: runs " + Arrays.toString(read.getRuns()) + " instead of "
+					+ Arrays.toString(image.getRuns());
+		}
+		return compare("segments", image.toByteArray(), read.toByteArray());
+	}
+
+	// applique les patchs IPS et BPS à base (vide si null) et compare le
+	// résultat à la base recouverte par l'image
+	private static String checkPatches(RomImage image, byte[] base, PatchStats stats) throws IOException {
+		if(stats == null) {
+			stats = new PatchStats();
+		}
+		ByteBuffer baseBuffer = base != null ? ByteBuffer.wrap(base) : null;
+		byte[] source = base != null ? base : new byte[0];
+
+		byte[] expected = Arrays.copyOf(source, Math.max(source.length, image.getSize()));
+		int[] runs = image.getRuns();
+		for(int run = 0; run < runs.length; run += 2) {
+			image.copyTo(runs[run], ByteBuffer.wrap(expected), runs[run], runs[run + 1]);
+		}
+
+		ByteArrayOutputStream ips = new ByteArrayOutputStream();
+		new PatchWriter(image, baseBuffer).writeIps(ips);
+		String failure = compare("ips", expected, applyIps(source, ips.toByteArray(), stats));
+		if(failure != null) {
+			return failure;
+		}
+
+		ByteArrayOutputStream bps = new ByteArrayOutputStream();
+		new PatchWriter(image, baseBuffer).writeBps(bps);
+		try {
+			return compare("bps", expected, applyBps(source, bps.toByteArray(), stats));
+		}
+		catch(IllegalStateException e) {
+			return "\tbps: " + e.getMessage();
+		}
+	}
+
+	private static byte[] applyIps(byte[] source, byte[] patch, PatchStats stats) {
+		byte[] target = source.clone();
+		int position = 5;
+		while(true) {
+			int offset = readBigEndian(patch, position, 3);
+			position += 3;
+			if(offset == IPS_EOF) {
+				return target;
+			}
+			int length = readBigEndian(patch, position, 2);
+			position += 2;
+
+			if(offset == IPS_EOF - 1) {
+				stats.recordBeforeEof = true;
+			}
+			if(length == 0) {
+				length = readBigEndian(patch, position, 2);
+				target = ensureSize(target, offset + length);
+				Arrays.fill(target, offset, offset + length, patch[position + 2]);
+				position += 3;
+				stats.rleRecords++;
+			}
+			else {
+				target = ensureSize(target, offset + length);
+				System.arraycopy(patch, position, target, offset, length);
+				position += length;
+			}
+			stats.maxRecordLength = Math.max(stats.maxRecordLength, length);
+		}
+	}
+
+	private static byte[] applyBps(byte[] source, byte[] patch, PatchStats stats) {
+		if(!new String(patch, 0, 4, StandardCharsets.US_ASCII).equals("BPS1")) {
+			throw new IllegalStateException("no BPS1 header");
+		}
+		int[] position = { 4 };
+		int sourceSize = (int)readNumber(patch, position);
+		int targetSize = (int)readNumber(patch, position);
+		int metadataSize = (int)readNumber(patch, position);
+		position[0] += metadataSize;
+		if(sourceSize != source.length) {
+			throw new IllegalStateException("source size " + sourceSize + " instead of " + source.length);
+		}
+
+		byte[] target = new byte[targetSize];
+		int output = 0;
+		int sourceRelative = 0;
+		int targetRelative = 0;
+		int end = patch.length - 12;
+		while(position[0] < end) {
+			long data = readNumber(patch, position);
+			int command = (int)(data & 3);
+			int length = (int)(data >>> 2) + 1;
+			stats.commands[command]++;
+
+			switch(command) {
+			case SOURCE_READ:
+				System.arraycopy(source, output, target, output, length);
+				break;
+			case TARGET_READ:
+				System.arraycopy(patch, position[0], target, output, length);
+				position[0] += length;
+				break;
+			case SOURCE_COPY:
+				sourceRelative += readRelative(patch, position);
+				if(sourceRelative % 16 != 0) {
+					stats.unalignedSourceCopy = true;
+				}
+				System.arraycopy(source, sourceRelative, target, output, length);
+				sourceRelative += length;
+				break;
+			case TARGET_COPY:
+				// copie octet par octet, la source peut chevaucher la destination
+				targetRelative += readRelative(patch, position);
+				for(int i = 0; i < length; i++) {
+					target[output + i] = target[targetRelative++];
+				}
+				break;
+			}
+			output += length;
+		}
+		if(output != targetSize) {
+			throw new IllegalStateException("wrote " + output + " bytes instead of " + targetSize);
+		}
+
+		checkCrc("source", source, patch, end);
+		checkCrc("target", target, patch, end + 4);
+		CRC32 patchCrc = new CRC32();
+		patchCrc.update(patch, 0, end + 8);
+		if((int)patchCrc.getValue() != readLittleEndian(patch, end + 8)) {
+			throw new IllegalStateException("bad patch CRC32");
+		}
+		return target;
+	}
+
+	private static void checkCrc(String name, byte[] bytes, byte[] patch, int position) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		if((int)crc.getValue() != readLittleEndian(patch, position)) {
+			throw new IllegalStateException("bad " + name + " CRC32");
+		}
+	}
+
+	private static long readNumber(byte[] patch, int[] position) {
+		long number = 0;
+		long shift = 1;
+		while(true) {
+			int value = patch[position[0]++] & 0xFF;
+			number += (value & 0x7F) * shift;
+			if((value & 0x80) != 0) {
+				return number;
+			}
+			shift <<= 7;
+			number += shift;
+		}
+	}
+
+	private static int readRelative(byte[] patch, int[] position) {
+		long data = readNumber(patch, position);
+		return (int)((data & 1) != 0 ? -(data >>> 1) : data >>> 1);
+	}
+
+	private static int readBigEndian(byte[] bytes, int position, int count) {
+		int value = 0;
+		for(int i = 0; i < count; i++) {
+			value = (value << 8) | (bytes[position + i] & 0xFF);
+		}
+		return value;
+	}
+
+	private static int readLittleEndian(byte[] bytes, int position) {
+		int value = 0;
+		for(int i = 3; i >= 0; i--) {
+			value = (value << 8) | (bytes[position + i] & 0xFF);
+		}
+		return value;
+	}
+
+	private static byte[] ensureSize(byte[] bytes, int size) {
+		return bytes.length >= size ? bytes : Arrays.copyOf(bytes, size);
+	}
+
+	private static String compare(String format, byte[] expected, byte[] actual) {
+		if(Arrays.equals(expected, actual)) {
+			return null;
+		}
+		if(expected.length != actual.length) {
+			return "\t" + format + ": " + actual.length + " bytes instead of " + expected.length;
+		}
+		int offset = 0;
+		while(expected[offset] == actual[offset]) {
+			offset++;
+		}
+		return "\t" + format + ": first difference at $" + Integer.toHexString(offset).toUpperCase();
+	}
+
+	private static byte[] filled(int length, int value) {
+		byte[] bytes = new byte[length];
+		Arrays.fill(bytes, (byte)value);
+		return bytes;
+	}
+
+	// octets pseudo-aléatoires, toujours les mêmes pour un seed
+	private static byte[] randomBytes(int length, long seed) {
+		byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+}
@@ -9,123 +9,119 @@ public class Frame {
 
     
 
-    private Map<String, Value> variables = new HashMap<>();
-    private List<Label> labels = new LinkedList<>();
+    // registres de la machine virtuelle: les variables et paramètres d'abord
+    // (index attribué par l'analyse sémantique), puis les temporaires.
+    // Les entiers et booléens (0/1) sont gardés déballés, seules les
+    // chaînes utilisent des objets Value
+    private int[] intRegisters;
+    private Value[] valueRegisters;
+    private LabelTable labelTable = new LabelTable();
+    private AnonLabelIndex anonLabels = new AnonLabelIndex();
     private Token location;
     private MacroInfo macroInfo;
     private Frame parentFrame;
-    
-    public Frame() {
 
+    // position dans le bytecode où reprendre au retour d'un appel de macro
+    private int returnPc;
+    
+    public Frame(int numRegisters) {
+        initRegisters(numRegisters);
     }
 
     public Frame(Frame parentFrame, MacroInfo macroInfo, Token location) {
+        initRegisters(macroInfo.getBytecode().getNumRegisters());
         this.parentFrame = parentFrame;
         this.macroInfo = macroInfo;
         this.location = location;
     }
     
 	public void addLabel(String name, String prefix, int macroId, int offset) {
-		this.labels.add(new Label(name, prefix, macroId, offset));	
+		this.labelTable.addLabel(new Label(name, prefix, macroId, offset));
 	}
 	
 	public Integer getLabelOffset(String name, String prefix, int macroId) {
-		List<Label> sameName = new LinkedList<>();
-		for(Label label: this.labels) {
-			// on ajoute à un liste les labels ayant le même nom et étant dans le même macro
-			if(label.getName().equals(name) && label.getMacroId() == macroId) {
-				sameName.add(label);		
-			}
-		}
-		do {
-			for(Label label: sameName) {
-				// on regarde le préfix courant, si on ne trouve pas
-				// on enlève le dernier nom du préfix et on regarde dans le parent
-				if(label.getPrefix().equals(prefix)) {
-					return label.getOffset();
-				}
-			}
-			// reconstruction du préfix parent
-			String[] parts = prefix.split("-");
-			prefix = "";
-			
-			for(int i = 0; i < parts.length - 1; i++) {
-				prefix += parts[i];
-				if(i < parts.length - 2) {
-					prefix += "-";
-				}
-			}
-		} while(!prefix.equals(""));
-		
-		return null;
+		// on regarde le préfix courant, si on ne trouve pas
+		// la table regarde dans les namespaces parents
+		Label label = this.labelTable.getLabel(name, prefix, macroId);
+		return label != null ? label.getOffset() : null;
 	}
 	
 	public Integer getLabelOffset(String name) {
-		for(Label label: this.labels) {
-			// si le label a le même nom et qu'il n'est pas dans un namespace
-			// (donc il est dans le main ou le "main" d'un macro)
-			if(label.getName().equals(name) && label.getPrefix().equals("")) {
-				return label.getOffset();
-			}
+		// label ayant le même nom et n'étant pas dans un namespace
+		// (donc il est dans le main ou le "main" d'un macro)
+		Label label = this.labelTable.getRootLabel(name);
+		return label != null ? label.getOffset() : null;
+	}
+	
+	public Collection<Label> getLabels() {
+		return this.labelTable.getLabels();
+	}
+	
+	public void addAnonLabel(String sign, int macroId, int offset) {
+		if(sign.equals("+")) {
+			this.anonLabels.addForward(macroId, offset);
+		}
+		else {
+			this.anonLabels.addBackward(macroId, offset);
 		}
-		return null;
 	}
 	
 	public Integer getAnonLabelOffset(int branchOffset, int macroId, String sign, Token token) {
-		int diff = Consts.MAX_INT;
-		Label labelAnon = null;
+		Integer labelOffset = null;
 		
 		// si label anonyme positif
 		if(sign.equals("+")) {
-			for(Label label: this.labels) {
-				// on va chercher la déclaration positive
-				// la plus proche en descendant
-				if(label.getName().contains("+") &&
-				   label.getMacroId() == macroId && 
-				   label.getOffset() - branchOffset < diff &&
-				   label.getOffset() - branchOffset > 0) {
-					diff = label.getOffset() - branchOffset;
-					labelAnon = label;
-				}
-			}
+			// on va chercher la déclaration positive
+			// la plus proche en descendant
+			labelOffset = this.anonLabels.getForward(macroId, branchOffset);
 			
 			// edge case comme seulement "++ beq ++" dans un fichier
-			if(labelAnon == null) {
+			if(labelOffset == null) {
 				throw new InterpreterException(token,
 						"misuse of positive anomymous label declaration or branching");
 			}
 		}
 		else {
-			for(Label label: this.labels) {
-				// on va chercher la déclaration négative
-				// la plus proche en remontant
-				if(label.getName().contains("-") &&
-				   label.getMacroId() == macroId && 
-				   branchOffset - label.getOffset() < diff &&
-				   branchOffset - label.getOffset() > 0) {
-					
-					diff = branchOffset - label.getOffset();
-					labelAnon = label;
-				}
-			}
+			// on va chercher la déclaration négative
+			// la plus proche en remontant
+			labelOffset = this.anonLabels.getBackward(macroId, branchOffset);
 			
 			// edge case comme seulement "-- beq --" dans un fichier
-			if(labelAnon == null) {
+			if(labelOffset == null) {
 				throw new InterpreterException(token,
 						"misuse of negative anomymous label declaration or branching");
 			}
 		}
-		return labelAnon.getOffset();
+		return labelOffset;
 	}
 
-    public void putVariable(TIdent ident, Value value, Frame frame) {
-        String varName = ident.getText();
-        this.variables.put(varName, value);
+    private void initRegisters(int numRegisters) {
+        this.intRegisters = new int[numRegisters];
+        this.valueRegisters = new Value[numRegisters];
+    }
+
+    public int[] getIntRegisters() {
+        return this.intRegisters;
+    }
+
+    public Value[] getValueRegisters() {
+        return this.valueRegisters;
+    }
+
+    public int getInt(int slot) {
+        return this.intRegisters[slot];
+    }
+
+    public boolean getBool(int slot) {
+        return this.intRegisters[slot] != 0;
     }
 
-    public Value getVariable(TIdent ident, Frame frame) {
-        String varName = ident.getText();
-        return this.variables.get(varName);
+    public Value getVariable(int slot) {
+        return this.valueRegisters[slot];
+    }
+
+    public MacroInfo getMacroInfo() {
+        return this.macroInfo;
     }
 
     public Frame getParentFrame() {
@@ -133,6 +129,18 @@ public class Frame {
         return this.parentFrame;
     }
 
+    public Token getLocation() {
+        return this.location;
+    }
+
+    public int getReturnPc() {
+        return this.returnPc;
+    }
+
+    public void setReturnPc(int returnPc) {
+        this.returnPc = returnPc;
+    }
+
     public void setLocation(
             Token location) {
 
@@ -14,6 +14,9 @@ public class GlobalScope {
 	private Map<Node, VariableScope> variableScopes = new HashMap<>();
 	private Node sourceNode;
 	
+	// nombre de cases de variables d'un frame de ce scope
+	private int numSlots = 0;
+	
 	public GlobalScope(Node node, VariableScope variableScope) {
 		addVariableScope(node, variableScope);
 		this.sourceNode = node;
@@ -38,9 +41,20 @@ public class GlobalScope {
 		return this.variableScopes.get(node);	
 	}
 	
-	public void addDecl(TIdent ident, Type type) {
+	public int addDecl(TIdent ident, Type type) {
 		VariableScope variableScope = this.variableScopes.get(this.sourceNode);
-		variableScope.addDecl(ident, type);
+		int slot = newSlot();
+		variableScope.addDecl(ident, type, slot);
+		return slot;
+	}
+	
+	// chaque déclaration a sa propre case, même dans deux blocs voisins
+	public int newSlot() {
+		return this.numSlots++;
+	}
+	
+	public int getNumSlots() {
+		return this.numSlots;
 	}
 	
 	public void addLabel(TIdent ident) {
@@ -0,0 +1,17 @@
+package assembler;
+
+// assembleur qui garde les sections du build précédent d'un même programme.
+// Les sections du main (découpées aux org de premier niveau) dont le texte,
+// l'état d'entrée et les macros appelés n'ont pas changé sont rejouées
+// au lieu d'être exécutées. Toutes les corrections sont résolues à chaque
+// build, le résultat est donc le même qu'avec Assembler.assemble
+
+public class IncrementalAssembler {
+
+	private SectionCache sectionCache = new SectionCache();
+
+	// un seul build à la fois par programme
+	public synchronized AssemblyResult assemble(CharSequence source, AssemblerOptions options) {
+		return Assembler.assemble(source, options, this.sectionCache);
+	}
+}
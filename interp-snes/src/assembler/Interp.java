@@ -1,86 +1,354 @@
 package assembler;
 
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.PushbackReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import assembler.InterpreterException;
 import assembler.SemanticException;
-import assembler.SemanticInfo;
-import assembler.syntax.lexer.Lexer;
 import assembler.syntax.lexer.LexerException;
-import assembler.syntax.node.Node;
 import assembler.syntax.node.Start;
-import assembler.syntax.parser.Parser;
 import assembler.syntax.parser.ParserException;
 
 public class Interp {
     public static void main(
             String[] args) {
 
-        if (args.length != 1) {
-            System.err.println("Usage: java interp.Interp nomficher [test]");
+        int maxMacroDepth = Consts.MAX_MACRO_DEPTH;
+        boolean batch = false;
+        boolean daemon = false;
+        boolean watch = false;
+        AstCache astCache = null;
+        OutputOptions outputOptions = new OutputOptions();
+        int port = Consts.DAEMON_PORT;
+        List<String> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            // option de profondeur maximale des macros imbriqués
+            if (args[i].equals("--max-macro-depth") && i + 1 < args.length) {
+                i++;
+                try {
+                    maxMacroDepth = Integer.parseInt(args[i]);
+                }
+                catch (NumberFormatException e) {
+                    maxMacroDepth = -1;
+                }
+                if (maxMacroDepth <= 0) {
+                    System.err.println("Invalid macro depth: " + args[i]);
+                    System.exit(1);
+                }
+            }
+            // plusieurs fichiers (ou dossiers) assemblés en parallèle
+            else if (args[i].equals("--batch")) {
+                batch = true;
+            }
+            // dossier de la cache des arbres syntaxiques
+            else if (args[i].equals("--ast-cache") && i + 1 < args.length) {
+                i++;
+                astCache = new AstCache(Paths.get(args[i]));
+            }
+            // format du fichier binaire: flat, sparse, segments, ips, bps ou none
+            else if (args[i].equals("--format") && i + 1 < args.length) {
+                i++;
+                try {
+                    outputOptions.setBinaryFormat(BinaryFormat.valueOf(args[i].toUpperCase()));
+                }
+                catch (IllegalArgumentException e) {
+                    System.err.println("Invalid binary format: " + args[i]);
+                    System.exit(1);
+                }
+            }
+            // écrit dans une ROM existante au lieu de results/
+            else if (args[i].equals("--patch") && i + 1 < args.length) {
+                i++;
+                outputOptions.setPatchRom(Paths.get(args[i]));
+            }
+            // ROM de base des patchs IPS et BPS
+            else if (args[i].equals("--base") && i + 1 < args.length) {
+                i++;
+                outputOptions.setBaseRom(Paths.get(args[i]));
+            }
+            // pas de listing, ou pas de listing dans la console
+            else if (args[i].equals("--no-listing")) {
+                outputOptions.setListing(false);
+            }
+            else if (args[i].equals("--quiet")) {
+                outputOptions.setEcho(false);
+            }
+            // fichier de symboles results/nom.sym
+            else if (args[i].equals("--symbols")) {
+                outputOptions.setSymbols(true);
+            }
+            // traduction des adresses de la ROM: lorom, hirom ou none
+            else if (args[i].equals("--mapping") && i + 1 < args.length) {
+                i++;
+                try {
+                    outputOptions.setMapping(RomMapping.valueOf(args[i].toUpperCase()));
+                }
+                catch (IllegalArgumentException e) {
+                    System.err.println("Invalid ROM mapping: " + args[i]);
+                    System.exit(1);
+                }
+            }
+            // réassemble les fichiers à chaque sauvegarde
+            else if (args[i].equals("--watch")) {
+                watch = true;
+            }
+            // serveur d'assemblage sur un port local
+            else if (args[i].equals("--daemon")) {
+                daemon = true;
+            }
+            else if (args[i].equals("--port") && i + 1 < args.length) {
+                i++;
+                try {
+                    port = Integer.parseInt(args[i]);
+                }
+                catch (NumberFormatException e) {
+                    System.err.println("Invalid port: " + args[i]);
+                    System.exit(1);
+                }
+            }
+            else {
+                files.add(args[i]);
+            }
+        }
+
+        if (daemon) {
+            try {
+                new AssemblerDaemon(port).run();
+            }
+            catch (IOException e) {
+                System.err.println("I/O ERROR: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (watch && !files.isEmpty()) {
+            AssemblerWatcher watcher = new AssemblerWatcher(maxMacroDepth, astCache, outputOptions);
+            for (String file : files) {
+                watcher.addFile(file);
+            }
+            try {
+                watcher.run();
+            }
+            catch (IOException e) {
+                System.err.println("I/O ERROR: " + e.getMessage());
+                System.exit(1);
+            }
+            catch (InterruptedException e) {
+                System.exit(1);
+            }
+        }
+
+        if (batch && !files.isEmpty()) {
+            // les fichiers du batch écriraient tous dans la même ROM en même temps
+            if (outputOptions.getPatchRom() != null) {
+                System.err.println("--patch cannot be used with --batch");
+                System.exit(1);
+            }
+            System.exit(assembleBatch(files, maxMacroDepth, astCache, outputOptions));
+        }
+
+        if (files.size() != 1) {
+            System.err.println("Usage: java interp.Interp [--max-macro-depth n] [--ast-cache dossier] [sortie] nomficher [test]");
+            System.err.println("       sortie: [--format flat|sparse|segments|ips|bps|none] [--base rom] [--patch rom] [--mapping lorom|hirom|none]");
+            System.err.println("               [--no-listing] [--quiet] [--symbols]");
+            System.err.println("       java interp.Interp [options] --batch fichier|dossier...");
+            System.err.println("       java interp.Interp [options] --watch fichier...");
+            System.err.println("       java interp.Interp --daemon [--port n]");
             System.exit(1);
         }
-        
-        String[] path = args[0].split("/");
-        String filename = path[path.length - 1];
-        filename = filename.substring(0, filename.lastIndexOf('.'));
 
-        try {
-            Lexer lexer = new Lexer(new PushbackReader(new FileReader(args[0]), 2));
-            Parser parser = new Parser(lexer);
-
-            Start tree = parser.parse();
-            
-            SemanticInfo semantics = new SemanticInfo();
-            
-            OpcodeList opcodeList = new OpcodeList();
-            
-            Map<DataNode, WriteData> data = new LinkedHashMap<>();
-            
-            Map<Node, Frame> frames = new HashMap<>();
-            
-            tree.apply(new SemanticAnalysisPhase1(semantics));
-            
-            tree.apply(new SemanticAnalysisPhase2(semantics));
-
-            tree.apply(new InterpreterEngine(semantics, data, frames, opcodeList));
-            
-            tree.apply(new CompilationEngine(semantics, data, frames, filename));
-        }
-        catch (FileNotFoundException e) {
-            System.err.println("The file " + args[0] + " has not been found.");
+        String error = assemble(files.get(0), maxMacroDepth, System.out, null, astCache, outputOptions);
+        if (error != null) {
+            System.err.println(error);
             System.exit(1);
         }
+    }
+
+    // assemble un fichier vers results/, retourne le message d'erreur ou null.
+    // Tout l'état est propre à l'appel, plusieurs fichiers peuvent donc être
+    // assemblés en même temps
+    public static String assemble(String file, int maxMacroDepth, PrintStream out) {
+        return assemble(file, maxMacroDepth, out, null, null);
+    }
+
+    // sectionCache garde les sections d'un build à l'autre, null pour un build complet.
+    // astCache donne l'arbre d'un fichier déjà parsé, null pour toujours parser
+    public static String assemble(String file, int maxMacroDepth, PrintStream out, SectionCache sectionCache,
+            AstCache astCache) {
+        return assemble(file, maxMacroDepth, out, sectionCache, astCache, new OutputOptions());
+    }
+
+    // outputOptions choisit les fichiers écrits (voir OutputOptions)
+    public static String assemble(String file, int maxMacroDepth, PrintStream out, SectionCache sectionCache,
+            AstCache astCache, OutputOptions outputOptions) {
+        String filename = getOutputName(file);
+
+        try {
+            Start tree;
+            if (astCache != null) {
+                tree = astCache.parse(Files.readAllBytes(Paths.get(file)));
+            }
+            else {
+                try (SourceReader reader = SourceReader.open(Paths.get(file))) {
+                    tree = Assembler.parse(reader);
+                }
+            }
+            CompilationEngine compiler = Assembler.compile(tree, filename, maxMacroDepth, out, sectionCache);
+            compiler.setOutputOptions(outputOptions);
+            compiler.writeFiles();
+            return null;
+        }
+        catch (NoSuchFileException e) {
+            return "The file " + file + " has not been found.";
+        }
         catch (ParserException e) {
-            System.err.println("SYNTAX ERROR: " + e.getMessage());
-            System.exit(1);
+            return "SYNTAX ERROR: " + e.getMessage();
         }
         catch (LexerException e) {
-            System.err.println("LEXICAL ERROR: " + e.getMessage());
-            System.exit(1);
+            return "LEXICAL ERROR: " + e.getMessage();
         }
         catch (IOException e) {
-            System.err.println("I/O ERROR: " + e.getMessage());
-            System.exit(1);
+            return "I/O ERROR: " + e.getMessage();
         }
         catch (InterpreterException e) {
-            System.err.println("INTERPRETATION ERROR: " + e.getMessage());
             //e.printCallContext();
-            System.exit(1);
+            return "INTERPRETATION ERROR: " + e.getMessage();
         }
         catch (SemanticException e) {
-        	System.err.println("SEMANTIC ERROR: " + e.getMessage());
-            System.exit(1);
+            return "SEMANTIC ERROR: " + e.getMessage();
         }
         catch (CompilationException e) {
-        	System.err.println("COMPILATION ERROR: " + e.getMessage());
-            System.exit(1);
+            return "COMPILATION ERROR: " + e.getMessage();
+        }
+        catch (RuntimeException | StackOverflowError e) {
+            // exception imprévue (e.g. division par 0)
+            return "ERROR: " + e;
+        }
+    }
+
+    // nom des fichiers écrits dans results/ (e.g. "prog" pour "src/prog.txt")
+    private static String getOutputName(String file) {
+        String[] path = file.split("/");
+        String filename = path[path.length - 1];
+        int extension = filename.lastIndexOf('.');
+        return extension >= 0 ? filename.substring(0, extension) : filename;
+    }
+
+    // assemble les fichiers sur un pool de threads, chaque fichier a sa propre
+    // sortie qui est affichée dans l'ordre avec son statut. Retourne le code
+    // de sortie: 0 si tous les fichiers ont été assemblés, sinon 1
+    private static int assembleBatch(List<String> paths, int maxMacroDepth, AstCache astCache,
+            OutputOptions outputOptions) {
+        // erreur d'un chemin trouvée avant l'assemblage, null si le fichier est assemblé
+        List<String> files = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        for (String path : paths) {
+            File dir = new File(path);
+
+            // un dossier donne tous ses fichiers sources
+            if (dir.isDirectory()) {
+                File[] sources = dir.listFiles((d, name) -> name.endsWith(".txt"));
+                if (sources == null) {
+                    files.add(path);
+                    errors.add("The directory " + path + " cannot be read.");
+                    continue;
+                }
+                Arrays.sort(sources);
+                for (File source : sources) {
+                    files.add(source.getPath());
+                    errors.add(null);
+                }
+            }
+            else {
+                files.add(path);
+                errors.add(null);
+            }
+        }
+
+        // deux fichiers du même nom dans des dossiers différents écriraient
+        // les mêmes fichiers de results/, seul le premier est assemblé
+        Map<String, String> outputNames = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (errors.get(i) == null) {
+                String name = getOutputName(files.get(i));
+                String other = outputNames.putIfAbsent(name, files.get(i));
+                if (other != null) {
+                    errors.set(i, "The output name " + name + " is already used by " + other + ".");
+                }
+            }
+        }
+
+        ExecutorService pool = Executors.newWorkStealingPool();
+        List<Future<BatchResult>> results = new ArrayList<>();
+
+        for (int i = 0; i < files.size(); i++) {
+            if (errors.get(i) != null) {
+                results.add(null);
+                continue;
+            }
+            String file = files.get(i);
+            results.add(pool.submit(() -> {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                PrintStream out = Assembler.newPrintStream(buffer);
+                String error = assemble(file, maxMacroDepth, out, null, astCache, outputOptions);
+                out.close();
+                return new BatchResult(Assembler.toString(buffer), error);
+            }));
+        }
+
+        int failed = 0;
+        for (int i = 0; i < files.size(); i++) {
+            BatchResult result;
+            try {
+                result = results.get(i) != null ? results.get(i).get() : new BatchResult("", errors.get(i));
+            }
+            catch (ExecutionException e) {
+                // assemble retourne déjà ses erreurs, reste la sortie du fichier
+                result = new BatchResult("", "ERROR: " + e.getCause());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result = new BatchResult("", "ERROR: interrupted");
+            }
+
+            System.out.print(result.output);
+            if (result.error == null) {
+                System.out.println(files.get(i) + ": OK");
+            }
+            else {
+                System.out.println(files.get(i) + ": " + result.error);
+                failed++;
+            }
+        }
+        pool.shutdown();
+
+        System.out.println(files.size() + " files, " + failed + " failed");
+        return failed == 0 ? 0 : 1;
+    }
+
+    // sortie et erreur d'un fichier du batch
+    private static class BatchResult {
+        private String output;
+        private String error;
+
+        public BatchResult(String output, String error) {
+            this.output = output;
+            this.error = error;
         }
     }
 }
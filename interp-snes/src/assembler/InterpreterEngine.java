@@ -3,7 +3,11 @@ package assembler;
 import assembler.syntax.analysis.DepthFirstAdapter;
 import assembler.syntax.node.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -14,17 +18,23 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 	private SemanticInfo semantics;
 	private Frame currentFrame;
 	
-	// liste des frames utilisés lors de la dernière phase de compilation
-	private Map<Node, Frame> frames;
+	// frame du programme principal
+	private Frame mainFrame;
 	
-	private List<Value> currentArgs;
+	
+	// résultat de la dernière expression évaluée. Les entiers et booléens
+	// restent dans intResult et boolResult, seul une chaîne utilise result
+	private Type resultType;
+	private int intResult;
+	private boolean boolResult;
 	private Value result;
 	
-	// liste des instructions d'assembleur
-	private OpcodeList opcodeList;
+	// image binaire dans laquelle les instructions sont écrites
+	private RomImage image;
 	
-	// contient toutes les données binaires à écrire
-	private Map<DataNode, WriteData> data;
+	// corrections à faire sur les instructions dont l'argument est un label,
+	// résolues une fois l'interprétation terminée
+	private List<Fixup> fixups;
 	
 	// octets de l'instruction courante
 	// contient les octects d'argument en premier lieu
@@ -35,6 +45,20 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 	// ex: "$10" dans "lda label_a+$10", sinon null
 	private Integer currentExtraValue;
 	
+	// label de l'argument de l'instruction courante, sinon null
+	// ex: "label_a" dans "lda label_a"
+	private String currentLabel;
+	
+	// "+" ou "-" si l'instruction courante branche vers un label anonyme
+	private String currentAnonSign;
+	
+	// token d'erreur de la référence à un label de l'instruction courante
+	private Token currentLabelToken;
+	
+	// type de correction si l'argument est un label
+	// (relatif pour un branchement, sinon absolu)
+	private Fixup.Kind currentFixupKind;
+	
 	// true si l'instruction peut être écrite
 	// e.g. false dans le cas de "beq label_a"
 	private boolean currentIsReady;
@@ -62,9 +86,6 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 	// id incrémenté à chaque appel de macro
 	private int macroId = 0;
 	
-	// id incrémenté à chaque déclartion de label anomyme
-	private int anonId = 0;
-	
 	// true si accFlag a été modifié au moins une fois
 	private boolean setClearAccFlag = false;
 	
@@ -80,29 +101,130 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 	// le préfix d'un label (concaténation des namespaces)
 	private String labelPrefix = "";
 	
-	public InterpreterEngine(SemanticInfo semantics, Map<DataNode, WriteData> data, Map<Node, Frame> frames, OpcodeList opcodeList) {
+	// nom ajouté au préfix par chaque namespace ouvert
+	private LinkedList<String> nameSpaceNames = new LinkedList<>();
+	
+	// développements de macros sans effet de bord, indexés par
+	// (macro, préfix, modes M/X à l'entrée, valeurs des arguments)
+	private Map<List<Object>, MacroExpansion> expansionCache = new HashMap<>();
+	
+	// développement en cours d'enregistrement et sa clé, sinon null
+	private MacroExpansion currentExpansion;
+	private List<Object> currentExpansionKey;
+	
+	// nombre maximal de macros imbriqués
+	private int maxMacroDepth = Consts.MAX_MACRO_DEPTH;
+	
+	// sortie des instructions print et println
+	private PrintStream out = System.out;
+	
+	// sections du build précédent en mode incrémental, sinon null
+	private SectionCache sectionCache;
+	
+	// section du main en cours d'enregistrement, sinon null
+	private SectionRecord currentSection;
+	
+	public InterpreterEngine(SemanticInfo semantics, RomImage image, List<Fixup> fixups) {
 		this.semantics = semantics;
-		this.data = data;
-		this.opcodeList = opcodeList;
-		this.frames = frames;
+		this.image = image;
+		this.fixups = fixups;
 		this.currentOffset = 0;
 	}
 	
+	public void setMaxMacroDepth(int maxMacroDepth) {
+		this.maxMacroDepth = maxMacroDepth;
+	}
+	
+	public void setOutput(PrintStream out) {
+		this.out = out;
+	}
+	
+	public PrintStream getOutput() {
+		return this.out;
+	}
+	
+	public void setSectionCache(SectionCache sectionCache) {
+		this.sectionCache = sectionCache;
+	}
+	
+	public Frame getMainFrame() {
+		return this.mainFrame;
+	}
+	
 	private void visit(Node node) {
         if (node != null) {
+            // une expression pure a déjà été calculée par ConstantFolder
+            Value constant = this.semantics.getConstant(node);
+            if (constant != null) {
+                setConstantResult(constant);
+                return;
+            }
             node.apply(this);
         }
     }
+    
+    private void setConstantResult(Value constant) {
+        if(constant instanceof IntValue) {
+        	setIntResult(((IntValue)constant).getValue());
+        }
+        else if(constant instanceof BoolValue) {
+        	setBoolResult(((BoolValue)constant).getValue());
+        }
+        else {
+        	setStringResult(constant);
+        }
+    }
 
-    private Value eval(Node node) {
+    // évalue une expression entière sans créer d'IntValue
+    private int evalInt(Node node) {
         visit(node);
-        return this.result;
+        return this.intResult;
+    }
+    
+    // évalue une expression booléenne sans créer de BoolValue
+    private boolean evalBool(Node node) {
+        visit(node);
+        return this.boolResult;
+    }
+    
+    private void setIntResult(int value) {
+        this.intResult = value;
+        this.resultType = Type.INT;
+    }
+    
+    private void setBoolResult(boolean value) {
+        this.boolResult = value;
+        this.resultType = Type.BOOL;
+    }
+    
+    private void setStringResult(String value) {
+        setStringResult(new StringValue(value));
+    }
+    
+    private void setStringResult(Value value) {
+        this.result = value;
+        this.resultType = Type.STRING;
+    }
+    
+    // résultat courant en chaîne de caractères (pour la concaténation)
+    private String resultToString() {
+        if(this.resultType == Type.INT) {
+        	return Integer.toString(this.intResult);
+        }
+        else if(this.resultType == Type.BOOL) {
+        	return Boolean.toString(this.boolResult);
+        }
+        return ((StringValue)this.result).getValue();
     }
     
     // initialise les variables pour une instruction (sauf branchements)
 	private void initOpFields() {
 		this.currentWriteData = null;
 		this.currentExtraValue = null;
+		this.currentLabel = null;
+		this.currentAnonSign = null;
+		this.currentLabelToken = null;
+		this.currentFixupKind = Fixup.Kind.ABSOLUTE;
 		this.currentLength = null;
 		this.currentMaxLength = 3;
 		this.currentMinLength = 1;
@@ -110,7 +232,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 	}
 	
 	// initialise les variable pour les instructions de branchement (toujours 2 octets)
-	private void initOpFieldsBranch(int opcodeValue) {
+	private void initOpFieldsBranch(int opcodeValue, PBranchType branchType, Token token) {
 		byte[] temp = {(byte)opcodeValue, (byte)0};
 		this.currentWriteData = temp;
 		this.currentExtraValue = null;
@@ -118,29 +240,37 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		this.currentMaxLength = 1;
 		this.currentMinLength = 1;
 		this.currentIsReady = false;
+		
+		// label vers lequel on branche
+		this.currentLabel = null;
+		this.currentAnonSign = null;
+		this.currentLabelToken = token;
+		this.currentFixupKind = Fixup.Kind.RELATIVE;
+		
+		if(branchType instanceof AIdentBranchType) {
+			this.currentLabel = ((AIdentBranchType)branchType).getIdent().getText();
+		}
+		else if(branchType instanceof APlusBranchType) {
+			this.currentAnonSign = "+";
+		}
+		else {
+			this.currentAnonSign = "-";
+		}
 	}
     
-	// concatène le nom de l'instruction variable avec l'identifiant pour arguments
-	// à 1, 2 ou 3 octets, ensuite va chercher la bonne instruction et concatène l'argument en binaire
+	// choisis le mode direct page, absolu ou long selon la longeur de l'argument (1, 2 ou 3 octets),
+	// ensuite va chercher la bonne instruction et concatène l'argument en binaire
 	// à la valeur de l'instruction
-	private void getAbsOpcodeAddWriteData(Node node, String opName) {
-		String name = concatLengthToName(opName, this.currentWriteData);
-		Integer opcode = this.opcodeList.getOpcode(name);
+	private void getAbsOpcodeAddWriteData(Mnemonic mnemonic, boolean indexedX) {
+		AddressingMode mode = AddressingMode.fromLength(this.currentWriteData.length, indexedX);
+		int opcode = getOpcodeValue(mnemonic, mode);
 		this.currentWriteData = appendOpArgsToOpcode(opcode, this.currentWriteData);
-		addWriteData(node);
+		addWriteData();
 	}
-    
-	// retourne le nom d'une instruction dépendant de sa longeur
-	private String concatLengthToName(String name, byte[] data) {
-		if(data.length == 1) {
-			return name + Consts.BYTE;
-		}
-		else if(data.length == 2) {
-			return name + Consts.WORD;
-		}
-		else {
-			return name + Consts.LONG;
-		}
+	
+	// valeur hexadécimal d'une instruction selon son mnémonique et son mode d'adressage
+	private int getOpcodeValue(Mnemonic mnemonic, AddressingMode mode) {
+		return OpcodeTable.get(mnemonic, mode).getValue();
 	}
 	
 	// met la valeur hexadécimal de l'instruction en tête de ses arguments
@@ -155,11 +285,25 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		return returnData;
 	}
 	
-	// ajoute une instruction à la liste d'instructions à écrire en binaire
-	private void addWriteData(Node node) {
-		this.data.put(new DataNode(node, this.macroId), new WriteData(this.currentOffset,
-				this.currentWriteData, this.currentIsReady,
-				this.currentExtraValue));
+	// écrit l'instruction dans l'image binaire
+	private void addWriteData() {
+		this.image.addSegment(this.currentOffset, this.currentWriteData);
+		if(this.currentExpansion != null) {
+			this.currentExpansion.addSegment(this.currentOffset, this.currentWriteData);
+		}
+		
+		// si l'argument est un label, on note la correction à faire
+		// une fois que tous les labels seront connus
+		if(!this.currentIsReady && this.currentLabelToken != null) {
+			Fixup fixup = new Fixup(this.currentOffset, this.image.getNumSegments() - 1,
+					this.currentWriteData.length - 1, this.currentFixupKind,
+					this.currentLabel, this.currentAnonSign, this.labelPrefix, this.macroId,
+					this.currentFrame, this.currentExtraValue, this.currentLabelToken);
+			this.fixups.add(fixup);
+			if(this.currentExpansion != null) {
+				this.currentExpansion.addFixup(fixup);
+			}
+		}
 		
 		// incrémentation de l'offset d'écriture
 		this.currentOffset += this.currentWriteData.length;
@@ -246,53 +390,214 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 	
 	@Override
 	public void caseAProg(AProg node) {
-		Frame frame = new Frame();
-		frames.put(node, frame);
-		this.currentFrame = frames.get(node);
-		visit(node.getInsts());
+		// le méta-langage est exécuté par la machine virtuelle, qui
+		// nous renvoie les instructions d'assembleur à écrire
+		List<Section> sections = this.semantics.getMainSections();
+		
+		// les sections partagent le frame principal
+		int numRegisters = 0;
+		for(Section section: sections) {
+			numRegisters = Math.max(numRegisters, section.getBytecode().getNumRegisters());
+		}
+		this.mainFrame = new Frame(numRegisters);
+		this.currentFrame = this.mainFrame;
+		VirtualMachine vm = new VirtualMachine(this, this.maxMacroDepth);
+		
+		if(this.sectionCache == null) {
+			for(Section section: sections) {
+				vm.execute(section.getBytecode(), this.mainFrame);
+			}
+			return;
+		}
+		
+		this.sectionCache.startBuild();
+		for(Section section: sections) {
+			List<Object> key = getSectionKey(section);
+			SectionRecord record = this.sectionCache.get(key);
+			
+			if(record != null && record.hasSameMacros(this.semantics, this.sectionCache)) {
+				replaySection(section, record);
+			}
+			else {
+				record = recordSection(section, vm);
+			}
+			this.sectionCache.put(key, record);
+		}
+		this.sectionCache.endBuild();
+	}
+	
+	// clé d'une section: son empreinte, l'état de l'interpréteur à son
+	// entrée et la valeur des variables du main qu'elle utilise
+	private List<Object> getSectionKey(Section section) {
+		List<Object> key = new ArrayList<>();
+		key.add(section.getDigest());
+		key.add(this.currentOffset);
+		key.add(this.macroId);
+		key.add(this.setClearAccFlag);
+		key.add(this.accFlag);
+		key.add(this.setClearXyFlag);
+		key.add(this.xyFlag);
+		key.add(this.labelPrefix);
+		key.add(new ArrayList<>(this.nameSpaceNames));
+		
+		for(int slot: section.getSlots(this.semantics)) {
+			Value value = this.mainFrame.getVariable(slot);
+			key.add(this.mainFrame.getInt(slot));
+			key.add(value != null ? value.toString() : null);
+		}
+		return key;
+	}
+	
+	// exécute la section en notant ce qu'elle produit. Les octets et les
+	// corrections sont pris dans l'image et la liste à la fin, ce qui
+	// inclut ceux des développements de macros rejoués
+	private SectionRecord recordSection(Section section, VirtualMachine vm) {
+		SectionRecord record = new SectionRecord(section);
+		int firstSegment = this.image.getNumSegments();
+		int firstFixup = this.fixups.size();
+		
+		PrintStream out = this.out;
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		this.out = Assembler.newPrintStream(buffer);
+		this.currentSection = record;
+		try {
+			vm.execute(section.getBytecode(), this.mainFrame);
+		}
+		finally {
+			this.currentSection = null;
+			this.out = out;
+			this.out.print(Assembler.toString(buffer));
+		}
+		
+		for(int segment = firstSegment; segment < this.image.getNumSegments(); segment++) {
+			record.addSegment(this.image.getSegmentOffset(segment), this.image.getSegmentBytes(segment));
+		}
+		for(Fixup fixup: this.fixups.subList(firstFixup, this.fixups.size())) {
+			record.addFixup(fixup, firstSegment, this.mainFrame);
+		}
+		
+		record.setOutput(Assembler.toString(buffer));
+		record.end(this.sectionCache, section.getSlots(this.semantics), this.mainFrame, this.currentOffset,
+				this.macroId, this.setClearAccFlag, this.accFlag, this.setClearXyFlag, this.xyFlag,
+				this.labelPrefix, this.nameSpaceNames);
+		return record;
 	}
 	
+	// rejoue une section inchangée et reprend l'état à sa sortie
+	private void replaySection(Section section, SectionRecord record) {
+		record.replay(section, this.semantics, this.sectionCache, this.mainFrame, this.image, this.fixups);
+		this.out.print(record.getOutput());
 
-	@Override
-    public void caseADeclInst(ADeclInst node) {
-        Value value = eval(node.getExp());
-        
-        this.currentFrame.putVariable(node.getIdent(), value, this.currentFrame);
-    }
-
-    @Override
-    public void caseAAssignInst(AAssignInst node) {
-        Value value = eval(node.getExp());
-        
-        this.currentFrame.putVariable(node.getIdent(), value, this.currentFrame);
-    }
-    
-    @Override
-    public void caseAIfInst(AIfInst node) {
-    	BoolValue value = (BoolValue)eval(node.getExp());
-    	
-    	if(value.getValue()) {
-    		visit(node.getBody());
-    	}
-    }
-    
-    @Override
-    public void caseAWhileInst(AWhileInst node) {
-    	
-    	while(true) {
-    		BoolValue value = (BoolValue)eval(node.getExp());
-    		
-    		if(!value.getValue()) {
-    			break;
-    		}
-    		
-    		visit(node.getBody());
-    	}
-    }
+		this.currentOffset = record.getOffset();
+		this.macroId = record.getMacroId();
+		this.setClearAccFlag = record.getSetClearAccFlag();
+		this.accFlag = record.getAccFlag();
+		this.setClearXyFlag = record.getSetClearXyFlag();
+		this.xyFlag = record.getXyFlag();
+		this.labelPrefix = record.getLabelPrefix();
+		this.nameSpaceNames = new LinkedList<>(record.getNameSpaceNames());
+	}
+	
+	// exécute une instruction d'assembleur (label, org, db, opcode, ...) dans le frame courant
+	public void emit(Node node) {
+		visit(node);
+	}
+	
+	public int getCurrentOffset() {
+		return this.currentOffset;
+	}
+	
+	// appel de macro, le frame du macro devient le frame courant.
+	// Retourne false si un développement identique a été rejoué depuis
+	// la cache, le corps du macro n'a alors pas à être exécuté
+	public boolean enterMacro(Frame frame) {
+		this.currentFrame = frame;
+		this.macroId++;
+		
+		MacroInfo macroInfo = frame.getMacroInfo();
+		if(this.currentSection != null) {
+			this.currentSection.addMacro(macroInfo);
+		}
+		if(!macroInfo.isCacheable()) {
+			return true;
+		}
+		
+		List<Object> key = getExpansionKey(macroInfo, frame);
+		MacroExpansion expansion = this.expansionCache.get(key);
+		
+		if(expansion != null) {
+			expansion.replay(this.currentOffset, this.macroId, frame, this.image, this.fixups);
+			this.currentOffset += expansion.getLength();
+			this.setClearAccFlag = expansion.getSetClearAccFlag();
+			this.accFlag = expansion.getAccFlag();
+			this.setClearXyFlag = expansion.getSetClearXyFlag();
+			this.xyFlag = expansion.getXyFlag();
+			return false;
+		}
+		
+		// un macro sans effet de bord n'appelle pas d'autre
+		// macro, un seul enregistrement peut donc être en cours
+		this.currentExpansion = new MacroExpansion(this.currentOffset, this.image.getNumSegments());
+		this.currentExpansionKey = key;
+		return true;
+	}
+	
+	public void exitMacro(Frame frame) {
+		this.currentFrame = frame.getParentFrame();
+		
+		if(this.currentExpansion != null) {
+			this.currentExpansion.end(this.currentOffset, this.setClearAccFlag, this.accFlag,
+					this.setClearXyFlag, this.xyFlag);
+			this.expansionCache.put(this.currentExpansionKey, this.currentExpansion);
+			this.currentExpansion = null;
+			this.currentExpansionKey = null;
+		}
+	}
+	
+	// clé de cache d'un appel: tout ce qui peut changer les octets émis
+	private List<Object> getExpansionKey(MacroInfo macroInfo, Frame frame) {
+		List<Object> key = new ArrayList<>();
+		key.add(macroInfo);
+		key.add(this.labelPrefix);
+		key.add(this.setClearAccFlag);
+		key.add(this.accFlag);
+		key.add(this.setClearXyFlag);
+		key.add(this.xyFlag);
+		
+		for(ParamInfo param: macroInfo.getParams()) {
+			if(param.getType() == Type.STRING) {
+				key.add(frame.getVariable(param.getSlot()).toString());
+			}
+			else {
+				key.add(frame.getInt(param.getSlot()));
+			}
+		}
+		return key;
+	}
+	
+	public void enterNameSpace(String ident) {
+		String name = "";
+		
+		// on ajout le nom courant au préfix courant
+		if(!this.labelPrefix.equals(""))
+			name = "-" + ident;
+		else {
+			name = ident;
+		}
+		
+		this.labelPrefix += name;
+		this.nameSpaceNames.push(name);
+	}
+	
+	public void exitNameSpace() {
+		// retrait du nom courant
+		String name = this.nameSpaceNames.pop();
+		this.labelPrefix = this.labelPrefix.replace(name, "");
+	}
 
 	@Override
 	public void caseAOrgInst(AOrgInst node) {
-		int value = ((IntValue)eval(node.getExp())).getValue();
+		int value = evalInt(node.getExp());
 		
 		// limiter à un entier positif de 24-bit sur un système 24-bit
 		if(value < 0 || value > Consts.MAX_INT) {
@@ -326,7 +631,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		
 		this.currentIsReady = true;
 		this.bytesToWrite = null;
-		addWriteData(node);
+		addWriteData();
 	}
 	
 	@Override
@@ -345,7 +650,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		
 		this.currentIsReady = true;
 		this.bytesToWrite = null;
-		addWriteData(node);
+		addWriteData();
 	}
 	
 	@Override
@@ -364,26 +669,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		
 		this.currentIsReady = true;
 		this.bytesToWrite = null;
-		addWriteData(node);
-	}
-	
-	@Override
-	public void caseANamespaceInst(ANamespaceInst node) {
-		String name = "";
-		
-		// on ajout le nom courant au préfix courant
-		if(!this.labelPrefix.equals(""))
-			name = "-" + node.getIdent().getText();
-		else {
-			name = node.getIdent().getText();
-		}
-		
-		this.labelPrefix += name;
-		
-		visit(node.getBody());
-		
-		// retrait du nom courant
-		this.labelPrefix = this.labelPrefix.replace(name, "");
+		addWriteData();
 	}
 	
 	@Override
@@ -395,8 +681,8 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		
 		this.bytesToWrite = new LinkedList<Integer>();
 		
-		int bytes = ((IntValue)eval(node.getExp())).getValue();
-		int numRepeat = ((IntValue)eval(node.getNumber())).getValue();
+		int bytes = evalInt(node.getExp());
+		int numRepeat = evalInt(node.getNumber());
 		
 		// si une des deux expresion est négative
 		if(bytes < 0) {
@@ -425,73 +711,12 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		
 		this.currentIsReady = true;
 		this.bytesToWrite = null;
-		addWriteData(node);
-	}
-	
-	@Override
-	public void caseAMacroCallInst(AMacroCallInst node) {
-		
-		String macroName = node.getIdent().getText();
-        MacroInfo macroInfo = this.semantics.getMacroInfo(macroName);
-
-        Frame frame = new Frame(this.currentFrame, macroInfo, node.getIdent());
-
-        // sauvegarde la liste courante
-        List<Value> previousArgs = this.currentArgs;
-        this.currentArgs = new LinkedList<>();
-
-        // calcul des arguments
-        visit(node.getArgs());
-        List<Value> args = this.currentArgs;
-
-        // remise en place de la liste courante
-        this.currentArgs = previousArgs;
-
-        macroInfo.assignArgs(args, frame, node.getLPar());
-
-        // noter la localisation courante
-        this.currentFrame.setLocation(node.getLPar());
-
-        // Exécuter le corps de la fonction
-        this.currentFrame = frame;
-        this.frames.put(node, this.currentFrame);
-        
-        this.macroId++;
-
-        visit(macroInfo.getMacroBody());
-
-        this.currentFrame = frame.getParentFrame();
-
-        // effacer la localisation courante
-        this.currentFrame.setLocation(null);
+		addWriteData();
 	}
 	
-	@Override
-	public void caseAPrintInst(APrintInst node) {
-		Value value = eval(node.getExp());
-		
-		System.out.print(value.toString());
-	}
-	
-	@Override
-	public void caseAPrintLnInst(APrintLnInst node) {
-		if(node.getExp() == null) {
-			System.out.println();
-		}
-		else {
-			Value value = eval(node.getExp());
-			System.out.println(value.toString());
-		}
-	}
-	
-    @Override
-    public void caseAArg(AArg node) {
-        this.currentArgs.add(eval(node.getExp()));
-    }
-	
 	@Override
 	public void caseANumByteSeq(ANumByteSeq node) {
-		int value = ((IntValue)eval(node.getArgNum())).getValue();
+		int value = evalInt(node.getArgNum());
 		
 		// ajout à la linked list
 		addToBytesToWrite(value);
@@ -499,7 +724,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 	
 	@Override
 	public void caseAExpByteSeq(AExpByteSeq node) {
-		int value = ((IntValue)eval(node.getExp())).getValue();
+		int value = evalInt(node.getExp());
 		
 		// pas de négatif
 		if(value < 0) {
@@ -514,17 +739,17 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 	@Override
 	public void caseABeqOpcode(ABeqOpcode node) {
 		visit(node.getAnonLabel());
-		Integer opcode = this.opcodeList.getOpcode(Consts.BEQ);
-		initOpFieldsBranch(opcode);
-		addWriteData(node);
+		int opcode = getOpcodeValue(Mnemonic.BEQ, AddressingMode.RELATIVE);
+		initOpFieldsBranch(opcode, node.getBranchType(), node.getBeq());
+		addWriteData();
 	}
 	
 	@Override
 	public void caseABneOpcode(ABneOpcode node) {
 		visit(node.getAnonLabel());
-		Integer opcode = this.opcodeList.getOpcode(Consts.BNE);
-		initOpFieldsBranch(opcode);
-		addWriteData(node);
+		int opcode = getOpcodeValue(Mnemonic.BNE, AddressingMode.RELATIVE);
+		initOpFieldsBranch(opcode, node.getBranchType(), node.getBne());
+		addWriteData();
 	}
 	
 	@Override
@@ -541,7 +766,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// visite de l'argument
 		visit(node.getOpArg());
 		
-		getAbsOpcodeAddWriteData(node, Consts.CMP_ABS);
+		getAbsOpcodeAddWriteData(Mnemonic.CMP, false);
 	}
 	
 	@Override
@@ -562,9 +787,9 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		
 		// on met la valeur de l'instruction en tête de l'argument, on met
 		// à jour le writeData et on l'Ajoute à la liste d'instruction à écrire
-		Integer opcode = this.opcodeList.getOpcode(Consts.CMP_CONST);
+		int opcode = getOpcodeValue(Mnemonic.CMP, AddressingMode.IMMEDIATE);
 		this.currentWriteData = appendOpArgsToOpcode(opcode, this.currentWriteData);
-		addWriteData(node);
+		addWriteData();
 	}
 	
 	@Override
@@ -573,12 +798,12 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		visit(node.getAnonLabel());
 		
 		// écriture de 0x3A dans le writeData
-		Integer opcode = this.opcodeList.getOpcode(Consts.DEC_ACC);
-		byte[] temp = {(byte)((int)opcode)};
+		int opcode = getOpcodeValue(Mnemonic.DEC, AddressingMode.ACCUMULATOR);
+		byte[] temp = {(byte)opcode};
 		this.currentWriteData = temp;
 		
 		this.currentIsReady = true;
-		addWriteData(node);
+		addWriteData();
 	}
 	
 	@Override
@@ -595,7 +820,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// visite de l'argument
 		visit(node.getOpArg());
 		
-		getAbsOpcodeAddWriteData(node, Consts.DEC_ABS);
+		getAbsOpcodeAddWriteData(Mnemonic.DEC, false);
 	}
 	
 	@Override
@@ -604,12 +829,12 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		visit(node.getAnonLabel());
 		
 		// écriture de 0x1A dans le writeData
-		Integer opcode = this.opcodeList.getOpcode(Consts.INC_ACC);
-		byte[] temp = {(byte)((int)opcode)};
+		int opcode = getOpcodeValue(Mnemonic.INC, AddressingMode.ACCUMULATOR);
+		byte[] temp = {(byte)opcode};
 		this.currentWriteData = temp;
 		
 		this.currentIsReady = true;
-		addWriteData(node);
+		addWriteData();
 	}
 	
 	@Override
@@ -626,7 +851,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// visite de l'argument
 		visit(node.getOpArg());
 		
-		getAbsOpcodeAddWriteData(node, Consts.INC_ABS);
+		getAbsOpcodeAddWriteData(Mnemonic.INC, false);
 	}
 	
 	@Override
@@ -640,7 +865,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// visite de l'argument
 		visit(node.getOpArg());
 		
-		getAbsOpcodeAddWriteData(node, Consts.JMP);
+		getAbsOpcodeAddWriteData(Mnemonic.JMP, false);
 	}
 	
 	@Override
@@ -656,7 +881,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// visite de l'argument
 		visit(node.getOpArg());
 		
-		getAbsOpcodeAddWriteData(node, Consts.LDA_ABS);
+		getAbsOpcodeAddWriteData(Mnemonic.LDA, false);
 	}
 	
 	@Override
@@ -678,9 +903,9 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		
 		// on met la valeur de l'instruction en tête de l'argument, on met
 		// à jour le writeData et on l'ajoute à la liste d'instruction à écrire
-		Integer opcode = this.opcodeList.getOpcode(Consts.LDA_CONST);
+		int opcode = getOpcodeValue(Mnemonic.LDA, AddressingMode.IMMEDIATE);
 		this.currentWriteData = appendOpArgsToOpcode(opcode, this.currentWriteData);
-		addWriteData(node);
+		addWriteData();
 	}
 	
 	@Override
@@ -696,7 +921,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// visite de l'argument
 		visit(node.getOpArg());
 		
-		getAbsOpcodeAddWriteData(node, Consts.LDA_IND_X);
+		getAbsOpcodeAddWriteData(Mnemonic.LDA, true);
 	}
 	
 	@Override
@@ -713,7 +938,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// visite de l'argument
 		visit(node.getOpArg());
 		
-		getAbsOpcodeAddWriteData(node, Consts.LDX_ABS);
+		getAbsOpcodeAddWriteData(Mnemonic.LDX, false);
 	}
 	
 	@Override
@@ -735,9 +960,9 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		
 		// on met la valeur de l'instruction en tête de l'argument, on met
 		// à jour le writeData et on l'ajoute à la liste d'instruction à écrire
-		Integer opcode = this.opcodeList.getOpcode(Consts.LDX_CONST);
+		int opcode = getOpcodeValue(Mnemonic.LDX, AddressingMode.IMMEDIATE);
 		this.currentWriteData = appendOpArgsToOpcode(opcode, this.currentWriteData);
-		addWriteData(node);
+		addWriteData();
 	}
 	
 	@Override
@@ -761,9 +986,9 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		
 		// on met la valeur de l'instruction en tête de l'argument, on met
 		// à jour le writeData et on l'ajoute à la liste d'instruction à écrire
-		Integer opcode = this.opcodeList.getOpcode(Consts.MVN);
+		int opcode = getOpcodeValue(Mnemonic.MVN, AddressingMode.BLOCK_MOVE);
 		this.currentWriteData = appendOpArgsToOpcode(opcode, this.currentWriteData);
-		addWriteData(node);
+		addWriteData();
 	}
 	
 	@Override
@@ -787,9 +1012,9 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		
 		// on met la valeur de l'instruction en tête de l'argument, on met
 		// à jour le writeData et on l'ajoute à la liste d'instruction à écrire
-		Integer opcode = this.opcodeList.getOpcode(Consts.MVP);
+		int opcode = getOpcodeValue(Mnemonic.MVP, AddressingMode.BLOCK_MOVE);
 		this.currentWriteData = appendOpArgsToOpcode(opcode, this.currentWriteData);
-		addWriteData(node);
+		addWriteData();
 	}
 
 	@Override
@@ -805,7 +1030,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// visite de l'argument
 		visit(node.getOpArg());
 		
-		getAbsOpcodeAddWriteData(node, Consts.STA_ABS);
+		getAbsOpcodeAddWriteData(Mnemonic.STA, false);
 	}
 	
 	@Override
@@ -821,7 +1046,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// visite de l'argument
 		visit(node.getOpArg());
 		
-		getAbsOpcodeAddWriteData(node, Consts.STA_IND_X);
+		getAbsOpcodeAddWriteData(Mnemonic.STA, true);
 	}
 	
 	@Override
@@ -830,12 +1055,12 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		visit(node.getAnonLabel());
 		
 		// écriture de 0x60 dans le writeData
-		Integer opcode = this.opcodeList.getOpcode(Consts.RTS);
-		byte[] temp = {(byte)((int)opcode)};
+		int opcode = getOpcodeValue(Mnemonic.RTS, AddressingMode.IMPLIED);
+		byte[] temp = {(byte)opcode};
 		this.currentWriteData = temp;
 		
 		this.currentIsReady = true;
-		addWriteData(node);
+		addWriteData();
 	}
 	
 	@Override
@@ -866,9 +1091,9 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		
 		// on met la valeur de l'instruction en tête de l'argument, on met
 		// à jour le writeData et on l'ajoute à la liste d'instruction à écrire
-		Integer opcode = this.opcodeList.getOpcode(Consts.SEP);
+		int opcode = getOpcodeValue(Mnemonic.SEP, AddressingMode.IMMEDIATE);
 		this.currentWriteData = appendOpArgsToOpcode(opcode, this.currentWriteData);
-		addWriteData(node);	
+		addWriteData();	
 	}
 	
 	@Override
@@ -899,9 +1124,9 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		
 		// on met la valeur de l'instruction en tête de l'argument, on met
 		// à jour le writeData et on l'ajoute à la liste d'instruction à écrire
-		Integer opcode = this.opcodeList.getOpcode(Consts.REP);
+		int opcode = getOpcodeValue(Mnemonic.REP, AddressingMode.IMMEDIATE);
 		this.currentWriteData = appendOpArgsToOpcode(opcode, this.currentWriteData);
-		addWriteData(node);	
+		addWriteData();	
 	}
 	
 	@Override
@@ -909,18 +1134,36 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// ajout d'un label au frame courant
 		String name = node.getIdent().getText();	 
 		this.currentFrame.addLabel(name, this.labelPrefix, this.macroId, this.currentOffset);
+		if(this.currentExpansion != null) {
+			this.currentExpansion.addLabel(name, this.labelPrefix, this.currentOffset);
+		}
+		if(this.currentSection != null && this.currentFrame == this.mainFrame) {
+			this.currentSection.addLabel(name, this.labelPrefix, this.macroId, this.currentOffset);
+		}
 	}
 	
 	@Override
 	public void caseAPlusAnonLabel(APlusAnonLabel node) {
 		// ajout d'un label anonyme positif au frame courant
-		this.currentFrame.addLabel("+" + this.anonId++, "", this.macroId, this.currentOffset);
+		this.currentFrame.addAnonLabel("+", this.macroId, this.currentOffset);
+		if(this.currentExpansion != null) {
+			this.currentExpansion.addAnonLabel("+", this.currentOffset);
+		}
+		if(this.currentSection != null && this.currentFrame == this.mainFrame) {
+			this.currentSection.addAnonLabel("+", this.macroId, this.currentOffset);
+		}
 	}
 	
 	@Override
 	public void caseAMinusAnonLabel(AMinusAnonLabel node) {
 		// ajout d'un label anonyme négatif au frame courant
-		this.currentFrame.addLabel("-" + this.anonId++, "", this.macroId, this.currentOffset);
+		this.currentFrame.addAnonLabel("-", this.macroId, this.currentOffset);
+		if(this.currentExpansion != null) {
+			this.currentExpansion.addAnonLabel("-", this.currentOffset);
+		}
+		if(this.currentSection != null && this.currentFrame == this.mainFrame) {
+			this.currentSection.addAnonLabel("-", this.macroId, this.currentOffset);
+		}
 	}
 	
 	@Override
@@ -941,6 +1184,8 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 	@Override
 	public void caseALabelOpArg(ALabelOpArg node) {
 		// cas d'un argument étant un label
+		this.currentLabel = node.getIdent().getText();
+		this.currentLabelToken = node.getIdent();
 		
 		// si la longeur de l'argument est spécifiée
 		// avec .b, .w or .l on utilise cette longeur
@@ -960,11 +1205,11 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 	@Override
 	public void caseAExpOpArg(AExpOpArg node) {
 		// cas où l'argument est une expession à évaluer
-		IntValue value = (IntValue)eval(node.getExp());		
+		int value = evalInt(node.getExp());		
 		int numBytes = 0;
 		
 		// négatif non permis pour un argument étant une expression
-		if(value.getValue() < 0 || value.getValue() > Consts.MAX_INT) {
+		if(value < 0 || value > Consts.MAX_INT) {
 			throw new InterpreterException(node.getLCbr(),
 					"expression cannot be smaller than 0 or bigger than $" + Integer.toHexString(Consts.MAX_INT).toUpperCase());
 		}
@@ -976,7 +1221,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		} 
 		else {
 			// sinon on prend la longeur de l'expression évaluée
-			String strNumber = Integer.toHexString(value.getValue());
+			String strNumber = Integer.toHexString(value);
 			numBytes = strNumber.length() <= 2 ? 1: strNumber.length() <= 4 ? 2: 3; 
 		}
 		
@@ -995,7 +1240,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 			numBytes = this.currentMinLength;
 		}
 		
-		OpcodeArg arg = new OpcodeArg(value.getValue(), numBytes);
+		OpcodeArg arg = new OpcodeArg(value, numBytes);
 		this.currentWriteData = arg.getBytes();
 		this.currentIsReady = true;
 	}
@@ -1005,7 +1250,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// argument hexadécimal (e.g. $1234)
 		int value = this.semantics.getOpcodeArg(node).getValue();
 		
-		this.result = new IntValue(value);
+		setIntResult(value);
 	}
 	
 	@Override
@@ -1013,7 +1258,7 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// argument binaire (e.g. %1234)
 		int value = this.semantics.getOpcodeArg(node).getValue();
 		
-		this.result = new IntValue(value);
+		setIntResult(value);
 	}
 	
 	@Override
@@ -1021,23 +1266,23 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 		// argument décimal
 		int value = this.semantics.getOpcodeArg(node).getValue();
 		
-		this.result = new IntValue(value);
+		setIntResult(value);
 	}
 	
 	@Override
 	public void caseAAddExtraArg(AAddExtraArg node) {
 		// argument additionel positif (e.g. "16" dans "LDA label_a+16")
-		IntValue value = (IntValue)eval(node.getExtraExp());
+		int value = evalInt(node.getExtraExp());
 		
-		this.currentExtraValue = (Integer)value.getValue();
+		this.currentExtraValue = value;
 	}
 	
 	@Override
 	public void caseASubExtraArg(ASubExtraArg node) {
 		// argument additionel négatif (e.g. "16" dans "LDA label_a-16")
-		IntValue value = (IntValue)eval(node.getExtraExp());
+		int value = evalInt(node.getExtraExp());
 		
-		this.currentExtraValue = -(Integer)value.getValue();
+		this.currentExtraValue = -value;
 	}
 	
 	@Override
@@ -1060,185 +1305,192 @@ public class InterpreterEngine  extends DepthFirstAdapter{
 	
 	@Override
 	public void caseANotNegation(ANotNegation node) {
-		BoolValue value = (BoolValue)eval(node.getExp());
+		boolean value = evalBool(node.getExp());
 		
-		this.result = new BoolValue(!value.getValue());
+		setBoolResult(!value);
 	}
 	
 	@Override
 	public void caseAAndLogicalOp(AAndLogicalOp node) {
-		BoolValue leftValue = (BoolValue)eval(node.getLeft());
-		BoolValue rightValue = (BoolValue)eval(node.getRight());
+		boolean left = evalBool(node.getLeft());
+		boolean right = evalBool(node.getRight());
 		
-		this.result = new BoolValue(leftValue.getValue() && rightValue.getValue());
+		setBoolResult(left && right);
 	}
 	
 	@Override
 	public void caseAOrLogicalOp(AOrLogicalOp node) {
-		BoolValue leftValue = (BoolValue)eval(node.getLeft());
-		BoolValue rightValue = (BoolValue)eval(node.getRight());
+		boolean left = evalBool(node.getLeft());
+		boolean right = evalBool(node.getRight());
 		
-		this.result = new BoolValue(leftValue.getValue() || rightValue.getValue());
+		setBoolResult(left || right);
 	}
 	
 	@Override
 	public void caseAEqComparison(AEqComparison node) {
-        Value leftValue = eval(node.getLeft());
-        Value rightValue = eval(node.getRight());
-
-        if (leftValue instanceof StringValue) {
-            this.result = new BoolValue(((StringValue)leftValue).getValue().equals(((StringValue)rightValue).getValue()));
-        }
-        else if (leftValue instanceof IntValue) {
-            this.result = new BoolValue(((IntValue)leftValue).getValue() == ((IntValue)rightValue).getValue());
-        }
-        else {
-            // booléens
-            this.result = new BoolValue(((BoolValue)leftValue).getValue() == ((BoolValue)rightValue).getValue());
-        }
+		setBoolResult(evalEquals(node.getLeft(), node.getRight()));
 	}
 	
 	@Override
 	public void caseANotEqComparison(ANotEqComparison node) {
-		Value leftValue = eval(node.getLeft());
-        Value rightValue = eval(node.getRight());
-
-        if (leftValue instanceof StringValue) {
-            this.result = new BoolValue(!((StringValue)leftValue).getValue().equals(((StringValue)rightValue).getValue()));
-        }
-        else if (leftValue instanceof IntValue) {
-            this.result = new BoolValue(((IntValue)leftValue).getValue() != ((IntValue)rightValue).getValue());
-        }
-        else {
-            // booléens
-            this.result = new BoolValue(((BoolValue)leftValue).getValue() != ((BoolValue)rightValue).getValue());
-        }
+		setBoolResult(!evalEquals(node.getLeft(), node.getRight()));
+	}
+	
+	// compare deux expressions du même type
+	private boolean evalEquals(Node leftNode, Node rightNode) {
+		visit(leftNode);
+		Type type = this.resultType;
+		int leftInt = this.intResult;
+		boolean leftBool = this.boolResult;
+		Value leftValue = this.result;
+		
+		visit(rightNode);
+		
+		if(type == Type.STRING) {
+			return ((StringValue)leftValue).getValue().equals(((StringValue)this.result).getValue());
+		}
+		else if(type == Type.INT) {
+			return leftInt == this.intResult;
+		}
+		else {
+			// booléens
+			return leftBool == this.boolResult;
+		}
 	}
 	
 	@Override
 	public void caseALtComparison(ALtComparison node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new BoolValue(leftValue.getValue() < rightValue.getValue());
+		setBoolResult(left < right);
 	}
 	
 	@Override
 	public void caseALtEqComparison(ALtEqComparison node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new BoolValue(leftValue.getValue() <= rightValue.getValue());
+		setBoolResult(left <= right);
 	}
 	
 	@Override
 	public void caseAGtComparison(AGtComparison node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new BoolValue(leftValue.getValue() > rightValue.getValue());
+		setBoolResult(left > right);
 	}
 	
 	@Override
 	public void caseAGtEqComparison(AGtEqComparison node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new BoolValue(leftValue.getValue() >= rightValue.getValue());
+		setBoolResult(left >= right);
 	}
 	
 	@Override
 	public void caseAAndBitwise(AAndBitwise node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new IntValue(leftValue.getValue() & rightValue.getValue());
+		setIntResult(left & right);
 	}
 	
 	@Override
 	public void caseAOrBitwise(AOrBitwise node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new IntValue(leftValue.getValue() | rightValue.getValue());
+		setIntResult(left | right);
 	}
 	
 	@Override
 	public void caseAXorBitwise(AXorBitwise node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new IntValue(leftValue.getValue() ^ rightValue.getValue());
+		setIntResult(left ^ right);
 	}
 	
 	@Override
 	public void caseAShiftLeftShift(AShiftLeftShift node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new IntValue(leftValue.getValue() << rightValue.getValue());
+		setIntResult(left << right);
 	}
 	
 	@Override
 	public void caseAShiftRightShift(AShiftRightShift node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new IntValue(leftValue.getValue() >> rightValue.getValue());
+		setIntResult(left >> right);
 	}
 
 	@Override
 	public void caseAAddAdditiveExp(AAddAdditiveExp node) {
-		Value leftValue = eval(node.getLeft());
-		Value rightValue = eval(node.getRight());
-		if(leftValue instanceof StringValue || rightValue instanceof StringValue) {
-			this.result = new StringValue(leftValue.toString() + rightValue.toString());
+		visit(node.getLeft());
+		Type leftType = this.resultType;
+		int left = this.intResult;
+		String leftString = leftType == Type.INT ? null : resultToString();
+		
+		visit(node.getRight());
+		
+		// concaténation si un des deux côtés est une chaîne
+		if(leftType == Type.STRING || this.resultType == Type.STRING) {
+			if(leftString == null) {
+				leftString = Integer.toString(left);
+			}
+			setStringResult(leftString + resultToString());
 		}	
 		else {
-			this.result = new IntValue(((IntValue)leftValue).getValue() + ((IntValue)rightValue).getValue());
+			setIntResult(left + this.intResult);
 		}
 	}
 	
 	@Override
 	public void caseASubAdditiveExp(ASubAdditiveExp node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new IntValue(leftValue.getValue() - rightValue.getValue());
+		setIntResult(left - right);
 	}
 
 	@Override
 	public void caseAMulFactor(AMulFactor node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new IntValue(leftValue.getValue() * rightValue.getValue());
+		setIntResult(left * right);
 	}
 	
 	@Override
 	public void caseADivFactor(ADivFactor node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new IntValue(leftValue.getValue() / rightValue.getValue());
+		setIntResult(left / right);
 	}
 	
 	@Override
 	public void caseAModFactor(AModFactor node) {
-		IntValue leftValue = (IntValue)eval(node.getLeft());
-		IntValue rightValue = (IntValue)eval(node.getRight());
+		int left = evalInt(node.getLeft());
+		int right = evalInt(node.getRight());
 		
-		this.result = new IntValue(leftValue.getValue() % rightValue.getValue());
+		setIntResult(left % right);
 	}
 
 	@Override
     public void caseATrueTerm(ATrueTerm node) {
-        this.result = new BoolValue(true);
+        setBoolResult(true);
     }
 
     @Override
     public void caseAFalseTerm(AFalseTerm node) {
-        this.result = new BoolValue(false);
+        setBoolResult(false);
     }
 	
 	@Override
@@ -1246,64 +1498,79 @@ public class InterpreterEngine  extends DepthFirstAdapter{
         String string = node.getStr().getText();
         // on enlève les doubles guillements
         string = string.substring(1, string.length() - 1);
-        this.result = new StringValue(string);
+        setStringResult(string);
     }
 	
     @Override
     public void caseAVarTerm(AVarTerm node) {
-    	this.result = this.currentFrame.getVariable(node.getIdent(), this.currentFrame);
+    	VariableInfo variable = this.semantics.getVariableInfo(node.getIdent());
+    	int slot = variable.getSlot();
+    	
+    	if(variable.getType() == Type.INT) {
+    		setIntResult(this.currentFrame.getInt(slot));
+    	}
+    	else if(variable.getType() == Type.BOOL) {
+    		setBoolResult(this.currentFrame.getBool(slot));
+    	}
+    	else {
+    		setStringResult(this.currentFrame.getVariable(slot));
+    	}
     }
     
     @Override
     public void caseAHexStrTerm(AHexStrTerm node) {
     	// e.g. hex(16)
-    	IntValue value = (IntValue)eval(node.getExp());
-    	String hexStr = Integer.toHexString(value.getValue());
+    	int value = evalInt(node.getExp());
+    	setStringResult(toHexString(value));
+    }
+    
+    public static String toHexString(int value) {
+    	String hexStr = Integer.toHexString(value);
     	
     	// on pad avec un 0 si nécessaire pour toujours avoir un multiple de 2
     	// (e.g. "$04" comparativement à "$4")
-    	hexStr = hexStr.length() % 2 != 0 ? "$0" + hexStr: "$" + hexStr;
-    	
-    	this.result = new StringValue(hexStr);
+    	return hexStr.length() % 2 != 0 ? "$0" + hexStr: "$" + hexStr;
     }
     
     @Override
     public void caseABinStrTerm(ABinStrTerm node) {
     	// e.g. bin(16)
-    	IntValue value = (IntValue)eval(node.getExp());
-    	String binStr = Integer.toBinaryString(value.getValue());
+    	int value = evalInt(node.getExp());
+    	setStringResult(toBinString(value));
+    }
+    
+    public static String toBinString(int value) {
+    	String binStr = Integer.toBinaryString(value);
     	
     	// on pad avec des 0 si nécessaire pour toujours avoir un multiple de 8
     	// (e.g. "%00001000" comparativement à "%1000")
     	for(int i = 0; i < binStr.length() % 8; i++) {
     		binStr = "0" + binStr;
     	}
-    	binStr = "%" + binStr;
-    	
-    	this.result = new StringValue(binStr);
+    	return "%" + binStr;
     }
 		
     @Override
     public void caseAPcTerm(APcTerm node) {
     	// e.g. pc()
-    	this.result = new IntValue(this.currentOffset);
+    	setIntResult(this.currentOffset);
     }
 	
 	@Override
 	public void caseAHexNumber(AHexNumber node) {
 		int value = this.semantics.getNumber(node);
-		this.result = new IntValue(value);
+		setIntResult(value);
 	}
 	
 	@Override
 	public void caseABinaryNumber(ABinaryNumber node) {
 		int value = this.semantics.getNumber(node);
-		this.result = new IntValue(value);
+		setIntResult(value);
 	}
 	
 	@Override
 	public void caseADecimalNumber(ADecimalNumber node) {
 		int value = this.semantics.getNumber(node);
-		this.result = new IntValue(value);
+		setIntResult(value);
 	}
 }
@@ -0,0 +1,89 @@
+package assembler;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// table des symboles des labels d'un frame, indexée par
+// (nom, préfix de namespace, macro ID) pour une recherche en temps constant
+
+public class LabelTable {
+
+	// dans l'ordre de déclaration
+	private Map<LabelKey, Label> labels = new LinkedHashMap<>();
+
+	// labels qui ne sont pas dans un namespace, indexés seulement par leur nom
+	// (utilisé lorsqu'un macro fait référence à un label du main)
+	private Map<String, Label> rootLabels = new HashMap<>();
+
+	public void addLabel(Label label) {
+		// si un label est déclaré deux fois avec la même clé
+		// on garde le premier, comme le faisait la recherche linéaire
+		LabelKey key = new LabelKey(label.getName(), label.getPrefix(), label.getMacroId());
+		this.labels.putIfAbsent(key, label);
+
+		if(label.getPrefix().equals("")) {
+			this.rootLabels.putIfAbsent(label.getName(), label);
+		}
+	}
+
+	// cherche le label dans le namespace courant, puis dans les
+	// namespaces parents jusqu'à la racine du frame
+	public Label getLabel(String name, String prefix, int macroId) {
+		while(true) {
+			Label label = this.labels.get(new LabelKey(name, prefix, macroId));
+
+			if(label != null) {
+				return label;
+			}
+			if(prefix.equals("")) {
+				return null;
+			}
+
+			// préfix du namespace parent (e.g. "nsa-nsb" devient "nsa")
+			int index = prefix.lastIndexOf('-');
+			prefix = index < 0 ? "" : prefix.substring(0, index);
+		}
+	}
+
+	public Collection<Label> getLabels() {
+		return this.labels.values();
+	}
+
+	public Label getRootLabel(String name) {
+		return this.rootLabels.get(name);
+	}
+
+	// clé composée d'un label
+	private static class LabelKey {
+		private String name;
+		private String prefix;
+		private int macroId;
+
+		public LabelKey(String name, String prefix, int macroId) {
+			this.name = name;
+			this.prefix = prefix;
+			this.macroId = macroId;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(o == this) {
+				return true;
+			}
+
+			if(!(o instanceof LabelKey)) {
+				return false;
+			}
+
+			LabelKey key = (LabelKey)o;
+			return this.macroId == key.macroId && this.name.equals(key.name) && this.prefix.equals(key.prefix);
+		}
+
+		@Override
+		public int hashCode() {
+			return (this.name.hashCode() * 31 + this.prefix.hashCode()) * 31 + this.macroId;
+		}
+	}
+}
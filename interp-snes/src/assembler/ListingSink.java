@@ -0,0 +1,119 @@
+package assembler;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// listing results/<nom>.txt, une ligne par segment (e.g. "000000: A5 10"),
+// aussi affiché dans la console si echo n'est pas null. Les lignes sont
+// écrites par blocs plutôt qu'une à la fois
+
+public class ListingSink implements OutputSink {
+
+	private static final String NL = "\r\n";
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	// taille d'un bloc de lignes avant l'écriture
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	private String filename;
+	private PrintStream echo;
+
+	// fichier ouvert au premier segment, rien n'est écrit sans segment
+	private FileWriter fileWriter;
+	private StringBuilder block = new StringBuilder();
+
+	public ListingSink(String filename, PrintStream echo) {
+		this.filename = filename;
+		this.echo = echo;
+	}
+
+	@Override
+	public void segment(RomImage image, int segment) throws IOException {
+		if(this.fileWriter == null) {
+			open();
+		}
+		appendLine(this.block, image, segment);
+		this.block.append(NL);
+
+		if(this.block.length() >= BLOCK_SIZE) {
+			flushBlock();
+		}
+	}
+
+	@Override
+	public void close(RomImage image) throws IOException {
+		if(this.fileWriter != null) {
+			flushBlock();
+			this.fileWriter.close();
+			this.fileWriter = null;
+		}
+	}
+
+	@Override
+	public void abort() throws IOException {
+		if(this.fileWriter != null) {
+			this.fileWriter.close();
+			this.fileWriter = null;
+		}
+	}
+
+	private void open() {
+		try {
+			// création du dossier s'il n'existe pas
+			Files.createDirectories(Paths.get("results"));
+			this.fileWriter = new FileWriter("results/" + this.filename + ".txt");
+		} catch (IOException e) {
+			throw new CompilationException("Error writing binary file");
+		}
+
+		// écriture du header du fichier
+		this.block.append("Program ").append(this.filename).append(NL);
+		this.block.append("--------------------").append(NL);
+		if(this.echo != null) {
+			this.echo.println();
+		}
+	}
+
+	private void flushBlock() throws IOException {
+		String text = this.block.toString();
+		this.block.setLength(0);
+		try {
+			this.fileWriter.write(text);
+		} catch (IOException e) {
+			throw new CompilationException("Error writing binary file");
+		}
+		if(this.echo != null) {
+			this.echo.print(text);
+		}
+	}
+
+	// ligne du listing d'un segment avec ses propres octets, même si un
+	// segment suivant les a remplacés dans l'image. Le offset a au moins
+	// 6 chiffres et un nombre pair de chiffres
+	public static String getLine(RomImage image, int segment) {
+		StringBuilder line = new StringBuilder();
+		appendLine(line, image, segment);
+		return line.toString();
+	}
+
+	private static void appendLine(StringBuilder line, RomImage image, int segment) {
+		int offset = image.getSegmentOffset(segment);
+		int digits = Math.max(6, (32 - Integer.numberOfLeadingZeros(offset) + 7) / 8 * 2);
+		for(int shift = 4 * (digits - 1); shift >= 0; shift -= 4) {
+			line.append(HEX[(offset >>> shift) & 0xF]);
+		}
+		line.append(": ");
+
+		int length = image.getSegmentLength(segment);
+		for(int i = 0; i < length; i++) {
+			int value = image.readSegment(segment, i) & 0xFF;
+			if(i > 0) {
+				line.append(' ');
+			}
+			line.append(HEX[value >>> 4]).append(HEX[value & 0xF]);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package assembler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// développement d'un macro tel qu'enregistré par l'interpréteur: les octets
+// émis, les labels déclarés et les corrections à faire, avec des offsets
+// relatifs au début du développement. Un appel identique (mêmes arguments,
+// même préfix et mêmes modes M/X) rejoue le développement à l'offset courant
+// au lieu de réexécuter le corps du macro
+
+public class MacroExpansion {
+
+	// offset d'écriture et nombre de segments de l'image au début de l'enregistrement
+	private int startOffset;
+	private int startSegment;
+
+	// nombre d'octets entre le début et la fin du développement
+	private int length;
+
+	private List<Integer> segmentOffsets = new ArrayList<>();
+	private List<byte[]> segments = new ArrayList<>();
+	private List<Label> labels = new ArrayList<>();
+
+	// labels anonymes, "+" ou "-" et offset relatif
+	private List<String> anonSigns = new ArrayList<>();
+	private List<Integer> anonOffsets = new ArrayList<>();
+
+	// corrections relatives (offset et segment), sans frame ni macro ID
+	private List<Fixup> fixups = new ArrayList<>();
+
+	// modes de l'accumulateur et de X/Y à la sortie du macro
+	private boolean setClearAccFlag;
+	private boolean accFlag;
+	private boolean setClearXyFlag;
+	private boolean xyFlag;
+
+	public MacroExpansion(int startOffset, int startSegment) {
+		this.startOffset = startOffset;
+		this.startSegment = startSegment;
+	}
+
+	public void addSegment(int offset, byte[] bytes) {
+		this.segmentOffsets.add(offset - this.startOffset);
+		this.segments.add(bytes);
+	}
+
+	public void addLabel(String name, String prefix, int offset) {
+		this.labels.add(new Label(name, prefix, 0, offset - this.startOffset));
+	}
+
+	public void addAnonLabel(String sign, int offset) {
+		this.anonSigns.add(sign);
+		this.anonOffsets.add(offset - this.startOffset);
+	}
+
+	public void addFixup(Fixup fixup) {
+		this.fixups.add(fixup.relocate(-this.startOffset, -this.startSegment, 0, null));
+	}
+
+	// fin de l'enregistrement
+	public void end(int offset, boolean setClearAccFlag, boolean accFlag, boolean setClearXyFlag, boolean xyFlag) {
+		this.length = offset - this.startOffset;
+		this.setClearAccFlag = setClearAccFlag;
+		this.accFlag = accFlag;
+		this.setClearXyFlag = setClearXyFlag;
+		this.xyFlag = xyFlag;
+	}
+
+	// rejoue le développement à offset dans le frame d'un nouvel appel
+	public void replay(int offset, int macroId, Frame frame, RomImage image, List<Fixup> fixups) {
+		int firstSegment = image.getNumSegments();
+		for(int i = 0; i < this.segments.size(); i++) {
+			image.addSegment(offset + this.segmentOffsets.get(i), this.segments.get(i));
+		}
+
+		for(Label label: this.labels) {
+			frame.addLabel(label.getName(), label.getPrefix(), macroId, offset + label.getOffset());
+		}
+
+		for(int i = 0; i < this.anonSigns.size(); i++) {
+			frame.addAnonLabel(this.anonSigns.get(i), macroId, offset + this.anonOffsets.get(i));
+		}
+
+		for(Fixup fixup: this.fixups) {
+			fixups.add(fixup.relocate(offset, firstSegment, macroId, frame));
+		}
+	}
+
+	public int getLength() {
+		return this.length;
+	}
+
+	public boolean getSetClearAccFlag() {
+		return this.setClearAccFlag;
+	}
+
+	public boolean getAccFlag() {
+		return this.accFlag;
+	}
+
+	public boolean getSetClearXyFlag() {
+		return this.setClearXyFlag;
+	}
+
+	public boolean getXyFlag() {
+		return this.xyFlag;
+	}
+}
@@ -7,16 +7,29 @@ import assembler.syntax.node.*;
 
 public class MacroInfo {
 	
+	private AMacroDecl declaration;
 	private TIdent name;
 	private PBody macroBody;
 	private List<ParamInfo> paramList;
 	
+	// corps du macro compilé par BytecodeCompiler
+	private Bytecode bytecode;
+	
+	// true si le corps n'a pas d'effet de bord (print, pc(), org, appel
+	// de macro), son développement peut alors être mis en cache
+	private boolean cacheable;
+	
 	public MacroInfo(AMacroDecl declaration, List<ParamInfo> paramList) {
+		this.declaration = declaration;
 		this.name = declaration.getIdent();
 		this.macroBody = declaration.getBody();
 		this.paramList = paramList;
 	}
 	
+	public AMacroDecl getDeclaration() {
+		return this.declaration;
+	}
+	
 	public PBody getMacroBody() {
 		return this.macroBody;
 	}
@@ -29,9 +42,25 @@ public class MacroInfo {
 		return this.paramList;
 	}
 	
+	public Bytecode getBytecode() {
+		return this.bytecode;
+	}
+	
+	public void setBytecode(Bytecode bytecode) {
+		this.bytecode = bytecode;
+	}
+	
+	public boolean isCacheable() {
+		return this.cacheable;
+	}
+	
+	public void setCacheable(boolean cacheable) {
+		this.cacheable = cacheable;
+	}
+	
 	public void addParamsToScope(GlobalScope scope) {
 		for(ParamInfo param: this.paramList) {
-			scope.addDecl(param.getName(), param.getType());
+			param.setSlot(scope.addDecl(param.getName(), param.getType()));
 		}
 	}
 	
@@ -57,25 +86,4 @@ public class MacroInfo {
 			throw new SemanticException(location, "too many arguments");
 		}
 	}
-	
-	public void assignArgs(List<Value> args, Frame frame, Token location) {
-		
-		Iterator<Value> argsIterator = args.iterator();
-		
-		for(ParamInfo param: this.paramList) {
-			if(argsIterator.hasNext()) {
-				Value value = argsIterator.next();
-				frame.putVariable(param.getName(), value, frame);
-			}
-			else {
-				String name = param.getName().getText();
-				throw new InterpreterException(location,
-						"missing value for the " + name + " parameter");
-			}
-		}
-		
-		if(argsIterator.hasNext()) {
-			throw new InterpreterException(location, "too many arguments");
-		}
-	}
 }
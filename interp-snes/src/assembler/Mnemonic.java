@@ -0,0 +1,52 @@
+package assembler;
+
+// mnémoniques du 65816. Width indique si la taille des données de l'instruction
+// dépend du flag M (accumulateur) ou du flag X (registres X/Y)
+
+public enum Mnemonic {
+	ADC(Width.ACC), AND(Width.ACC), ASL(Width.ACC), BCC, BCS, BEQ, BIT(Width.ACC), BMI,
+	BNE, BPL, BRA, BRK, BRL, BVC, BVS, CLC,
+	CLD, CLI, CLV, CMP(Width.ACC), COP, CPX(Width.INDEX), CPY(Width.INDEX), DEC(Width.ACC),
+	DEX, DEY, EOR(Width.ACC), INC(Width.ACC), INX, INY, JML, JMP,
+	JSL, JSR, LDA(Width.ACC), LDX(Width.INDEX), LDY(Width.INDEX), LSR(Width.ACC), MVN, MVP,
+	NOP, ORA(Width.ACC), PEA, PEI, PER, PHA(Width.ACC), PHB, PHD,
+	PHK, PHP, PHX(Width.INDEX), PHY(Width.INDEX), PLA(Width.ACC), PLB, PLD, PLP,
+	PLX(Width.INDEX), PLY(Width.INDEX), REP, ROL(Width.ACC), ROR(Width.ACC), RTI, RTL, RTS,
+	SBC(Width.ACC), SEC, SED, SEI, SEP, STA(Width.ACC), STP, STX(Width.INDEX),
+	STY(Width.INDEX), STZ(Width.ACC), TAX, TAY, TCD, TCS, TDC, TRB(Width.ACC),
+	TSB(Width.ACC), TSC, TSX, TXA, TXS, TXY, TYA, TYX,
+	WAI, WDM, XBA, XCE;
+	
+	public enum Width {
+		// taille fixe
+		NONE,
+		// 8 ou 16-bit selon le flag M
+		ACC,
+		// 8 ou 16-bit selon le flag X
+		INDEX;
+	}
+	
+	private final Width width;
+	
+	private Mnemonic() {
+		this(Width.NONE);
+	}
+	
+	private Mnemonic(Width width) {
+		this.width = width;
+	}
+	
+	public Width getWidth() {
+		return this.width;
+	}
+	
+	// instructions qui lisent, modifient puis réécrivent la mémoire
+	public boolean isReadModifyWrite() {
+		switch(this) {
+			case ASL: case DEC: case INC: case LSR: case ROL: case ROR: case TRB: case TSB:
+				return true;
+			default:
+				return false;
+		}
+	}
+}
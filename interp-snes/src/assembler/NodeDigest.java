@@ -0,0 +1,75 @@
+package assembler;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import assembler.syntax.analysis.DepthFirstAdapter;
+import assembler.syntax.node.*;
+
+// empreinte SHA-256 d'un ou plusieurs sous-arbres: la structure (classes des
+// noeuds) et le texte des tokens, sans leur ligne ni leur position. Garde
+// aussi les tokens dans l'ordre de visite, deux sous-arbres de même
+// empreinte ont donc leurs tokens dans le même ordre
+
+public class NodeDigest extends DepthFirstAdapter {
+
+	private MessageDigest digest;
+	private List<Token> tokens = new ArrayList<>();
+
+	public NodeDigest() {
+		try {
+			this.digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e) {
+			// SHA-256 est toujours disponible
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void add(Node node) {
+		node.apply(this);
+	}
+
+	public void add(int value) {
+		update("#" + value);
+	}
+
+	@Override
+	public void defaultIn(Node node) {
+		update(node.getClass().getSimpleName() + "(");
+	}
+
+	@Override
+	public void defaultOut(Node node) {
+		update(")");
+	}
+
+	@Override
+	public void defaultCase(Node node) {
+		if(node instanceof Token) {
+			Token token = (Token)node;
+			this.tokens.add(token);
+			update(node.getClass().getSimpleName() + ":" + token.getText().length() + ":" + token.getText());
+		}
+	}
+
+	private void update(String string) {
+		this.digest.update(string.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// empreinte en hexadécimal, à appeler une seule fois
+	public String getDigest() {
+		StringBuilder hex = new StringBuilder();
+		for(byte b: this.digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	public List<Token> getTokens() {
+		return this.tokens;
+	}
+}
@@ -0,0 +1,81 @@
+package assembler;
+
+// une entrée de la table des opcodes: la valeur de l'instruction,
+// son mnémonique, son mode d'adressage et son nombre de cycles de base
+
+public class Opcode {
+	private final int value;
+	private final Mnemonic mnemonic;
+	private final AddressingMode mode;
+	
+	// cycles en mode natif avec M et X à 8-bit, sans les pénalités
+	// de direct page non aligné ou de changement de page
+	private final int cycles;
+	
+	public Opcode(int value, Mnemonic mnemonic, AddressingMode mode, int cycles) {
+		this.value = value;
+		this.mnemonic = mnemonic;
+		this.mode = mode;
+		this.cycles = cycles;
+	}
+	
+	public int getValue() {
+		return this.value;
+	}
+	
+	public Mnemonic getMnemonic() {
+		return this.mnemonic;
+	}
+	
+	public AddressingMode getMode() {
+		return this.mode;
+	}
+	
+	public int getCycles() {
+		return this.cycles;
+	}
+	
+	// la taille des données dépend de M ou X sauf pour le mode accumulateur
+	// qui ne touche qu'au registre (e.g. "inc a"). En mode implicite seuls
+	// les push et pull de A, X et Y ont une taille (e.g. "pha", "plx")
+	public Mnemonic.Width getWidth() {
+		if(this.mode == AddressingMode.ACCUMULATOR) {
+			return Mnemonic.Width.NONE;
+		}
+		return this.mnemonic.getWidth();
+	}
+	
+	// vrai si l'instruction traite des données 16-bit selon l'état des flags
+	private boolean isWide(boolean accWide, boolean xyWide) {
+		switch(getWidth()) {
+			case ACC:
+				return accWide;
+			case INDEX:
+				return xyWide;
+			default:
+				return false;
+		}
+	}
+	
+	// longeur de l'argument, un argument immédiat prend 2 octets en mode 16-bit
+	public int getOperandSize(boolean accWide, boolean xyWide) {
+		int size = this.mode.getOperandSize();
+		if(this.mode == AddressingMode.IMMEDIATE && isWide(accWide, xyWide)) {
+			size++;
+		}
+		return size;
+	}
+	
+	// longeur totale de l'instruction en octets
+	public int getLength(boolean accWide, boolean xyWide) {
+		return 1 + getOperandSize(accWide, xyWide);
+	}
+	
+	// cycles de base plus 1 par octet de donnée supplémentaire lu ou écrit en mode 16-bit
+	public int getCycles(boolean accWide, boolean xyWide) {
+		if(!isWide(accWide, xyWide)) {
+			return this.cycles;
+		}
+		return this.cycles + (this.mnemonic.isReadModifyWrite() ? 2 : 1);
+	}
+}
@@ -0,0 +1,302 @@
+package assembler;
+
+import static assembler.AddressingMode.*;
+import static assembler.Mnemonic.*;
+
+// table immuable des 256 opcodes du 65816. L'encodage se fait par
+// un index [mnémonique][mode d'adressage] et le décodage par un
+// index direct sur la valeur de l'instruction
+
+public final class OpcodeTable {
+	
+	// opcode selon le mnémonique et le mode d'adressage, null si la combinaison n'existe pas
+	private static final Opcode[][] ENCODE = new Opcode[Mnemonic.values().length][AddressingMode.values().length];
+	
+	// opcode selon la valeur de l'instruction
+	private static final Opcode[] DECODE = new Opcode[256];
+	
+	static {
+		add(0x00, BRK, IMMEDIATE, 8);
+		add(0x01, ORA, DIRECT_X_INDIRECT, 6);
+		add(0x02, COP, IMMEDIATE, 8);
+		add(0x03, ORA, STACK_RELATIVE, 4);
+		add(0x04, TSB, DIRECT, 5);
+		add(0x05, ORA, DIRECT, 3);
+		add(0x06, ASL, DIRECT, 5);
+		add(0x07, ORA, DIRECT_INDIRECT_LONG, 6);
+		add(0x08, PHP, IMPLIED, 3);
+		add(0x09, ORA, IMMEDIATE, 2);
+		add(0x0A, ASL, ACCUMULATOR, 2);
+		add(0x0B, PHD, IMPLIED, 4);
+		add(0x0C, TSB, ABSOLUTE, 6);
+		add(0x0D, ORA, ABSOLUTE, 4);
+		add(0x0E, ASL, ABSOLUTE, 6);
+		add(0x0F, ORA, ABSOLUTE_LONG, 5);
+		add(0x10, BPL, RELATIVE, 2);
+		add(0x11, ORA, DIRECT_INDIRECT_Y, 5);
+		add(0x12, ORA, DIRECT_INDIRECT, 5);
+		add(0x13, ORA, STACK_RELATIVE_INDIRECT_Y, 7);
+		add(0x14, TRB, DIRECT, 5);
+		add(0x15, ORA, DIRECT_X, 4);
+		add(0x16, ASL, DIRECT_X, 6);
+		add(0x17, ORA, DIRECT_INDIRECT_LONG_Y, 6);
+		add(0x18, CLC, IMPLIED, 2);
+		add(0x19, ORA, ABSOLUTE_Y, 4);
+		add(0x1A, INC, ACCUMULATOR, 2);
+		add(0x1B, TCS, IMPLIED, 2);
+		add(0x1C, TRB, ABSOLUTE, 6);
+		add(0x1D, ORA, ABSOLUTE_X, 4);
+		add(0x1E, ASL, ABSOLUTE_X, 7);
+		add(0x1F, ORA, ABSOLUTE_LONG_X, 5);
+		add(0x20, JSR, ABSOLUTE, 6);
+		add(0x21, AND, DIRECT_X_INDIRECT, 6);
+		add(0x22, JSL, ABSOLUTE_LONG, 8);
+		add(0x23, AND, STACK_RELATIVE, 4);
+		add(0x24, BIT, DIRECT, 3);
+		add(0x25, AND, DIRECT, 3);
+		add(0x26, ROL, DIRECT, 5);
+		add(0x27, AND, DIRECT_INDIRECT_LONG, 6);
+		add(0x28, PLP, IMPLIED, 4);
+		add(0x29, AND, IMMEDIATE, 2);
+		add(0x2A, ROL, ACCUMULATOR, 2);
+		add(0x2B, PLD, IMPLIED, 5);
+		add(0x2C, BIT, ABSOLUTE, 4);
+		add(0x2D, AND, ABSOLUTE, 4);
+		add(0x2E, ROL, ABSOLUTE, 6);
+		add(0x2F, AND, ABSOLUTE_LONG, 5);
+		add(0x30, BMI, RELATIVE, 2);
+		add(0x31, AND, DIRECT_INDIRECT_Y, 5);
+		add(0x32, AND, DIRECT_INDIRECT, 5);
+		add(0x33, AND, STACK_RELATIVE_INDIRECT_Y, 7);
+		add(0x34, BIT, DIRECT_X, 4);
+		add(0x35, AND, DIRECT_X, 4);
+		add(0x36, ROL, DIRECT_X, 6);
+		add(0x37, AND, DIRECT_INDIRECT_LONG_Y, 6);
+		add(0x38, SEC, IMPLIED, 2);
+		add(0x39, AND, ABSOLUTE_Y, 4);
+		add(0x3A, DEC, ACCUMULATOR, 2);
+		add(0x3B, TSC, IMPLIED, 2);
+		add(0x3C, BIT, ABSOLUTE_X, 4);
+		add(0x3D, AND, ABSOLUTE_X, 4);
+		add(0x3E, ROL, ABSOLUTE_X, 7);
+		add(0x3F, AND, ABSOLUTE_LONG_X, 5);
+		add(0x40, RTI, IMPLIED, 7);
+		add(0x41, EOR, DIRECT_X_INDIRECT, 6);
+		add(0x42, WDM, IMMEDIATE, 2);
+		add(0x43, EOR, STACK_RELATIVE, 4);
+		add(0x44, MVP, BLOCK_MOVE, 7);
+		add(0x45, EOR, DIRECT, 3);
+		add(0x46, LSR, DIRECT, 5);
+		add(0x47, EOR, DIRECT_INDIRECT_LONG, 6);
+		add(0x48, PHA, IMPLIED, 3);
+		add(0x49, EOR, IMMEDIATE, 2);
+		add(0x4A, LSR, ACCUMULATOR, 2);
+		add(0x4B, PHK, IMPLIED, 3);
+		add(0x4C, JMP, ABSOLUTE, 3);
+		add(0x4D, EOR, ABSOLUTE, 4);
+		add(0x4E, LSR, ABSOLUTE, 6);
+		add(0x4F, EOR, ABSOLUTE_LONG, 5);
+		add(0x50, BVC, RELATIVE, 2);
+		add(0x51, EOR, DIRECT_INDIRECT_Y, 5);
+		add(0x52, EOR, DIRECT_INDIRECT, 5);
+		add(0x53, EOR, STACK_RELATIVE_INDIRECT_Y, 7);
+		add(0x54, MVN, BLOCK_MOVE, 7);
+		add(0x55, EOR, DIRECT_X, 4);
+		add(0x56, LSR, DIRECT_X, 6);
+		add(0x57, EOR, DIRECT_INDIRECT_LONG_Y, 6);
+		add(0x58, CLI, IMPLIED, 2);
+		add(0x59, EOR, ABSOLUTE_Y, 4);
+		add(0x5A, PHY, IMPLIED, 3);
+		add(0x5B, TCD, IMPLIED, 2);
+		add(0x5C, JML, ABSOLUTE_LONG, 4);
+		add(0x5D, EOR, ABSOLUTE_X, 4);
+		add(0x5E, LSR, ABSOLUTE_X, 7);
+		add(0x5F, EOR, ABSOLUTE_LONG_X, 5);
+		add(0x60, RTS, IMPLIED, 6);
+		add(0x61, ADC, DIRECT_X_INDIRECT, 6);
+		add(0x62, PER, RELATIVE_LONG, 6);
+		add(0x63, ADC, STACK_RELATIVE, 4);
+		add(0x64, STZ, DIRECT, 3);
+		add(0x65, ADC, DIRECT, 3);
+		add(0x66, ROR, DIRECT, 5);
+		add(0x67, ADC, DIRECT_INDIRECT_LONG, 6);
+		add(0x68, PLA, IMPLIED, 4);
+		add(0x69, ADC, IMMEDIATE, 2);
+		add(0x6A, ROR, ACCUMULATOR, 2);
+		add(0x6B, RTL, IMPLIED, 6);
+		add(0x6C, JMP, ABSOLUTE_INDIRECT, 5);
+		add(0x6D, ADC, ABSOLUTE, 4);
+		add(0x6E, ROR, ABSOLUTE, 6);
+		add(0x6F, ADC, ABSOLUTE_LONG, 5);
+		add(0x70, BVS, RELATIVE, 2);
+		add(0x71, ADC, DIRECT_INDIRECT_Y, 5);
+		add(0x72, ADC, DIRECT_INDIRECT, 5);
+		add(0x73, ADC, STACK_RELATIVE_INDIRECT_Y, 7);
+		add(0x74, STZ, DIRECT_X, 4);
+		add(0x75, ADC, DIRECT_X, 4);
+		add(0x76, ROR, DIRECT_X, 6);
+		add(0x77, ADC, DIRECT_INDIRECT_LONG_Y, 6);
+		add(0x78, SEI, IMPLIED, 2);
+		add(0x79, ADC, ABSOLUTE_Y, 4);
+		add(0x7A, PLY, IMPLIED, 4);
+		add(0x7B, TDC, IMPLIED, 2);
+		add(0x7C, JMP, ABSOLUTE_X_INDIRECT, 6);
+		add(0x7D, ADC, ABSOLUTE_X, 4);
+		add(0x7E, ROR, ABSOLUTE_X, 7);
+		add(0x7F, ADC, ABSOLUTE_LONG_X, 5);
+		add(0x80, BRA, RELATIVE, 3);
+		add(0x81, STA, DIRECT_X_INDIRECT, 6);
+		add(0x82, BRL, RELATIVE_LONG, 4);
+		add(0x83, STA, STACK_RELATIVE, 4);
+		add(0x84, STY, DIRECT, 3);
+		add(0x85, STA, DIRECT, 3);
+		add(0x86, STX, DIRECT, 3);
+		add(0x87, STA, DIRECT_INDIRECT_LONG, 6);
+		add(0x88, DEY, IMPLIED, 2);
+		add(0x89, BIT, IMMEDIATE, 2);
+		add(0x8A, TXA, IMPLIED, 2);
+		add(0x8B, PHB, IMPLIED, 3);
+		add(0x8C, STY, ABSOLUTE, 4);
+		add(0x8D, STA, ABSOLUTE, 4);
+		add(0x8E, STX, ABSOLUTE, 4);
+		add(0x8F, STA, ABSOLUTE_LONG, 5);
+		add(0x90, BCC, RELATIVE, 2);
+		add(0x91, STA, DIRECT_INDIRECT_Y, 6);
+		add(0x92, STA, DIRECT_INDIRECT, 5);
+		add(0x93, STA, STACK_RELATIVE_INDIRECT_Y, 7);
+		add(0x94, STY, DIRECT_X, 4);
+		add(0x95, STA, DIRECT_X, 4);
+		add(0x96, STX, DIRECT_Y, 4);
+		add(0x97, STA, DIRECT_INDIRECT_LONG_Y, 6);
+		add(0x98, TYA, IMPLIED, 2);
+		add(0x99, STA, ABSOLUTE_Y, 5);
+		add(0x9A, TXS, IMPLIED, 2);
+		add(0x9B, TXY, IMPLIED, 2);
+		add(0x9C, STZ, ABSOLUTE, 4);
+		add(0x9D, STA, ABSOLUTE_X, 5);
+		add(0x9E, STZ, ABSOLUTE_X, 5);
+		add(0x9F, STA, ABSOLUTE_LONG_X, 5);
+		add(0xA0, LDY, IMMEDIATE, 2);
+		add(0xA1, LDA, DIRECT_X_INDIRECT, 6);
+		add(0xA2, LDX, IMMEDIATE, 2);
+		add(0xA3, LDA, STACK_RELATIVE, 4);
+		add(0xA4, LDY, DIRECT, 3);
+		add(0xA5, LDA, DIRECT, 3);
+		add(0xA6, LDX, DIRECT, 3);
+		add(0xA7, LDA, DIRECT_INDIRECT_LONG, 6);
+		add(0xA8, TAY, IMPLIED, 2);
+		add(0xA9, LDA, IMMEDIATE, 2);
+		add(0xAA, TAX, IMPLIED, 2);
+		add(0xAB, PLB, IMPLIED, 4);
+		add(0xAC, LDY, ABSOLUTE, 4);
+		add(0xAD, LDA, ABSOLUTE, 4);
+		add(0xAE, LDX, ABSOLUTE, 4);
+		add(0xAF, LDA, ABSOLUTE_LONG, 5);
+		add(0xB0, BCS, RELATIVE, 2);
+		add(0xB1, LDA, DIRECT_INDIRECT_Y, 5);
+		add(0xB2, LDA, DIRECT_INDIRECT, 5);
+		add(0xB3, LDA, STACK_RELATIVE_INDIRECT_Y, 7);
+		add(0xB4, LDY, DIRECT_X, 4);
+		add(0xB5, LDA, DIRECT_X, 4);
+		add(0xB6, LDX, DIRECT_Y, 4);
+		add(0xB7, LDA, DIRECT_INDIRECT_LONG_Y, 6);
+		add(0xB8, CLV, IMPLIED, 2);
+		add(0xB9, LDA, ABSOLUTE_Y, 4);
+		add(0xBA, TSX, IMPLIED, 2);
+		add(0xBB, TYX, IMPLIED, 2);
+		add(0xBC, LDY, ABSOLUTE_X, 4);
+		add(0xBD, LDA, ABSOLUTE_X, 4);
+		add(0xBE, LDX, ABSOLUTE_Y, 4);
+		add(0xBF, LDA, ABSOLUTE_LONG_X, 5);
+		add(0xC0, CPY, IMMEDIATE, 2);
+		add(0xC1, CMP, DIRECT_X_INDIRECT, 6);
+		add(0xC2, REP, IMMEDIATE, 3);
+		add(0xC3, CMP, STACK_RELATIVE, 4);
+		add(0xC4, CPY, DIRECT, 3);
+		add(0xC5, CMP, DIRECT, 3);
+		add(0xC6, DEC, DIRECT, 5);
+		add(0xC7, CMP, DIRECT_INDIRECT_LONG, 6);
+		add(0xC8, INY, IMPLIED, 2);
+		add(0xC9, CMP, IMMEDIATE, 2);
+		add(0xCA, DEX, IMPLIED, 2);
+		add(0xCB, WAI, IMPLIED, 3);
+		add(0xCC, CPY, ABSOLUTE, 4);
+		add(0xCD, CMP, ABSOLUTE, 4);
+		add(0xCE, DEC, ABSOLUTE, 6);
+		add(0xCF, CMP, ABSOLUTE_LONG, 5);
+		add(0xD0, BNE, RELATIVE, 2);
+		add(0xD1, CMP, DIRECT_INDIRECT_Y, 5);
+		add(0xD2, CMP, DIRECT_INDIRECT, 5);
+		add(0xD3, CMP, STACK_RELATIVE_INDIRECT_Y, 7);
+		add(0xD4, PEI, DIRECT_INDIRECT, 6);
+		add(0xD5, CMP, DIRECT_X, 4);
+		add(0xD6, DEC, DIRECT_X, 6);
+		add(0xD7, CMP, DIRECT_INDIRECT_LONG_Y, 6);
+		add(0xD8, CLD, IMPLIED, 2);
+		add(0xD9, CMP, ABSOLUTE_Y, 4);
+		add(0xDA, PHX, IMPLIED, 3);
+		add(0xDB, STP, IMPLIED, 3);
+		add(0xDC, JML, ABSOLUTE_INDIRECT_LONG, 6);
+		add(0xDD, CMP, ABSOLUTE_X, 4);
+		add(0xDE, DEC, ABSOLUTE_X, 7);
+		add(0xDF, CMP, ABSOLUTE_LONG_X, 5);
+		add(0xE0, CPX, IMMEDIATE, 2);
+		add(0xE1, SBC, DIRECT_X_INDIRECT, 6);
+		add(0xE2, SEP, IMMEDIATE, 3);
+		add(0xE3, SBC, STACK_RELATIVE, 4);
+		add(0xE4, CPX, DIRECT, 3);
+		add(0xE5, SBC, DIRECT, 3);
+		add(0xE6, INC, DIRECT, 5);
+		add(0xE7, SBC, DIRECT_INDIRECT_LONG, 6);
+		add(0xE8, INX, IMPLIED, 2);
+		add(0xE9, SBC, IMMEDIATE, 2);
+		add(0xEA, NOP, IMPLIED, 2);
+		add(0xEB, XBA, IMPLIED, 3);
+		add(0xEC, CPX, ABSOLUTE, 4);
+		add(0xED, SBC, ABSOLUTE, 4);
+		add(0xEE, INC, ABSOLUTE, 6);
+		add(0xEF, SBC, ABSOLUTE_LONG, 5);
+		add(0xF0, BEQ, RELATIVE, 2);
+		add(0xF1, SBC, DIRECT_INDIRECT_Y, 5);
+		add(0xF2, SBC, DIRECT_INDIRECT, 5);
+		add(0xF3, SBC, STACK_RELATIVE_INDIRECT_Y, 7);
+		add(0xF4, PEA, ABSOLUTE, 5);
+		add(0xF5, SBC, DIRECT_X, 4);
+		add(0xF6, INC, DIRECT_X, 6);
+		add(0xF7, SBC, DIRECT_INDIRECT_LONG_Y, 6);
+		add(0xF8, SED, IMPLIED, 2);
+		add(0xF9, SBC, ABSOLUTE_Y, 4);
+		add(0xFA, PLX, IMPLIED, 4);
+		add(0xFB, XCE, IMPLIED, 2);
+		add(0xFC, JSR, ABSOLUTE_X_INDIRECT, 8);
+		add(0xFD, SBC, ABSOLUTE_X, 4);
+		add(0xFE, INC, ABSOLUTE_X, 7);
+		add(0xFF, SBC, ABSOLUTE_LONG_X, 5);
+		
+		// noms alternatifs acceptés par la plupart des assembleurs
+		alias(JMP, ABSOLUTE_LONG, 0x5C);
+		alias(JMP, ABSOLUTE_INDIRECT_LONG, 0xDC);
+		alias(JSR, ABSOLUTE_LONG, 0x22);
+	}
+	
+	private OpcodeTable() {
+	}
+	
+	private static void add(int value, Mnemonic mnemonic, AddressingMode mode, int cycles) {
+		Opcode opcode = new Opcode(value, mnemonic, mode, cycles);
+		ENCODE[mnemonic.ordinal()][mode.ordinal()] = opcode;
+		DECODE[value] = opcode;
+	}
+	
+	private static void alias(Mnemonic mnemonic, AddressingMode mode, int value) {
+		ENCODE[mnemonic.ordinal()][mode.ordinal()] = DECODE[value];
+	}
+	
+	public static Opcode get(Mnemonic mnemonic, AddressingMode mode) {
+		return ENCODE[mnemonic.ordinal()][mode.ordinal()];
+	}
+	
+	public static Opcode decode(int value) {
+		return DECODE[value & 0xFF];
+	}
+}
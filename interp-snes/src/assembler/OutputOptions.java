@@ -0,0 +1,88 @@
+package assembler;
+
+import java.nio.file.Path;
+
+// fichiers écrits par CompilationEngine.writeFiles
+
+public class OutputOptions {
+
+	// format du fichier binaire dans results/
+	private BinaryFormat binaryFormat = BinaryFormat.FLAT;
+
+	// traduction des adresses, null pour le mapping par défaut
+	private RomMapping mapping;
+
+	// ROM de base des patchs IPS et BPS, null s'il n'y en a pas
+	private Path baseRom;
+
+	// ROM modifiée sur place au lieu d'écrire le fichier binaire
+	private Path patchRom;
+
+	// listing dans results/, et aussi dans la console si echo
+	private boolean listing = true;
+	private boolean echo = true;
+
+	// fichier de symboles dans results/
+	private boolean symbols = false;
+
+	public BinaryFormat getBinaryFormat() {
+		return this.binaryFormat;
+	}
+
+	public void setBinaryFormat(BinaryFormat binaryFormat) {
+		this.binaryFormat = binaryFormat;
+	}
+
+	// les offsets sont des adresses SNES en LoROM dès qu'une ROM est
+	// donnée, sinon ce sont les offsets du fichier binaire
+	public RomMapping getMapping() {
+		if(this.mapping != null) {
+			return this.mapping;
+		}
+		return this.baseRom != null || this.patchRom != null ? RomMapping.LOROM : RomMapping.NONE;
+	}
+
+	public void setMapping(RomMapping mapping) {
+		this.mapping = mapping;
+	}
+
+	public Path getBaseRom() {
+		return this.baseRom;
+	}
+
+	public void setBaseRom(Path baseRom) {
+		this.baseRom = baseRom;
+	}
+
+	public Path getPatchRom() {
+		return this.patchRom;
+	}
+
+	public void setPatchRom(Path patchRom) {
+		this.patchRom = patchRom;
+	}
+
+	public boolean isListing() {
+		return this.listing;
+	}
+
+	public void setListing(boolean listing) {
+		this.listing = listing;
+	}
+
+	public boolean isEcho() {
+		return this.echo;
+	}
+
+	public void setEcho(boolean echo) {
+		this.echo = echo;
+	}
+
+	public boolean isSymbols() {
+		return this.symbols;
+	}
+
+	public void setSymbols(boolean symbols) {
+		this.symbols = symbols;
+	}
+}
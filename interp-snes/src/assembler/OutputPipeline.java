@@ -0,0 +1,154 @@
+package assembler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// donne les segments résolus aux sinks en un seul parcours de l'image.
+// Chaque sink a son thread et une queue bornée de lots de segments: un
+// sink lent (e.g. le listing affiché dans la console) ne retarde pas les
+// autres, et le parcours attend quand une queue est pleine
+//
+// Si un sink échoue, il vide quand même sa queue pour ne pas bloquer le
+// parcours et son abort ferme ce qu'il a ouvert. La première erreur dans
+// l'ordre des sinks est relancée
+
+public class OutputPipeline {
+
+	// nombre de segments d'un lot
+	private static final int BATCH_SIZE = 4096;
+
+	// nombre de lots en attente par sink
+	private static final int QUEUE_CAPACITY = 16;
+
+	// lot qui marque la fin des segments
+	private static final int[] END = new int[0];
+
+	public static void run(RomImage image, List<OutputSink> sinks) {
+		// un seul sink n'a pas besoin de thread
+		if(sinks.size() == 1) {
+			Worker worker = new Worker(sinks.get(0), image);
+			for(int segment = 0; segment < image.getNumSegments(); segment++) {
+				worker.segment(segment);
+			}
+			worker.close();
+			worker.rethrow();
+			return;
+		}
+
+		List<Worker> workers = new ArrayList<>();
+		for(OutputSink sink: sinks) {
+			Worker worker = new Worker(sink, image);
+			worker.start();
+			workers.add(worker);
+		}
+
+		try {
+			for(int from = 0; from < image.getNumSegments(); from += BATCH_SIZE) {
+				int[] batch = { from, Math.min(image.getNumSegments(), from + BATCH_SIZE) };
+				for(Worker worker: workers) {
+					worker.queue.put(batch);
+				}
+			}
+			for(Worker worker: workers) {
+				worker.queue.put(END);
+			}
+			for(Worker worker: workers) {
+				worker.join();
+			}
+		}
+		catch(InterruptedException e) {
+			for(Worker worker: workers) {
+				worker.interrupt();
+			}
+			Thread.currentThread().interrupt();
+			throw new CompilationException("Interrupted while writing output files");
+		}
+
+		for(Worker worker: workers) {
+			worker.rethrow();
+		}
+	}
+
+	private static class Worker extends Thread {
+		private OutputSink sink;
+		private RomImage image;
+		private BlockingQueue<int[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+		// première erreur du sink, les segments suivants sont ignorés
+		private Throwable error;
+
+		public Worker(OutputSink sink, RomImage image) {
+			super("output-" + sink.getClass().getSimpleName());
+			this.sink = sink;
+			this.image = image;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while(true) {
+					int[] batch = this.queue.take();
+					if(batch == END) {
+						break;
+					}
+					for(int segment = batch[0]; segment < batch[1]; segment++) {
+						segment(segment);
+					}
+				}
+			}
+			catch(InterruptedException e) {
+				if(this.error == null) {
+					this.error = new CompilationException("Interrupted while writing output files");
+				}
+			}
+			close();
+		}
+
+		private void segment(int segment) {
+			if(this.error == null) {
+				try {
+					this.sink.segment(this.image, segment);
+				}
+				catch(Throwable e) {
+					this.error = e;
+				}
+			}
+		}
+
+		// close si tout a réussi, sinon abort. Une erreur de abort est
+		// ignorée, on garde la première
+		private void close() {
+			if(this.error == null) {
+				try {
+					this.sink.close(this.image);
+				}
+				catch(Throwable e) {
+					this.error = e;
+				}
+			}
+			if(this.error != null) {
+				try {
+					this.sink.abort();
+				}
+				catch(Throwable e) {
+				}
+			}
+		}
+
+		// les sinks lancent déjà une CompilationException pour leurs erreurs
+		// d'écriture, les autres (e.g. InterpreterException) passent telles quelles
+		private void rethrow() {
+			if(this.error instanceof RuntimeException) {
+				throw (RuntimeException)this.error;
+			}
+			if(this.error instanceof Error) {
+				throw (Error)this.error;
+			}
+			if(this.error != null) {
+				throw new CompilationException("Error writing output files: " + this.error.getMessage());
+			}
+		}
+	}
+}
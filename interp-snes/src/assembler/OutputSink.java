@@ -0,0 +1,28 @@
+package assembler;
+
+import java.io.IOException;
+
+// destination des segments résolus (fichier binaire, listing, symboles,
+// patch). Chaque sink reçoit une fois chaque segment, dans l'ordre
+// d'émission, puis close avec l'image complète. Les sinks d'un même
+// build tournent chacun sur son thread (voir OutputPipeline) et ne
+// font que lire l'image, qui ne change plus après la résolution
+//
+// Seuls le listing et les formats binaires FLAT et SPARSE écrivent
+// segment par segment. Les symboles, les patchs et la ROM modifiée
+// ont besoin de l'image complète et n'écrivent qu'à close
+
+public interface OutputSink {
+
+	// un segment de l'image, ses octets sont lus dans l'image
+	default void segment(RomImage image, int segment) throws IOException {
+	}
+
+	// après le dernier segment
+	void close(RomImage image) throws IOException;
+
+	// après une erreur du sink, à la place de close ou après un close qui
+	// a échoué: ferme ce qui est ouvert sans rien écrire de plus
+	default void abort() throws IOException {
+	}
+}
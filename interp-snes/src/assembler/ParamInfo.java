@@ -10,6 +10,8 @@ public class ParamInfo {
 
     private Type type;
 
+    private int slot;
+
     public ParamInfo(AParam declaration, Type type) {
 
         this.declaration = declaration;
@@ -24,4 +26,12 @@ public class ParamInfo {
     public Type getType() {
         return this.type;
     }
+
+    public int getSlot() {
+        return this.slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
 }
@@ -0,0 +1,430 @@
+package assembler;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// patchs IPS et BPS construits directement à partir des plages émises,
+// sans écrire l'image au complet. La ROM de base est optionnelle: sans
+// elle, le patch donne l'image du fichier binaire (les trous sont des 0).
+// L'image est déjà traduite avec les offsets du fichier (voir RomMapping)
+// et la base est la ROM sans son header de copieur
+
+public class PatchWriter {
+
+	// une suite d'octets égaux au moins aussi longue devient un record RLE
+	private static final int IPS_MIN_RLE = 16;
+	private static final int IPS_MAX_LENGTH = 0xFFFF;
+	private static final int IPS_MAX_OFFSET = 0xFFFFFF;
+
+	// un record ne peut pas commencer à cet offset, il se lit "EOF"
+	private static final int IPS_EOF = 0x454F46;
+
+	// taille d'un record sans ses données, des octets égaux à la base plus
+	// courts que ça sont gardés dans le record au lieu d'en commencer un autre
+	private static final int IPS_RECORD_SIZE = 5;
+
+	// commandes BPS
+	private static final int SOURCE_READ = 0;
+	private static final int TARGET_READ = 1;
+	private static final int SOURCE_COPY = 2;
+	private static final int TARGET_COPY = 3;
+
+	// longueur minimale d'une commande BPS autre que TARGET_READ
+	private static final int BPS_MIN_READ = 4;
+	private static final int BPS_MIN_MATCH = 8;
+
+	// index des suites de 8 octets de la base, une position sur INDEX_STEP:
+	// une suite de plus de INDEX_STEP + BPS_MIN_MATCH octets est toujours
+	// trouvée, et l'index d'une ROM de 4 Mo se construit en quelques ms
+	private static final int INDEX_STEP = 16;
+	private static final int HASH_BITS = 18;
+	private static final int MAX_CANDIDATES = 16;
+
+	// image avec les offsets du fichier
+	private RomImage image;
+	private int[] runs;
+
+	// ROM de base, null s'il n'y en a pas
+	private ByteBuffer base;
+	private int baseSize;
+
+	private int targetSize;
+
+	// état de l'écriture BPS
+	private OutputStream out;
+	private byte[] literals = new byte[256];
+	private int numLiterals = 0;
+	private int sourceRelativeOffset = 0;
+	private int targetRelativeOffset = 0;
+
+	// index de la base, créé à la première recherche
+	private int[] indexHeads;
+	private int[] indexNext;
+
+	// 32 bits bas de la suite de chaque entrée, pour éviter de lire la
+	// base pour les collisions du hash
+	private int[] indexKeys;
+
+	public PatchWriter(RomImage image, ByteBuffer base) {
+		this.image = image;
+		this.runs = image.getRuns();
+		this.base = base;
+		this.baseSize = base == null ? 0 : base.limit();
+		this.targetSize = Math.max(image.getSize(), this.baseSize);
+	}
+
+	// "PATCH", puis des records (offset de 24-bit, longueur de 16-bit,
+	// données) ou des records RLE (longueur 0, nombre, octet), puis "EOF".
+	// Avec une base, seuls les octets qui changent sont gardés
+	public void writeIps(OutputStream stream) throws IOException {
+		this.out = new BufferedOutputStream(stream);
+		this.out.write("PATCH".getBytes(StandardCharsets.US_ASCII));
+
+		for(int run = 0; run < this.runs.length; run += 2) {
+			int start = this.runs[run];
+			byte[] bytes = getRunBytes(run);
+
+			int i = 0;
+			while(i < bytes.length) {
+				if(isSameAsBase(start + i, bytes[i])) {
+					i++;
+					continue;
+				}
+
+				// fin des changements, avant une suite d'octets égaux à la base
+				int lastChange = i;
+				for(int j = i + 1; j < bytes.length && j - lastChange <= IPS_RECORD_SIZE; j++) {
+					if(!isSameAsBase(start + j, bytes[j])) {
+						lastChange = j;
+					}
+				}
+				writeIpsRecords(start + i, bytes, i, lastChange + 1 - i);
+				i = lastChange + 1;
+			}
+		}
+
+		this.out.write("EOF".getBytes(StandardCharsets.US_ASCII));
+		this.out.flush();
+	}
+
+	private void writeIpsRecords(int offset, byte[] bytes, int from, int length) throws IOException {
+		while(length > 0) {
+			if(offset > IPS_MAX_OFFSET) {
+				throw new CompilationException("The IPS format cannot address offset $" + Integer.toHexString(offset).toUpperCase());
+			}
+
+			// on commence le record un octet plus tôt avec l'octet déjà là
+			if(offset == IPS_EOF) {
+				writeIpsHeader(offset - 1, 2);
+				this.out.write(getTargetByte(offset - 1));
+				this.out.write(bytes[from]);
+				offset++;
+				from++;
+				length--;
+				continue;
+			}
+
+			int run = 1;
+			while(run < length && run < IPS_MAX_LENGTH && bytes[from + run] == bytes[from]) {
+				run++;
+			}
+
+			int count;
+			if(run >= IPS_MIN_RLE) {
+				writeIpsHeader(offset, 0);
+				writeShort(run);
+				this.out.write(bytes[from]);
+				count = run;
+			}
+			else {
+				// données jusqu'à la prochaine suite assez longue pour un record RLE
+				count = 0;
+				int same = 0;
+				while(count < length && count < IPS_MAX_LENGTH) {
+					same = count > 0 && bytes[from + count] == bytes[from + count - 1] ? same + 1 : 1;
+					if(same == IPS_MIN_RLE) {
+						count -= IPS_MIN_RLE - 1;
+						break;
+					}
+					count++;
+				}
+				writeIpsHeader(offset, count);
+				this.out.write(bytes, from, count);
+			}
+			offset += count;
+			from += count;
+			length -= count;
+		}
+	}
+
+	private void writeIpsHeader(int offset, int length) throws IOException {
+		this.out.write(offset >>> 16);
+		this.out.write(offset >>> 8);
+		this.out.write(offset);
+		writeShort(length);
+	}
+
+	private void writeShort(int value) throws IOException {
+		this.out.write(value >>> 8);
+		this.out.write(value);
+	}
+
+	// "BPS1", tailles de la base et du résultat, commandes, puis les CRC32
+	// de la base, du résultat et du patch. Les octets qui ne changent pas
+	// sont lus de la base, une suite d'octets égaux est copiée du résultat
+	// décalé de 1 (RLE) et les suites déjà présentes ailleurs dans la base
+	// sont trouvées avec un index de la base
+	public void writeBps(OutputStream stream) throws IOException {
+		CRC32 patchCrc = new CRC32();
+		CRC32 targetCrc = new CRC32();
+		this.out = new CheckedOutputStream(new BufferedOutputStream(stream), patchCrc);
+		this.out.write("BPS1".getBytes(StandardCharsets.US_ASCII));
+		writeNumber(this.baseSize);
+		writeNumber(this.targetSize);
+		writeNumber(0);
+
+		int position = 0;
+		for(int run = 0; run < this.runs.length; run += 2) {
+			int start = this.runs[run];
+			byte[] bytes = getRunBytes(run);
+
+			writeBpsFill(position, start, targetCrc);
+			writeBpsRun(start, bytes);
+			targetCrc.update(bytes);
+			position = start + bytes.length;
+		}
+		writeBpsFill(position, this.targetSize, targetCrc);
+		flushLiterals();
+
+		CRC32 sourceCrc = new CRC32();
+		if(this.base != null) {
+			sourceCrc.update(this.base.duplicate().clear());
+		}
+		writeInt((int)sourceCrc.getValue());
+		writeInt((int)targetCrc.getValue());
+		writeInt((int)patchCrc.getValue());
+		this.out.flush();
+	}
+
+	// octets entre deux plages: ceux de la base, puis des 0 après sa fin
+	private void writeBpsFill(int from, int to, CRC32 targetCrc) throws IOException {
+		int end = Math.min(to, this.baseSize);
+		if(from < end) {
+			flushLiterals();
+			writeCommand(SOURCE_READ, end - from);
+			targetCrc.update(this.base.duplicate().limit(end).position(from));
+			from = end;
+		}
+
+		if(from < to) {
+			addLiteral((byte)0);
+			if(to - from > 1) {
+				flushLiterals();
+				writeTargetCopy(from, to - from - 1);
+			}
+
+			byte[] zeros = new byte[Math.min(to - from, RomImage.PAGE_SIZE)];
+			for(int count = to - from; count > 0; count -= zeros.length) {
+				targetCrc.update(zeros, 0, Math.min(count, zeros.length));
+			}
+		}
+	}
+
+	private void writeBpsRun(int start, byte[] bytes) throws IOException {
+		int i = 0;
+		while(i < bytes.length) {
+			int position = start + i;
+
+			// octets égaux à la base à la même position
+			int same = 0;
+			while(i + same < bytes.length && isSameAsBase(position + same, bytes[i + same])) {
+				same++;
+			}
+			if(same >= BPS_MIN_READ) {
+				flushLiterals();
+				writeCommand(SOURCE_READ, same);
+				i += same;
+				continue;
+			}
+
+			// suite d'octets égaux au précédent
+			int repeat = 0;
+			while(i > 0 && i + repeat < bytes.length && bytes[i + repeat] == bytes[i - 1]) {
+				repeat++;
+			}
+			if(repeat >= BPS_MIN_READ) {
+				flushLiterals();
+				writeTargetCopy(position - 1, repeat);
+				i += repeat;
+				continue;
+			}
+
+			// suite présente ailleurs dans la base
+			int[] match = findSourceMatch(bytes, i);
+			if(match != null) {
+				int source = match[0];
+				int length = match[1];
+
+				// la copie peut commencer avant, dans les octets pas encore écrits
+				while(this.numLiterals > 0 && source > 0
+						&& this.base.get(source - 1) == this.literals[this.numLiterals - 1]) {
+					this.numLiterals--;
+					source--;
+					length++;
+				}
+				flushLiterals();
+				writeCommand(SOURCE_COPY, length);
+				writeRelativeOffset(source - this.sourceRelativeOffset);
+				this.sourceRelativeOffset = source + length;
+				i += match[1];
+				continue;
+			}
+
+			addLiteral(bytes[i]);
+			i++;
+		}
+	}
+
+	// position et longueur de la plus longue suite de la base égale aux
+	// octets à partir de from, null si elle est trop courte
+	private int[] findSourceMatch(byte[] bytes, int from) {
+		if(this.baseSize < BPS_MIN_MATCH || from + BPS_MIN_MATCH > bytes.length) {
+			return null;
+		}
+		if(this.indexHeads == null) {
+			buildIndex();
+		}
+
+		long window = 0;
+		for(int i = 0; i < BPS_MIN_MATCH; i++) {
+			window = (window << 8) | (bytes[from + i] & 0xFF);
+		}
+
+		int bestSource = -1;
+		int bestLength = 0;
+		int candidates = 0;
+		for(int entry = this.indexHeads[hash(window)]; entry >= 0 && candidates < MAX_CANDIDATES;
+				entry = this.indexNext[entry], candidates++) {
+			if(this.indexKeys[entry] != (int)window) {
+				continue;
+			}
+			int source = entry * INDEX_STEP;
+			int length = 0;
+			while(from + length < bytes.length && source + length < this.baseSize
+					&& this.base.get(source + length) == bytes[from + length]) {
+				length++;
+			}
+			if(length > bestLength) {
+				bestSource = source;
+				bestLength = length;
+			}
+		}
+		return bestLength >= BPS_MIN_MATCH ? new int[] { bestSource, bestLength } : null;
+	}
+
+	private void buildIndex() {
+		this.indexHeads = new int[1 << HASH_BITS];
+		Arrays.fill(this.indexHeads, -1);
+		this.indexNext = new int[(this.baseSize - BPS_MIN_MATCH) / INDEX_STEP + 1];
+		this.indexKeys = new int[this.indexNext.length];
+
+		// les positions les plus basses finissent en tête des listes
+		for(int entry = this.indexNext.length - 1; entry >= 0; entry--) {
+			long window = this.base.getLong(entry * INDEX_STEP);
+			int h = hash(window);
+			this.indexKeys[entry] = (int)window;
+			this.indexNext[entry] = this.indexHeads[h];
+			this.indexHeads[h] = entry;
+		}
+	}
+
+	private static int hash(long window) {
+		return (int)((window * 0x9E3779B97F4A7C15L) >>> (64 - HASH_BITS));
+	}
+
+	private void writeTargetCopy(int source, int length) throws IOException {
+		writeCommand(TARGET_COPY, length);
+		writeRelativeOffset(source - this.targetRelativeOffset);
+		this.targetRelativeOffset = source + length;
+	}
+
+	private void addLiteral(byte value) {
+		if(this.numLiterals == this.literals.length) {
+			this.literals = Arrays.copyOf(this.literals, this.numLiterals * 2);
+		}
+		this.literals[this.numLiterals++] = value;
+	}
+
+	private void flushLiterals() throws IOException {
+		if(this.numLiterals > 0) {
+			writeCommand(TARGET_READ, this.numLiterals);
+			this.out.write(this.literals, 0, this.numLiterals);
+			this.numLiterals = 0;
+		}
+	}
+
+	private void writeCommand(int command, int length) throws IOException {
+		writeNumber(((long)(length - 1) << 2) | command);
+	}
+
+	private void writeRelativeOffset(int offset) throws IOException {
+		writeNumber(((long)Math.abs(offset) << 1) | (offset < 0 ? 1 : 0));
+	}
+
+	// nombre de longueur variable de BPS, 7 bits par octet
+	private void writeNumber(long number) throws IOException {
+		while(true) {
+			int bits = (int)(number & 0x7F);
+			number >>>= 7;
+			if(number == 0) {
+				this.out.write(0x80 | bits);
+				return;
+			}
+			this.out.write(bits);
+			number--;
+		}
+	}
+
+	private void writeInt(int value) throws IOException {
+		for(int i = 0; i < 4; i++) {
+			this.out.write(value >>> (8 * i));
+		}
+	}
+
+	private byte[] getRunBytes(int run) {
+		byte[] bytes = new byte[this.runs[run + 1]];
+		this.image.copyTo(this.runs[run], ByteBuffer.wrap(bytes), 0, bytes.length);
+		return bytes;
+	}
+
+	private boolean isSameAsBase(int offset, byte value) {
+		return offset < this.baseSize && this.base.get(offset) == value;
+	}
+
+	// octet du résultat: celui émis, sinon celui de la base, sinon 0
+	private int getTargetByte(int offset) {
+		// dernière plage qui commence avant offset
+		int low = 0;
+		int high = this.runs.length / 2 - 1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			if(this.runs[2 * middle] <= offset) {
+				low = middle + 1;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+
+		if(high >= 0 && offset < this.runs[2 * high] + this.runs[2 * high + 1]) {
+			return this.image.read(offset) & 0xFF;
+		}
+		return offset < this.baseSize ? this.base.get(offset) & 0xFF : 0;
+	}
+}
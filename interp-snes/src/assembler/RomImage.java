@@ -0,0 +1,286 @@
+package assembler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// image binaire du programme assemblé, adressée par un offset de 24-bit.
+// Les octets sont écrits directement dans des pages de 64 Ko allouées au besoin,
+// et une table à part garde le offset, la longeur et les octets de chaque
+// instruction émise (segment) pour l'écriture du fichier texte.
+//
+// Comme dans les pages, un segment écrit plus loin au même offset remplace
+// les octets d'un segment précédent, mais chaque segment garde ses propres
+// octets pour le listing.
+
+public class RomImage {
+
+	public static final int PAGE_BITS = 16;
+	public static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	// en-tête du fichier de segments ("SEGS" + version)
+	private static final int SEGMENTS_MAGIC = 0x53454753;
+	private static final int SEGMENTS_VERSION = 1;
+
+	// une page par banque de 64 Ko, null si rien n'y a été écrit
+	private byte[][] pages = new byte[(Consts.MAX_INT + 1) >>> PAGE_BITS][];
+
+	// taille de l'image (offset le plus haut écrit + 1)
+	private int size = 0;
+
+	// offset et longeur de chaque segment, dans l'ordre d'émission
+	private int[] segmentOffsets = new int[64];
+	private int[] segmentLengths = new int[64];
+	private int numSegments = 0;
+
+	// octets des segments les uns à la suite des autres, segmentStarts
+	// donne le début de chaque segment dans segmentData
+	private byte[] segmentData = new byte[256];
+	private int[] segmentStarts = new int[64];
+	private int dataSize = 0;
+
+	// true dès qu'un segment commence avant la fin d'un segment précédent
+	// (e.g. org qui revient en arrière). Une correction écrite dans les pages
+	// peut alors écraser un segment plus récent, voir applyFixups
+	private boolean outOfOrder = false;
+	private boolean stale = false;
+
+	// écrit les octets à partir de offset et ajoute le segment
+	public void addSegment(int offset, byte[] bytes) {
+		if(offset < this.size) {
+			this.outOfOrder = true;
+		}
+		write(offset, bytes, 0, bytes.length);
+
+		if(this.numSegments == this.segmentOffsets.length) {
+			this.segmentOffsets = Arrays.copyOf(this.segmentOffsets, this.numSegments * 2);
+			this.segmentLengths = Arrays.copyOf(this.segmentLengths, this.numSegments * 2);
+			this.segmentStarts = Arrays.copyOf(this.segmentStarts, this.numSegments * 2);
+		}
+		if(this.dataSize + bytes.length > this.segmentData.length) {
+			this.segmentData = Arrays.copyOf(this.segmentData, Math.max(this.dataSize + bytes.length,
+					this.segmentData.length * 2));
+		}
+		System.arraycopy(bytes, 0, this.segmentData, this.dataSize, bytes.length);
+
+		this.segmentOffsets[this.numSegments] = offset;
+		this.segmentLengths[this.numSegments] = bytes.length;
+		this.segmentStarts[this.numSegments] = this.dataSize;
+		this.dataSize += bytes.length;
+		this.numSegments++;
+	}
+
+	// correction d'un octet d'un segment, dans le segment et dans les pages
+	public void writeSegment(int segment, int index, byte value) {
+		this.segmentData[this.segmentStarts[segment] + index] = value;
+		int offset = this.segmentOffsets[segment] + index;
+		getPage(offset)[offset & PAGE_MASK] = value;
+		if(this.outOfOrder) {
+			this.stale = true;
+		}
+	}
+
+	// après les corrections: si des segments ont pu se chevaucher, les pages
+	// sont réécrites à partir des segments dans l'ordre d'émission pour que
+	// le dernier segment écrit à un offset garde le dessus
+	public void applyFixups() {
+		if(!this.stale) {
+			return;
+		}
+		for(int segment = 0; segment < this.numSegments; segment++) {
+			write(this.segmentOffsets[segment], this.segmentData, this.segmentStarts[segment],
+					this.segmentLengths[segment]);
+		}
+		this.stale = false;
+	}
+
+	// octet index du segment, tel qu'émis puis corrigé
+	public byte readSegment(int segment, int index) {
+		return this.segmentData[this.segmentStarts[segment] + index];
+	}
+
+	public byte[] getSegmentBytes(int segment) {
+		int start = this.segmentStarts[segment];
+		return Arrays.copyOfRange(this.segmentData, start, start + this.segmentLengths[segment]);
+	}
+
+	private void write(int offset, byte[] bytes, int from, int length) {
+		while(length > 0) {
+			byte[] page = getPage(offset);
+			int pageOffset = offset & PAGE_MASK;
+			int count = Math.min(length, PAGE_SIZE - pageOffset);
+
+			System.arraycopy(bytes, from, page, pageOffset, count);
+
+			offset += count;
+			from += count;
+			length -= count;
+		}
+		if(offset > this.size) {
+			this.size = offset;
+		}
+	}
+
+	public byte read(int offset) {
+		int index = offset >>> PAGE_BITS;
+		if(index >= this.pages.length || this.pages[index] == null) {
+			return 0;
+		}
+		return this.pages[index][offset & PAGE_MASK];
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public int getNumSegments() {
+		return this.numSegments;
+	}
+
+	public int getSegmentOffset(int segment) {
+		return this.segmentOffsets[segment];
+	}
+
+	public int getSegmentLength(int segment) {
+		return this.segmentLengths[segment];
+	}
+
+	// copie de l'image au complet, les pages jamais écrites sont remplies de 0
+	public byte[] toByteArray() {
+		byte[] bytes = new byte[this.size];
+		for(int start = 0; start < this.size; start += PAGE_SIZE) {
+			byte[] page = this.pages[start >>> PAGE_BITS];
+			if(page != null) {
+				System.arraycopy(page, 0, bytes, start, Math.min(PAGE_SIZE, this.size - start));
+			}
+		}
+		return bytes;
+	}
+
+	// plages d'octets émis, triées et fusionnées: [début0, longeur0, début1, ...].
+	// Les corrections des labels écrivent toujours dans un segment, les
+	// plages couvrent donc tous les octets écrits
+	public int[] getRuns() {
+		long[] segments = new long[this.numSegments];
+		for(int segment = 0; segment < this.numSegments; segment++) {
+			segments[segment] = ((long)this.segmentOffsets[segment] << 32) | this.segmentLengths[segment];
+		}
+		Arrays.sort(segments);
+
+		int[] runs = new int[2 * this.numSegments];
+		int numRuns = 0;
+		int runEnd = -1;
+		for(long segment: segments) {
+			int start = (int)(segment >>> 32);
+			int end = start + (int)segment;
+			if(start == end) {
+				continue;
+			}
+
+			// un segment qui touche ou chevauche la plage courante l'allonge
+			if(numRuns > 0 && start <= runEnd) {
+				runEnd = Math.max(runEnd, end);
+				runs[2 * numRuns - 1] = runEnd - runs[2 * numRuns - 2];
+			}
+			else {
+				runs[2 * numRuns] = start;
+				runs[2 * numRuns + 1] = end - start;
+				runEnd = end;
+				numRuns++;
+			}
+		}
+		return Arrays.copyOf(runs, 2 * numRuns);
+	}
+
+	// copie length octets à partir de offset dans target, à partir de position
+	public void copyTo(int offset, ByteBuffer target, int position, int length) {
+		while(length > 0) {
+			int count = Math.min(length, PAGE_SIZE - (offset & PAGE_MASK));
+			byte[] page = this.pages[offset >>> PAGE_BITS];
+			if(page != null) {
+				target.put(position, page, offset & PAGE_MASK, count);
+			}
+			else {
+				for(int i = 0; i < count; i++) {
+					target.put(position + i, (byte)0);
+				}
+			}
+			offset += count;
+			position += count;
+			length -= count;
+		}
+	}
+
+	// format compact qui ne garde que les plages émises, en big-endian:
+	// "SEGS", version, taille de l'image, nombre de plages, puis pour chaque
+	// plage son début, sa longeur et ses octets
+	public void writeSegments(OutputStream out) throws IOException {
+		int[] runs = getRuns();
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(SEGMENTS_MAGIC);
+		data.writeInt(SEGMENTS_VERSION);
+		data.writeInt(this.size);
+		data.writeInt(runs.length / 2);
+
+		for(int run = 0; run < runs.length; run += 2) {
+			int offset = runs[run];
+			int end = offset + runs[run + 1];
+			data.writeInt(offset);
+			data.writeInt(runs[run + 1]);
+			while(offset < end) {
+				int count = Math.min(end - offset, PAGE_SIZE - (offset & PAGE_MASK));
+				data.write(this.pages[offset >>> PAGE_BITS], offset & PAGE_MASK, count);
+				offset += count;
+			}
+		}
+		data.flush();
+	}
+
+	// relit un fichier écrit par writeSegments, chaque plage devient un segment
+	public static RomImage readSegments(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if(data.readInt() != SEGMENTS_MAGIC || data.readInt() != SEGMENTS_VERSION) {
+			throw new IOException("Not a segment file");
+		}
+
+		RomImage image = new RomImage();
+		int size = data.readInt();
+		int numRuns = data.readInt();
+		for(int run = 0; run < numRuns; run++) {
+			int offset = data.readInt();
+			int length = data.readInt();
+			if(offset < 0 || length < 0 || offset + length > size || offset + length < 0) {
+				throw new IOException("Invalid segment " + offset + "+" + length);
+			}
+			byte[] bytes = new byte[length];
+			data.readFully(bytes);
+			image.addSegment(offset, bytes);
+		}
+		if(size > image.size) {
+			// les pages d'un trou à la fin ne sont pas allouées, BinarySink les remplit de 0
+			if(size > image.pages.length << PAGE_BITS) {
+				throw new IOException("Invalid image size " + size);
+			}
+			image.size = size;
+		}
+		return image;
+	}
+
+	private byte[] getPage(int offset) {
+		int index = offset >>> PAGE_BITS;
+
+		// une instruction écrite à la fin de l'espace 24-bit peut déborder
+		if(index >= this.pages.length) {
+			this.pages = Arrays.copyOf(this.pages, index + 1);
+		}
+		if(this.pages[index] == null) {
+			this.pages[index] = new byte[PAGE_SIZE];
+		}
+		return this.pages[index];
+	}
+}
@@ -0,0 +1,90 @@
+package assembler;
+
+import java.nio.ByteBuffer;
+
+// traduction d'une adresse SNES de 24-bit (e.g. $808000) vers l'offset
+// dans le fichier de la ROM, sans le header de copieur
+
+public enum RomMapping {
+	// l'adresse est déjà l'offset dans le fichier
+	NONE(0x1000000),
+	// banques de 32 Ko: $8000-$FFFF de chaque banque
+	LOROM(0x8000),
+	// banques de 64 Ko: $400000-$7DFFFF et $C00000-$FFFFFF au complet,
+	// plus $8000-$FFFF des banques $00-$3F et $80-$BF
+	HIROM(0x8000);
+
+	// taille des blocs qui sont contigus dans le fichier
+	private int blockSize;
+
+	private RomMapping(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	public int getBlockSize() {
+		return this.blockSize;
+	}
+
+	// offset dans le fichier, -1 si l'adresse n'est pas dans la ROM
+	// (e.g. RAM ou registres dans la moitié basse d'une banque)
+	public int toFileOffset(int address) {
+		int bank = address >>> 16;
+		int addr = address & 0xFFFF;
+
+		// $7E-$7F est la RAM dans tous les modes, et une instruction peut
+		// déborder après la fin de l'espace 24-bit
+		if(this != NONE && (bank == 0x7E || bank == 0x7F || address > Consts.MAX_INT)) {
+			return -1;
+		}
+
+		switch(this) {
+		case LOROM:
+			if(addr < 0x8000) {
+				return -1;
+			}
+			return ((bank & 0x7F) << 15) | (addr & 0x7FFF);
+		case HIROM:
+			if((bank & 0x40) == 0 && addr < 0x8000) {
+				return -1;
+			}
+			return address & 0x3FFFFF;
+		default:
+			return address;
+		}
+	}
+
+	// copie de l'image où les offsets sont ceux du fichier de la ROM. Une
+	// plage peut traverser des blocs qui ne se suivent pas dans le fichier.
+	// Si deux adresses miroirs donnent le même offset, la dernière écrite gagne
+	public RomImage translate(RomImage image, int romSize) {
+		RomImage fileImage = new RomImage();
+		int[] runs = image.getRuns();
+
+		for(int run = 0; run < runs.length; run += 2) {
+			int address = runs[run];
+			int end = address + runs[run + 1];
+
+			while(address < end) {
+				int length = Math.min(end - address, this.blockSize - (address & (this.blockSize - 1)));
+				int offset = toFileOffset(address);
+				if(offset < 0) {
+					throw new CompilationException("Address $" + toHex(address) + " is not mapped to the ROM");
+				}
+				if(offset > romSize - length) {
+					throw new CompilationException("Address $" + toHex(address) + " is outside the ROM");
+				}
+
+				byte[] bytes = new byte[length];
+				image.copyTo(address, ByteBuffer.wrap(bytes), 0, length);
+				fileImage.addSegment(offset, bytes);
+				address += length;
+			}
+		}
+		return fileImage;
+	}
+
+	private static String toHex(int address) {
+		String hex = Integer.toHexString(address).toUpperCase();
+		return "000000".substring(Math.min(6, hex.length())) + hex;
+	}
+}
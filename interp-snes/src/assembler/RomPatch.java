@@ -0,0 +1,78 @@
+package assembler;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// écrit le programme assemblé directement dans une ROM existante. Les
+// offsets des org sont des adresses SNES traduites selon le mapping de la
+// ROM. Le fichier est mappé en mémoire: seules les pages touchées par les
+// octets émis sont lues et écrites, pas la ROM au complet
+//
+// La ROM n'est modifiée qu'une fois toutes les adresses validées, un
+// programme qui écrit hors de la ROM la laisse intacte
+
+public class RomPatch implements OutputSink {
+
+	// header ajouté par les copieurs au début de certaines ROM
+	private static final int COPIER_HEADER_SIZE = 512;
+
+	private Path rom;
+	private RomMapping mapping;
+
+	public RomPatch(Path rom, RomMapping mapping) {
+		this.rom = rom;
+		this.mapping = mapping;
+	}
+
+	public Path getRom() {
+		return this.rom;
+	}
+
+	public RomMapping getMapping() {
+		return this.mapping;
+	}
+
+	// taille du header de copieur au début d'un fichier de ROM, 0 s'il n'y en a pas.
+	// La taille d'une ROM est un multiple de 1 Ko, sauf avec le header
+	public static int getHeaderSize(long fileSize) {
+		return fileSize % 1024 == COPIER_HEADER_SIZE ? COPIER_HEADER_SIZE : 0;
+	}
+
+	@Override
+	public void close(RomImage image) {
+		try {
+			apply(image);
+		} catch (IOException e) {
+			throw new CompilationException("Error patching " + this.rom + ": " + e.getMessage());
+		}
+	}
+
+	public void apply(RomImage image) throws IOException {
+		try(FileChannel channel = FileChannel.open(this.rom, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long fileSize = channel.size();
+			if(fileSize > Integer.MAX_VALUE) {
+				throw new IOException("The file " + this.rom + " is too large.");
+			}
+			int header = getHeaderSize(fileSize);
+
+			// plages à écrire, avec les offsets du fichier sans le header
+			RomImage fileImage = this.mapping.translate(image, (int)fileSize - header);
+			int[] runs = fileImage.getRuns();
+			if(runs.length == 0) {
+				return;
+			}
+
+			// une seule vue sur la partie de la ROM qui change
+			int start = runs[0];
+			int end = runs[runs.length - 2] + runs[runs.length - 1];
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, header + start, end - start);
+			for(int run = 0; run < runs.length; run += 2) {
+				fileImage.copyTo(runs[run], buffer, runs[run] - start, runs[run + 1]);
+			}
+			buffer.force();
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package assembler;
+
+import java.util.List;
+import java.util.TreeSet;
+
+import assembler.syntax.node.*;
+
+// suite d'instructions du programme principal qui commence au début du
+// fichier ou à un org de premier niveau. Chaque section est compilée à part
+// pour que le mode incrémental puisse la rejouer sans l'exécuter
+
+public class Section {
+
+	private List<PInst> insts;
+	private Bytecode bytecode;
+
+	// empreinte du texte et du bytecode et tokens, calculés au besoin
+	private String digest;
+	private List<Token> tokens;
+
+	// slots des variables du main lues ou écrites par la section
+	private int[] slots;
+
+	public Section(List<PInst> insts, Bytecode bytecode) {
+		this.insts = insts;
+		this.bytecode = bytecode;
+	}
+
+	public List<PInst> getInsts() {
+		return this.insts;
+	}
+
+	public Bytecode getBytecode() {
+		return this.bytecode;
+	}
+
+	// le bytecode fait partie de l'empreinte: il contient les slots des
+	// variables, qui changent si une déclaration est ajoutée ailleurs
+	public String getDigest() {
+		if(this.digest == null) {
+			NodeDigest digest = new NodeDigest();
+			for(PInst inst: this.insts) {
+				digest.add(inst);
+			}
+			this.tokens = digest.getTokens();
+			for(int value: this.bytecode.getCode()) {
+				digest.add(value);
+			}
+			this.digest = digest.getDigest();
+		}
+		return this.digest;
+	}
+
+	// tokens de la section dans l'ordre de l'arbre
+	public List<Token> getTokens() {
+		getDigest();
+		return this.tokens;
+	}
+
+	// les macros ont leurs propres variables, seules celles nommées dans
+	// la section peuvent changer ce qu'elle produit ou être changées par elle
+	public int[] getSlots(SemanticInfo semantics) {
+		if(this.slots == null) {
+			TreeSet<Integer> slots = new TreeSet<>();
+			for(Token token: getTokens()) {
+				VariableInfo variable = token instanceof TIdent ? semantics.getVariableInfo((TIdent)token) : null;
+				if(variable != null) {
+					slots.add(variable.getSlot());
+				}
+			}
+
+			this.slots = new int[slots.size()];
+			int i = 0;
+			for(int slot: slots) {
+				this.slots[i++] = slot;
+			}
+		}
+		return this.slots;
+	}
+}
@@ -0,0 +1,65 @@
+package assembler;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import assembler.syntax.node.*;
+
+// état gardé d'un build à l'autre en mode incrémental: les sections du
+// build précédent, indexées par leur empreinte et l'état à leur entrée.
+// Une section dont ni le texte, ni l'état d'entrée, ni les macros appelés
+// n'ont changé est rejouée au lieu d'être exécutée. Un seul build à la fois
+
+public class SectionCache {
+
+	// sections du dernier build réussi
+	private Map<List<Object>, SectionRecord> previous = new HashMap<>();
+
+	// sections du build en cours
+	private Map<List<Object>, SectionRecord> current;
+
+	// empreintes et tokens des déclarations de macro, pour le build en cours
+	private Map<AMacroDecl, String> macroDigests;
+	private Map<AMacroDecl, List<Token>> macroTokens;
+
+	public void startBuild() {
+		this.current = new HashMap<>();
+		this.macroDigests = new IdentityHashMap<>();
+		this.macroTokens = new IdentityHashMap<>();
+	}
+
+	// les sections du build précédent qui n'ont pas servi sont oubliées
+	public void endBuild() {
+		this.previous = this.current;
+		this.current = null;
+		this.macroDigests = null;
+		this.macroTokens = null;
+	}
+
+	public SectionRecord get(List<Object> key) {
+		return this.previous.get(key);
+	}
+
+	public void put(List<Object> key, SectionRecord record) {
+		this.current.put(key, record);
+	}
+
+	public String getDigest(AMacroDecl declaration) {
+		String digest = this.macroDigests.get(declaration);
+		if(digest == null) {
+			NodeDigest nodeDigest = new NodeDigest();
+			nodeDigest.add(declaration);
+			digest = nodeDigest.getDigest();
+			this.macroDigests.put(declaration, digest);
+			this.macroTokens.put(declaration, nodeDigest.getTokens());
+		}
+		return digest;
+	}
+
+	public List<Token> getTokens(AMacroDecl declaration) {
+		getDigest(declaration);
+		return this.macroTokens.get(declaration);
+	}
+}
@@ -0,0 +1,222 @@
+package assembler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import assembler.syntax.node.*;
+
+// exécution d'une section enregistrée par l'interpréteur en mode incrémental:
+// ce que la section a produit (octets, labels du main, corrections, sortie
+// des print) et l'état à sa sortie. Les offsets sont absolus, une section
+// n'est rejouée que si elle commence au même offset. Le record ne garde
+// aucun Frame du build qui l'a enregistré: les corrections faites dans un
+// macro gardent le résultat de leur recherche dans le frame du macro
+
+public class SectionRecord {
+
+	// section du build qui a enregistré
+	private Section section;
+
+	private List<Integer> segmentOffsets = new ArrayList<>();
+	private List<byte[]> segments = new ArrayList<>();
+	private List<Label> labels = new ArrayList<>();
+
+	// labels anonymes, le nom est "+" ou "-"
+	private List<Label> anonLabels = new ArrayList<>();
+
+	// corrections sans frame, le segment est relatif au premier segment de la
+	// section. Celles du main chercheront leur label dans le frame du replay
+	private List<Fixup> fixups = new ArrayList<>();
+	private List<Boolean> mainFixups = new ArrayList<>();
+
+	// index du token de chaque correction dans les tokens de la section
+	// suivis de ceux des macros appelés, -1 s'il n'y est pas
+	private int[] fixupTokens;
+
+	// sortie des print de la section
+	private String output;
+
+	// macros appelés par la section, avec leur déclaration au moment de l'enregistrement
+	private Map<String, AMacroDecl> macros = new LinkedHashMap<>();
+
+	// état à la sortie de la section: les variables du main nommées
+	// dans la section (slots), puis l'état de l'interpréteur
+	private int[] slots;
+	private int[] ints;
+	private Value[] values;
+	private int offset;
+	private int macroId;
+	private boolean setClearAccFlag;
+	private boolean accFlag;
+	private boolean setClearXyFlag;
+	private boolean xyFlag;
+	private String labelPrefix;
+	private LinkedList<String> nameSpaceNames;
+
+	public SectionRecord(Section section) {
+		this.section = section;
+	}
+
+	public void addSegment(int offset, byte[] bytes) {
+		this.segmentOffsets.add(offset);
+		this.segments.add(bytes);
+	}
+
+	public void addLabel(String name, String prefix, int macroId, int offset) {
+		this.labels.add(new Label(name, prefix, macroId, offset));
+	}
+
+	public void addAnonLabel(String sign, int macroId, int offset) {
+		this.anonLabels.add(new Label(sign, "", macroId, offset));
+	}
+
+	// appelé après l'exécution de la section: les frames des macros ont
+	// alors tous leurs labels et la recherche peut être faite tout de suite
+	public void addFixup(Fixup fixup, int firstSegment, Frame mainFrame) {
+		boolean main = fixup.getFrame() == mainFrame;
+		Fixup detached = main ? fixup : fixup.detachFrame();
+		this.fixups.add(detached.relocate(0, -firstSegment, fixup.getMacroId(), null));
+		this.mainFixups.add(main);
+	}
+
+	public void addMacro(MacroInfo macroInfo) {
+		this.macros.putIfAbsent(macroInfo.getName(), macroInfo.getDeclaration());
+	}
+
+	public void setOutput(String output) {
+		this.output = output;
+	}
+
+	public void end(SectionCache cache, int[] slots, Frame frame, int offset, int macroId,
+			boolean setClearAccFlag, boolean accFlag, boolean setClearXyFlag, boolean xyFlag,
+			String labelPrefix, LinkedList<String> nameSpaceNames) {
+		Map<Token, Integer> indexes = new IdentityHashMap<>();
+		List<Token> tokens = getTokens(this.section, this.macros.values(), cache);
+		for(int i = 0; i < tokens.size(); i++) {
+			indexes.put(tokens.get(i), i);
+		}
+		this.fixupTokens = new int[this.fixups.size()];
+		for(int i = 0; i < this.fixups.size(); i++) {
+			this.fixupTokens[i] = indexes.getOrDefault(this.fixups.get(i).getToken(), -1);
+		}
+
+		this.slots = slots;
+		this.ints = new int[slots.length];
+		this.values = new Value[slots.length];
+		for(int i = 0; i < slots.length; i++) {
+			this.ints[i] = frame.getInt(slots[i]);
+			this.values[i] = frame.getVariable(slots[i]);
+		}
+		this.offset = offset;
+		this.macroId = macroId;
+		this.setClearAccFlag = setClearAccFlag;
+		this.accFlag = accFlag;
+		this.setClearXyFlag = setClearXyFlag;
+		this.xyFlag = xyFlag;
+		this.labelPrefix = labelPrefix;
+		this.nameSpaceNames = new LinkedList<>(nameSpaceNames);
+	}
+
+	// true si les macros appelés n'ont pas changé depuis l'enregistrement
+	public boolean hasSameMacros(SemanticInfo semantics, SectionCache cache) {
+		for(Map.Entry<String, AMacroDecl> macro: this.macros.entrySet()) {
+			MacroInfo macroInfo = semantics.getMacroInfo(macro.getKey());
+			if(macroInfo == null
+					|| !cache.getDigest(macro.getValue()).equals(cache.getDigest(macroInfo.getDeclaration()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// rejoue la section dans le frame principal d'un nouveau build. Les tokens
+	// des corrections sont remplacés par ceux du nouvel arbre pour que les
+	// erreurs donnent la bonne position
+	public void replay(Section section, SemanticInfo semantics, SectionCache cache, Frame frame,
+			RomImage image, List<Fixup> fixups) {
+		for(int i = 0; i < this.slots.length; i++) {
+			frame.getIntRegisters()[this.slots[i]] = this.ints[i];
+			frame.getValueRegisters()[this.slots[i]] = this.values[i];
+		}
+
+		int firstSegment = image.getNumSegments();
+		for(int i = 0; i < this.segments.size(); i++) {
+			image.addSegment(this.segmentOffsets.get(i), this.segments.get(i));
+		}
+
+		for(Label label: this.labels) {
+			frame.addLabel(label.getName(), label.getPrefix(), label.getMacroId(), label.getOffset());
+		}
+
+		for(Label label: this.anonLabels) {
+			frame.addAnonLabel(label.getName(), label.getMacroId(), label.getOffset());
+		}
+
+		if(!this.fixups.isEmpty()) {
+			List<AMacroDecl> declarations = new ArrayList<>();
+			for(String name: this.macros.keySet()) {
+				declarations.add(semantics.getMacroInfo(name).getDeclaration());
+			}
+			List<Token> tokens = getTokens(section, declarations, cache);
+
+			for(int i = 0; i < this.fixups.size(); i++) {
+				// les corrections du main cherchent maintenant dans le nouveau frame,
+				// celles d'un macro ont déjà le résultat de leur recherche
+				Fixup fixup = this.fixups.get(i);
+				Frame fixupFrame = this.mainFixups.get(i) ? frame : null;
+				Token token = this.fixupTokens[i] >= 0 ? tokens.get(this.fixupTokens[i]) : fixup.getToken();
+				fixups.add(fixup.relocate(0, firstSegment, fixup.getMacroId(), fixupFrame, token));
+			}
+		}
+	}
+
+	// tokens de la section suivis de ceux des macros, dans l'ordre d'enregistrement
+	private static List<Token> getTokens(Section section, Collection<AMacroDecl> declarations, SectionCache cache) {
+		List<Token> tokens = new ArrayList<>(section.getTokens());
+		for(AMacroDecl declaration: declarations) {
+			tokens.addAll(cache.getTokens(declaration));
+		}
+		return tokens;
+	}
+
+	public String getOutput() {
+		return this.output;
+	}
+
+	public int getOffset() {
+		return this.offset;
+	}
+
+	public int getMacroId() {
+		return this.macroId;
+	}
+
+	public boolean getSetClearAccFlag() {
+		return this.setClearAccFlag;
+	}
+
+	public boolean getAccFlag() {
+		return this.accFlag;
+	}
+
+	public boolean getSetClearXyFlag() {
+		return this.setClearXyFlag;
+	}
+
+	public boolean getXyFlag() {
+		return this.xyFlag;
+	}
+
+	public String getLabelPrefix() {
+		return this.labelPrefix;
+	}
+
+	public LinkedList<String> getNameSpaceNames() {
+		return this.nameSpaceNames;
+	}
+}
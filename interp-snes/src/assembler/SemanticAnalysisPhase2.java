@@ -136,13 +136,17 @@ public class SemanticAnalysisPhase2 extends DepthFirstAdapter {
                     "the expression can't be assigned in this variable");
         }
 		
-        this.currentVariableScope.addDecl(node.getIdent(), expType);
+        int slot = this.currentGlobalScope.newSlot();
+        VariableInfo variable = this.currentVariableScope.addDecl(node.getIdent(), expType, slot);
+        this.semantics.addVariableInfo(node.getIdent(), variable);
 	}
 	
 	@Override
 	public void caseAAssignInst(AAssignInst node) {
 		Type expType = evalType(node.getExp());
-        Type varType = this.currentVariableScope.getType(node.getIdent());
+        VariableInfo variable = this.currentVariableScope.getVariableInfo(node.getIdent());
+        Type varType = variable.getType();
+        this.semantics.addVariableInfo(node.getIdent(), variable);
         
         if (expType != varType) {
             throw new SemanticException(node.getAssign(),
@@ -319,7 +323,6 @@ public class SemanticAnalysisPhase2 extends DepthFirstAdapter {
 		if(node.getOpArg() instanceof ANumOpArg) {
 			ANumOpArg opArg = (ANumOpArg)node.getOpArg();
 			OpcodeArg arg = this.semantics.getOpcodeArg(opArg.getArgNum());
-			System.out.println(arg);
 			
 			// argument de 16-bit maximum
 			if(arg.getNumBytes() > 2) {
@@ -1044,7 +1047,9 @@ public class SemanticAnalysisPhase2 extends DepthFirstAdapter {
 
     @Override
     public void caseAVarTerm(AVarTerm node) {
-        this.resultType = this.currentVariableScope.getType(node.getIdent());
+        VariableInfo variable = this.currentVariableScope.getVariableInfo(node.getIdent());
+        this.resultType = variable.getType();
+        this.semantics.addVariableInfo(node.getIdent(), variable);
     }
 	
 	@Override
@@ -13,6 +13,9 @@ public class SemanticInfo {
 	private Map<Node, GlobalScope> scopes = new HashMap<>();
 	private Map<PNumber, Integer> numbers = new HashMap<>();
 	private Map<PArgNum, OpcodeArg> opcodeArgs = new HashMap<>();
+	private Map<TIdent, VariableInfo> variables = new HashMap<>();
+	private Map<Node, Value> constants = new HashMap<>();
+	private List<Section> mainSections;
 	
 	public void addGlobalScope(Node node, GlobalScope scope) {
 		this.scopes.put(node, scope);	
@@ -39,6 +42,30 @@ public class SemanticInfo {
 		return this.numbers.get(node);
 	}
 
+	public void addVariableInfo(TIdent ident, VariableInfo variable) {
+		this.variables.put(ident, variable);
+	}
+	
+	public VariableInfo getVariableInfo(TIdent ident) {
+		return this.variables.get(ident);
+	}
+
+	public void addConstant(Node node, Value value) {
+		this.constants.put(node, value);
+	}
+	
+	public Value getConstant(Node node) {
+		return this.constants.get(node);
+	}
+
+	public void setMainSections(List<Section> sections) {
+		this.mainSections = sections;
+	}
+	
+	public List<Section> getMainSections() {
+		return this.mainSections;
+	}
+
 	public void addMacroDecl(AMacroDecl declaration, List<ParamInfo> paramList) {
 		this.macroTable.addMacroDecl(declaration, paramList);		
 	}
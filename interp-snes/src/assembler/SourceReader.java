@@ -0,0 +1,126 @@
+package assembler;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// texte source chargé en entier dans un char[] pour le lexer. Le fichier
+// est lu en mémoire mappée et décodé d'un seul coup, puis le lexer lit
+// les caractères directement dans le tableau, sans verrou ni appel au
+// décodeur par caractère. Le lexer compte lui-même les lignes et les
+// colonnes, il reçoit exactement les mêmes caractères qu'avec un FileReader
+
+public class SourceReader extends PushbackReader {
+
+	private char[] chars;
+	private int position = 0;
+	private int length;
+
+	public SourceReader(CharSequence source) {
+		this(source.toString().toCharArray(), source.length());
+	}
+
+	private SourceReader(char[] chars, int length) {
+		// le Reader de PushbackReader n'est jamais lu
+		super(Reader.nullReader(), 1);
+		this.chars = chars;
+		this.length = length;
+	}
+
+	// fichier décodé avec le charset par défaut, comme FileReader
+	public static SourceReader open(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("The file " + file + " is too large.");
+			}
+			return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	public static SourceReader decode(ByteBuffer bytes) throws IOException {
+		CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = decoder.decode(bytes);
+
+		if(chars.hasArray() && chars.arrayOffset() == 0) {
+			return new SourceReader(chars.array(), chars.limit());
+		}
+		return new SourceReader(chars);
+	}
+
+	// découpe le source en tokens sans le lire, le lexer de SableCC
+	// peut donc encore le lire depuis le début
+	public TokenStream scan() {
+		return TokenStream.scan(this.chars, this.length);
+	}
+
+	@Override
+	public int read() {
+		return this.position < this.length ? this.chars[this.position++] : -1;
+	}
+
+	@Override
+	public int read(char[] buffer, int offset, int length) {
+		if(length == 0) {
+			return 0;
+		}
+		if(this.position >= this.length) {
+			return -1;
+		}
+
+		int count = Math.min(length, this.length - this.position);
+		System.arraycopy(this.chars, this.position, buffer, offset, count);
+		this.position += count;
+		return count;
+	}
+
+	// le lexer remet les caractères lus après la fin d'un token,
+	// qui sont toujours les derniers caractères lus
+	@Override
+	public void unread(int c) throws IOException {
+		if(this.position == 0) {
+			throw new IOException("Pushback buffer overflow");
+		}
+		this.chars[--this.position] = (char)c;
+	}
+
+	@Override
+	public void unread(char[] buffer, int offset, int length) throws IOException {
+		for(int i = offset + length - 1; i >= offset; i--) {
+			unread(buffer[i]);
+		}
+	}
+
+	@Override
+	public void unread(char[] buffer) throws IOException {
+		unread(buffer, 0, buffer.length);
+	}
+
+	@Override
+	public long skip(long n) {
+		int count = (int)Math.max(0, Math.min(n, this.length - this.position));
+		this.position += count;
+		return count;
+	}
+
+	@Override
+	public boolean ready() {
+		return true;
+	}
+
+	@Override
+	public void close() {
+		this.chars = new char[0];
+		this.position = 0;
+		this.length = 0;
+	}
+}
@@ -0,0 +1,47 @@
+package assembler;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+// fichier de symboles results/<nom>.sym, une ligne par label du programme
+// principal avec son offset (e.g. "008002 start")
+
+public class SymbolSink implements OutputSink {
+
+	private static final String NL = "\r\n";
+
+	private String filename;
+	private Map<String, Integer> symbols;
+
+	public SymbolSink(String filename, Map<String, Integer> symbols) {
+		this.filename = filename;
+		this.symbols = symbols;
+	}
+
+	@Override
+	public void close(RomImage image) {
+		if(this.symbols.isEmpty()) {
+			return;
+		}
+
+		StringBuilder text = new StringBuilder();
+		for(Map.Entry<String, Integer> symbol: this.symbols.entrySet()) {
+			String offset = Integer.toHexString(symbol.getValue()).toUpperCase();
+			text.append("000000".substring(Math.min(6, offset.length()))).append(offset);
+			text.append(' ').append(symbol.getKey()).append(NL);
+		}
+
+		try {
+			// création du dossier s'il n'existe pas
+			Files.createDirectories(Paths.get("results"));
+			FileWriter fileWriter = new FileWriter("results/" + this.filename + ".sym");
+			fileWriter.write(text.toString());
+			fileWriter.close();
+		} catch (IOException e) {
+			throw new CompilationException("Error writing symbol file");
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// exécute les tests de tests/ dans une seule JVM. Chaque test est assemblé
+// en mémoire en parallèle, puis comparé à expected/<test>.bin (image) ou à
+// expected/<test>.txt (sortie console). En cas de différence on affiche le
+// premier offset différent et les octets autour. Les images passent aussi
+// par les formats de sortie (voir FormatTests), et chaque test est refait
+// en mode incrémental après une modification (voir checkIncremental)
+
+public class TestRunner {
+
+	// nombre d'octets affichés avant et après la première différence
+	private static final int CONTEXT = 8;
+
+	private File testDir;
+	private File expectedDir;
+
+	public TestRunner(File testDir, File expectedDir) {
+		this.testDir = testDir;
+		this.expectedDir = expectedDir;
+	}
+
+	public static void main(String[] args) {
+		File testDir = new File(args.length > 0 ? args[0] : "tests");
+		File expectedDir = new File(args.length > 1 ? args[1] : "expected");
+
+		System.exit(new TestRunner(testDir, expectedDir).run() ? 0 : 1);
+	}
+
+	// retourne true si tous les tests passent
+	public boolean run() {
+		List<String> names = getTestNames();
+
+		ExecutorService pool = Executors.newWorkStealingPool();
+		List<Future<String>> failures = new ArrayList<>();
+		for(String name: names) {
+			failures.add(pool.submit(() -> runTest(name)));
+		}
+
+		// tests des formats de sortie qui ne viennent pas de tests/
+		for(Map.Entry<String, Callable<String>> test: FormatTests.getTests().entrySet()) {
+			names.add(test.getKey());
+			failures.add(pool.submit(test.getValue()));
+		}
+
+		int passed = 0;
+		for(int i = 0; i < names.size(); i++) {
+			String failure;
+			try {
+				failure = failures.get(i).get();
+			}
+			catch(ExecutionException e) {
+				failure = "\t" + e.getCause();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = "\tinterrupted";
+			}
+
+			if(failure == null) {
+				System.out.println("TEST " + names.get(i) + ": PASSED");
+				passed++;
+			}
+			else {
+				System.out.println("TEST " + names.get(i) + ": FAILED");
+				System.out.println(failure);
+			}
+		}
+		pool.shutdown();
+
+		System.out.println(passed + "/" + names.size() + " tests passed");
+		return passed == names.size();
+	}
+
+	// noms des tests, triés selon leur numéro (e.g. "2_word_operand" avant "10_label")
+	private List<String> getTestNames() {
+		List<String> names = new ArrayList<>();
+		File[] files = this.testDir.listFiles((dir, name) -> name.endsWith(".txt"));
+		if(files != null) {
+			for(File file: files) {
+				names.add(file.getName().substring(0, file.getName().length() - 4));
+			}
+		}
+		names.sort((a, b) -> {
+			int difference = Integer.compare(getNumber(a), getNumber(b));
+			return difference != 0 ? difference : a.compareTo(b);
+		});
+		return names;
+	}
+
+	private static int getNumber(String name) {
+		int end = 0;
+		while(end < name.length() && Character.isDigit(name.charAt(end))) {
+			end++;
+		}
+		return end > 0 ? Integer.parseInt(name.substring(0, end)) : Integer.MAX_VALUE;
+	}
+
+	// exécute un test, retourne la description de l'échec ou null
+	private String runTest(String name) throws IOException {
+		String source = new String(Files.readAllBytes(new File(this.testDir, name + ".txt").toPath()),
+				StandardCharsets.UTF_8);
+		AssemblyResult result = Assembler.assemble(source, new AssemblerOptions());
+
+		File expectedBin = new File(this.expectedDir, name + ".bin");
+		File expectedTxt = new File(this.expectedDir, name + ".txt");
+
+		String failure;
+		if(expectedBin.exists()) {
+			if(!result.isSuccess()) {
+				return "\t" + String.join("\n\t", result.getDiagnostics());
+			}
+			failure = compareBytes(Files.readAllBytes(expectedBin.toPath()), result.getImage());
+			if(failure == null) {
+				// l'image passe aussi par les formats de sortie
+				failure = FormatTests.checkImage(toRomImage(result));
+			}
+		}
+		else if(expectedTxt.exists()) {
+			String expected = new String(Files.readAllBytes(expectedTxt.toPath()), StandardCharsets.UTF_8);
+			failure = compareText(expected, getConsoleText(name, result));
+		}
+		else {
+			return "\tno expected/" + name + ".bin or expected/" + name + ".txt";
+		}
+
+		if(failure == null) {
+			failure = checkIncremental(source);
+		}
+		return failure;
+	}
+
+	// deux builds avec le même IncrementalAssembler, le second après une
+	// modification, comparés au build complet du texte modifié
+	private static String checkIncremental(String source) {
+		for(String edited: getEdits(source)) {
+			IncrementalAssembler assembler = new IncrementalAssembler();
+			assembler.assemble(source, new AssemblerOptions());
+			AssemblyResult incremental = assembler.assemble(edited, new AssemblerOptions());
+			AssemblyResult clean = Assembler.assemble(edited, new AssemblerOptions());
+
+			String failure = compareResults(clean, incremental);
+			if(failure != null) {
+				return "\tincremental build after adding a label:\n" + failure;
+			}
+		}
+		return null;
+	}
+
+	// le texte avec un label ajouté à la fin de la première section du main
+	// (avant le deuxième org), puis avec un label au début du premier macro.
+	// Un label n'émet rien: les sections qui suivent sont rejouées, sauf
+	// celles qui appellent le macro modifié
+	private static List<String> getEdits(String source) {
+		List<String> edits = new ArrayList<>();
+		List<String> lines = new ArrayList<>(Arrays.asList(source.split("\n", -1)));
+
+		List<String> section = new ArrayList<>(lines);
+		int secondOrg = -1;
+		int orgs = 0;
+		for(int i = 0; i < lines.size() && secondOrg < 0; i++) {
+			if(lines.get(i).startsWith("org(") && ++orgs == 2) {
+				secondOrg = i;
+			}
+		}
+		section.add(secondOrg >= 0 ? secondOrg : section.size(), "incremental_edit_a:");
+		edits.add(String.join("\n", section));
+
+		for(int i = 0; i < lines.size(); i++) {
+			if(lines.get(i).startsWith("macro ") && lines.get(i).trim().endsWith("{")) {
+				List<String> macro = new ArrayList<>(lines);
+				macro.add(i + 1, "\tincremental_edit_b:");
+				edits.add(String.join("\n", macro));
+				break;
+			}
+		}
+		return edits;
+	}
+
+	private static String compareResults(AssemblyResult expected, AssemblyResult actual) {
+		if(!expected.getDiagnostics().equals(actual.getDiagnostics())) {
+			return "\texpected: " + expected.getDiagnostics() + "\n\tactual:   " + actual.getDiagnostics();
+		}
+		String failure = compareBytes(expected.getImage(), actual.getImage());
+		if(failure == null && !expected.getListing().equals(actual.getListing())) {
+			failure = compareText(String.join("\n", expected.getListing()), String.join("\n", actual.getListing()));
+		}
+		if(failure == null && !expected.getSymbols().equals(actual.getSymbols())) {
+			failure = "\texpected symbols: " + expected.getSymbols() + "\n\tactual symbols:   " + actual.getSymbols();
+		}
+		if(failure == null && !expected.getOutput().equals(actual.getOutput())) {
+			failure = compareText(expected.getOutput(), actual.getOutput());
+		}
+		return failure;
+	}
+
+	// image d'un résultat, avec ses segments
+	private static RomImage toRomImage(AssemblyResult result) {
+		RomImage image = new RomImage();
+		byte[] bytes = result.getImage();
+		for(int segment = 0; segment < result.getNumSegments(); segment++) {
+			int offset = result.getSegmentOffset(segment);
+			image.addSegment(offset, Arrays.copyOfRange(bytes, offset, offset + result.getSegmentLength(segment)));
+		}
+		return image;
+	}
+
+	// ce qu'Interp aurait affiché dans la console
+	private static String getConsoleText(String name, AssemblyResult result) {
+		StringBuilder text = new StringBuilder(result.getOutput());
+		if(result.getNumSegments() > 0) {
+			text.append(System.lineSeparator());
+			text.append("Program ").append(name).append("\r\n");
+			text.append("--------------------\r\n");
+			for(String line: result.getListing()) {
+				text.append(line).append("\r\n");
+			}
+		}
+		return text.toString();
+	}
+
+	private static String compareBytes(byte[] expected, byte[] actual) {
+		int length = Math.min(expected.length, actual.length);
+		int offset = 0;
+		while(offset < length && expected[offset] == actual[offset]) {
+			offset++;
+		}
+
+		if(offset == length && expected.length == actual.length) {
+			return null;
+		}
+
+		String failure = "\tfirst difference at $" + hex(offset, 6);
+		if(expected.length != actual.length) {
+			failure += " (expected " + expected.length + " bytes, got " + actual.length + ")";
+		}
+		return failure
+				+ "\n\texpected: " + getContext(expected, offset)
+				+ "\n\tactual:   " + getContext(actual, offset);
+	}
+
+	// octets autour de offset, l'octet à offset est entre crochets
+	private static String getContext(byte[] bytes, int offset) {
+		int start = Math.max(0, offset - CONTEXT);
+		int end = Math.min(bytes.length, offset + CONTEXT + 1);
+
+		StringBuilder context = new StringBuilder(hex(start, 6)).append(":");
+		for(int i = start; i < end; i++) {
+			String value = hex(Byte.toUnsignedInt(bytes[i]), 2);
+			context.append(i == offset ? " [" + value + "]" : " " + value);
+		}
+		if(offset >= bytes.length) {
+			context.append(" [end]");
+		}
+		return context.toString();
+	}
+
+	private static String compareText(String expected, String actual) {
+		if(expected.equals(actual)) {
+			return null;
+		}
+
+		List<String> expectedLines = Arrays.asList(expected.split("\n", -1));
+		List<String> actualLines = Arrays.asList(actual.split("\n", -1));
+
+		int line = 0;
+		while(line < expectedLines.size() && line < actualLines.size()
+				&& expectedLines.get(line).equals(actualLines.get(line))) {
+			line++;
+		}
+		return "\tfirst difference at line " + (line + 1)
+				+ "\n\texpected: " + (line < expectedLines.size() ? expectedLines.get(line) : "[end]")
+				+ "\n\tactual:   " + (line < actualLines.size() ? actualLines.get(line) : "[end]");
+	}
+
+	private static String hex(int value, int digits) {
+		String string = Integer.toHexString(value).toUpperCase();
+		while(string.length() < digits) {
+			string = "0" + string;
+		}
+		return string;
+	}
+}
@@ -0,0 +1,526 @@
+package assembler;
+
+import java.util.Arrays;
+
+// lexer écrit à la main pour les tokens de assembler.sablecc. Le source au
+// complet est découpé d'un coup en tableaux d'int parallèles (sorte,
+// début, longueur, ligne, colonne) sans créer d'objet par token. Les tokens
+// ignorés (blank, line_comment) ne sont pas gardés et le texte d'un token
+// n'est créé qu'à la demande, une seule fois pour un même texte.
+//
+// Les règles sont celles du lexer de SableCC: le token le plus long gagne,
+// à longueur égale le premier déclaré (e.g. "lda" est lda et non ident).
+// Les lignes et colonnes commencent à 1 et "\r\n" compte pour une ligne.
+// À la première erreur le découpage s'arrête, hasError() est alors vrai
+
+public class TokenStream {
+
+	// sortes de token, dans l'ordre de la section Tokens de la grammaire
+	public static final int MACRO = 0;
+	public static final int SCOPE = 1;
+	public static final int TRUE = 2;
+	public static final int FALSE = 3;
+	public static final int INT = 4;
+	public static final int BOOL = 5;
+	public static final int STRING = 6;
+	public static final int ORG = 7;
+	public static final int DB = 8;
+	public static final int DW = 9;
+	public static final int DL = 10;
+	public static final int HEX = 11;
+	public static final int BIN = 12;
+	public static final int FILL = 13;
+	public static final int PRINT = 14;
+	public static final int PRINTLN = 15;
+	public static final int PC = 16;
+	public static final int NAMESPACE = 17;
+	public static final int IF = 18;
+	public static final int WHILE = 19;
+	public static final int PLUS = 20;
+	public static final int MINUS = 21;
+	public static final int STAR = 22;
+	public static final int SLASH = 23;
+	public static final int MOD = 24;
+	public static final int SHIFT_LEFT = 25;
+	public static final int SHIFT_RIGHT = 26;
+	public static final int AND = 27;
+	public static final int OR = 28;
+	public static final int XOR = 29;
+	public static final int BINARY = 30;
+	public static final int HEXADECIMAL = 31;
+	public static final int DECIMAL = 32;
+	public static final int EQ = 33;
+	public static final int NOT_EQ = 34;
+	public static final int LT = 35;
+	public static final int LT_EQ = 36;
+	public static final int GT = 37;
+	public static final int GT_EQ = 38;
+	public static final int NOT = 39;
+	public static final int LOG_AND = 40;
+	public static final int LOG_OR = 41;
+	public static final int LDA = 42;
+	public static final int STA = 43;
+	public static final int RTS = 44;
+	public static final int BEQ = 45;
+	public static final int REP = 46;
+	public static final int SEP = 47;
+	public static final int BNE = 48;
+	public static final int CMP = 49;
+	public static final int JMP = 50;
+	public static final int LDX = 51;
+	public static final int MVN = 52;
+	public static final int MVP = 53;
+	public static final int INC = 54;
+	public static final int DEC = 55;
+	public static final int BYTE = 56;
+	public static final int WORD = 57;
+	public static final int LONG = 58;
+	public static final int X_ADDR = 59;
+	public static final int Y_ADDR = 60;
+	public static final int S_ADDR = 61;
+	public static final int L_PAR = 62;
+	public static final int R_PAR = 63;
+	public static final int L_BR = 64;
+	public static final int R_BR = 65;
+	public static final int POUND = 66;
+	public static final int ACC = 67;
+	public static final int L_CBR = 68;
+	public static final int R_CBR = 69;
+	public static final int SC = 70;
+	public static final int ASSIGN = 71;
+	public static final int TP = 72;
+	public static final int COMMA = 73;
+	public static final int FORWARD = 74;
+	public static final int BACKWARD = 75;
+	public static final int IDENT = 76;
+	public static final int STR = 77;
+
+	// mots réservés: le texte exact et sa sorte, les opcodes en minuscules et en majuscules
+	private static final String[] WORDS = {
+		"macro", "scope", "true", "false", "int", "bool", "string", "org", "db", "dw", "dl",
+		"hex", "bin", "fill", "print", "println", "pc", "namespace", "if", "while", "MOD",
+		"lda", "LDA", "sta", "STA", "rts", "RTS", "beq", "BEQ", "rep", "REP", "sep", "SEP",
+		"bne", "BNE", "cmp", "CMP", "jmp", "JMP", "ldx", "LDX", "mvn", "MVN", "mvp", "MVP",
+		"inc", "INC", "dec", "DEC", "a", "A"
+	};
+	private static final int[] WORD_KINDS = {
+		MACRO, SCOPE, TRUE, FALSE, INT, BOOL, STRING, ORG, DB, DW, DL,
+		HEX, BIN, FILL, PRINT, PRINTLN, PC, NAMESPACE, IF, WHILE, MOD,
+		LDA, LDA, STA, STA, RTS, RTS, BEQ, BEQ, REP, REP, SEP, SEP,
+		BNE, BNE, CMP, CMP, JMP, JMP, LDX, LDX, MVN, MVN, MVP, MVP,
+		INC, INC, DEC, DEC, ACC, ACC
+	};
+
+	// index dans WORDS des mots qui commencent par chaque lettre
+	private static final int[][] WORDS_BY_LETTER = new int[128][];
+
+	static {
+		for(char letter = 'A'; letter <= 'z'; letter++) {
+			int count = 0;
+			int[] words = new int[WORDS.length];
+			for(int i = 0; i < WORDS.length; i++) {
+				if(WORDS[i].charAt(0) == letter) {
+					words[count++] = i;
+				}
+			}
+			WORDS_BY_LETTER[letter] = Arrays.copyOf(words, count);
+		}
+	}
+
+	private char[] chars;
+
+	private int[] kinds = new int[1024];
+	private int[] starts = new int[1024];
+	private int[] lengths = new int[1024];
+	private int[] lines = new int[1024];
+	private int[] columns = new int[1024];
+	private int size = 0;
+
+	// position après le dernier token (celle du EOF), ou de l'erreur
+	private int endLine = 1;
+	private int endColumn = 1;
+	private boolean error = false;
+
+	// textes déjà créés, table à adressage ouvert indexée par le hash du texte
+	private String[] texts = new String[256];
+	private int numTexts = 0;
+
+	private TokenStream(char[] chars) {
+		this.chars = chars;
+	}
+
+	// découpe chars[0..length[
+	public static TokenStream scan(char[] chars, int length) {
+		TokenStream stream = new TokenStream(chars);
+		stream.scan(length);
+		return stream;
+	}
+
+	private void scan(int end) {
+		char[] chars = this.chars;
+		int position = 0;
+		int line = 1;
+		int column = 1;
+
+		while(position < end) {
+			char c = chars[position];
+			int start = position;
+			int kind = -1;
+
+			// long est aussi " .L" (voir la grammaire), plus long qu'un seul espace
+			if(c == ' ' && position + 2 < end && chars[position + 1] == '.' && chars[position + 2] == 'L') {
+				add(LONG, start, 3, line, column);
+				position += 3;
+				column += 3;
+				continue;
+			}
+
+			switch(c) {
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\r':
+				// blank, ignoré: seules les fins de ligne changent la position
+				boolean cr = false;
+				while(position < end && isBlank(chars[position])) {
+					char blank = chars[position++];
+					if(blank == '\n') {
+						if(!cr) {
+							line++;
+						}
+						column = 1;
+						cr = false;
+					}
+					else if(blank == '\r') {
+						line++;
+						column = 1;
+						cr = true;
+					}
+					else {
+						column++;
+						cr = false;
+					}
+				}
+				continue;
+			case '/':
+				if(position + 1 < end && chars[position + 1] == '/') {
+					// line_comment, ignoré
+					position += 2;
+					while(position < end && (isAsciiChar(chars[position]) || chars[position] == '\t')) {
+						position++;
+					}
+					column += position - start;
+					continue;
+				}
+				kind = SLASH;
+				position++;
+				break;
+			case '+':
+				kind = match(position, end, '+') ? FORWARD : PLUS;
+				position += kind == FORWARD ? 2 : 1;
+				break;
+			case '-':
+				kind = match(position, end, '-') ? BACKWARD : MINUS;
+				position += kind == BACKWARD ? 2 : 1;
+				break;
+			case '*':
+				kind = STAR;
+				position++;
+				break;
+			case '&':
+				kind = match(position, end, '&') ? LOG_AND : AND;
+				position += kind == LOG_AND ? 2 : 1;
+				break;
+			case '|':
+				kind = match(position, end, '|') ? LOG_OR : OR;
+				position += kind == LOG_OR ? 2 : 1;
+				break;
+			case '^':
+				kind = XOR;
+				position++;
+				break;
+			case '=':
+				kind = match(position, end, '=') ? EQ : ASSIGN;
+				position += kind == EQ ? 2 : 1;
+				break;
+			case '!':
+				kind = match(position, end, '=') ? NOT_EQ : NOT;
+				position += kind == NOT_EQ ? 2 : 1;
+				break;
+			case '<':
+				kind = match(position, end, '<') ? SHIFT_LEFT : match(position, end, '=') ? LT_EQ : LT;
+				position += kind == LT ? 1 : 2;
+				break;
+			case '>':
+				kind = match(position, end, '>') ? SHIFT_RIGHT : match(position, end, '=') ? GT_EQ : GT;
+				position += kind == GT ? 1 : 2;
+				break;
+			case '(':
+				kind = L_PAR;
+				position++;
+				break;
+			case ')':
+				kind = R_PAR;
+				position++;
+				break;
+			case '[':
+				kind = L_BR;
+				position++;
+				break;
+			case ']':
+				kind = R_BR;
+				position++;
+				break;
+			case '{':
+				kind = L_CBR;
+				position++;
+				break;
+			case '}':
+				kind = R_CBR;
+				position++;
+				break;
+			case '#':
+				kind = POUND;
+				position++;
+				break;
+			case ';':
+				kind = SC;
+				position++;
+				break;
+			case ':':
+				kind = TP;
+				position++;
+				break;
+			case ',':
+				kind = COMMA;
+				position++;
+				if(position < end) {
+					char next = chars[position];
+					if(next == 'x' || next == 'X') {
+						kind = X_ADDR;
+					}
+					else if(next == 'y' || next == 'Y') {
+						kind = Y_ADDR;
+					}
+					else if(next == 's' || next == 'S') {
+						kind = S_ADDR;
+					}
+					if(kind != COMMA) {
+						position++;
+					}
+				}
+				break;
+			case '.':
+				if(position + 1 < end) {
+					char next = chars[position + 1];
+					if(next == 'b' || next == 'B') {
+						kind = BYTE;
+					}
+					else if(next == 'w' || next == 'W') {
+						kind = WORD;
+					}
+					else if(next == 'l') {
+						kind = LONG;
+					}
+				}
+				position += 2;
+				break;
+			case '%':
+				position++;
+				while(position < end && (chars[position] == '0' || chars[position] == '1')) {
+					position++;
+				}
+				kind = position - start > 1 ? BINARY : -1;
+				break;
+			case '$':
+				position++;
+				while(position < end && isHexDigit(chars[position])) {
+					position++;
+				}
+				kind = position - start > 1 ? HEXADECIMAL : -1;
+				break;
+			case '"':
+				position++;
+				while(position < end && isAsciiChar(chars[position])) {
+					position++;
+				}
+				if(position < end && chars[position] == '"') {
+					kind = STR;
+					position++;
+				}
+				break;
+			default:
+				if(isDigit(c)) {
+					while(position < end && isDigit(chars[position])) {
+						position++;
+					}
+					kind = DECIMAL;
+				}
+				else if(isLetter(c)) {
+					while(position < end && (isLetter(chars[position]) || isDigit(chars[position])
+							|| chars[position] == '_')) {
+						position++;
+					}
+					kind = getWordKind(start, position - start);
+				}
+				break;
+			}
+
+			if(kind < 0) {
+				// l'erreur est à la position du token qui ne peut pas être reconnu
+				this.endLine = line;
+				this.endColumn = column;
+				this.error = true;
+				return;
+			}
+
+			add(kind, start, position - start, line, column);
+			column += position - start;
+		}
+
+		this.endLine = line;
+		this.endColumn = column;
+	}
+
+	private boolean match(int position, int end, char next) {
+		return position + 1 < end && this.chars[position + 1] == next;
+	}
+
+	// mot réservé si le texte est exactement celui du mot, sinon ident
+	private int getWordKind(int start, int length) {
+		for(int i: WORDS_BY_LETTER[this.chars[start]]) {
+			if(WORDS[i].length() == length && regionMatches(WORDS[i], start)) {
+				return WORD_KINDS[i];
+			}
+		}
+		return IDENT;
+	}
+
+	private boolean regionMatches(String string, int start) {
+		for(int i = 0; i < string.length(); i++) {
+			if(string.charAt(i) != this.chars[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void add(int kind, int start, int length, int line, int column) {
+		if(this.size == this.kinds.length) {
+			int capacity = this.size * 2;
+			this.kinds = Arrays.copyOf(this.kinds, capacity);
+			this.starts = Arrays.copyOf(this.starts, capacity);
+			this.lengths = Arrays.copyOf(this.lengths, capacity);
+			this.lines = Arrays.copyOf(this.lines, capacity);
+			this.columns = Arrays.copyOf(this.columns, capacity);
+		}
+		this.kinds[this.size] = kind;
+		this.starts[this.size] = start;
+		this.lengths[this.size] = length;
+		this.lines[this.size] = line;
+		this.columns[this.size] = column;
+		this.size++;
+	}
+
+	private static boolean isBlank(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isHexDigit(char c) {
+		return isDigit(c) || (c >= 'A' && c <= 'F') || (c >= 'a' && c <= 'f');
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+	}
+
+	// ascii_char de la grammaire: 0x20..0x7E, 0xA1..0xAC et 0xAE..0xFF sauf '"'
+	private static boolean isAsciiChar(char c) {
+		return ((c >= 0x20 && c <= 0x7E) || (c >= 0xA1 && c <= 0xAC) || (c >= 0xAE && c <= 0xFF)) && c != '"';
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int getKind(int token) {
+		return this.kinds[token];
+	}
+
+	public int getStart(int token) {
+		return this.starts[token];
+	}
+
+	public int getLength(int token) {
+		return this.lengths[token];
+	}
+
+	public int getLine(int token) {
+		return this.lines[token];
+	}
+
+	public int getColumn(int token) {
+		return this.columns[token];
+	}
+
+	public int getEndLine() {
+		return this.endLine;
+	}
+
+	public int getEndColumn() {
+		return this.endColumn;
+	}
+
+	public boolean hasError() {
+		return this.error;
+	}
+
+	// texte du token, créé à la première demande et partagé ensuite
+	// par tous les tokens de même texte (e.g. un label ou un nombre)
+	public String getText(int token) {
+		int start = this.starts[token];
+		int length = this.lengths[token];
+
+		int hash = 0;
+		for(int i = start; i < start + length; i++) {
+			hash = hash * 31 + this.chars[i];
+		}
+
+		int mask = this.texts.length - 1;
+		int index = hash & mask;
+		while(this.texts[index] != null) {
+			String text = this.texts[index];
+			if(text.length() == length && text.hashCode() == hash && regionMatches(text, start)) {
+				return text;
+			}
+			index = (index + 1) & mask;
+		}
+
+		String text = new String(this.chars, start, length);
+		this.texts[index] = text;
+		this.numTexts++;
+		if(this.numTexts * 2 > this.texts.length) {
+			rehash();
+		}
+		return text;
+	}
+
+	private void rehash() {
+		String[] texts = new String[this.texts.length * 2];
+		int mask = texts.length - 1;
+		for(String text: this.texts) {
+			if(text != null) {
+				int index = text.hashCode() & mask;
+				while(texts[index] != null) {
+					index = (index + 1) & mask;
+				}
+				texts[index] = text;
+			}
+		}
+		this.texts = texts;
+	}
+}
@@ -0,0 +1,148 @@
+package assembler;
+
+import java.io.IOException;
+
+import assembler.syntax.lexer.Lexer;
+import assembler.syntax.lexer.LexerException;
+import assembler.syntax.node.*;
+
+// donne au parser de SableCC les tokens d'un TokenStream. Seuls les tokens
+// que le parser demande sont créés, jamais les blank ni les commentaires.
+//
+// Si le source a une erreur lexicale, le lexer de SableCC relit le source
+// depuis le début quand le parser arrive à l'erreur: le message (et le
+// moment où l'erreur est signalée) sont donc les mêmes qu'avant
+
+public class TokenStreamLexer extends Lexer {
+
+	private TokenStream stream;
+	private int index = 0;
+
+	// prochain token, déjà créé par peek()
+	private Token token;
+
+	public TokenStreamLexer(SourceReader reader) {
+		super(reader);
+		this.stream = reader.scan();
+	}
+
+	@Override
+	public Token peek() throws LexerException, IOException {
+		if(this.token == null) {
+			this.token = newToken();
+		}
+		return this.token;
+	}
+
+	@Override
+	public Token next() throws LexerException, IOException {
+		Token token = peek();
+		this.token = null;
+		return token;
+	}
+
+	private Token newToken() throws LexerException, IOException {
+		if(this.index < this.stream.size()) {
+			return newToken(this.index++);
+		}
+		if(this.stream.hasError()) {
+			// le lexer de SableCC lit le même source et lance la même exception
+			while(!(super.next() instanceof EOF)) {
+			}
+			throw new IllegalStateException("Lexical error not found by the SableCC lexer");
+		}
+		return new EOF(this.stream.getEndLine(), this.stream.getEndColumn());
+	}
+
+	private Token newToken(int index) {
+		int line = this.stream.getLine(index);
+		int pos = this.stream.getColumn(index);
+
+		switch(this.stream.getKind(index)) {
+		case TokenStream.MACRO: return new TMacro(line, pos);
+		case TokenStream.SCOPE: return new TScope(line, pos);
+		case TokenStream.TRUE: return new TTrue(line, pos);
+		case TokenStream.FALSE: return new TFalse(line, pos);
+		case TokenStream.INT: return new TInt(line, pos);
+		case TokenStream.BOOL: return new TBool(line, pos);
+		case TokenStream.STRING: return new TString(line, pos);
+		case TokenStream.ORG: return new TOrg(line, pos);
+		case TokenStream.DB: return new TDb(line, pos);
+		case TokenStream.DW: return new TDw(line, pos);
+		case TokenStream.DL: return new TDl(line, pos);
+		case TokenStream.HEX: return new THex(line, pos);
+		case TokenStream.BIN: return new TBin(line, pos);
+		case TokenStream.FILL: return new TFill(line, pos);
+		case TokenStream.PRINT: return new TPrint(line, pos);
+		case TokenStream.PRINTLN: return new TPrintln(line, pos);
+		case TokenStream.PC: return new TPc(line, pos);
+		case TokenStream.NAMESPACE: return new TNamespace(line, pos);
+		case TokenStream.IF: return new TIf(line, pos);
+		case TokenStream.WHILE: return new TWhile(line, pos);
+		case TokenStream.PLUS: return new TPlus(line, pos);
+		case TokenStream.MINUS: return new TMinus(line, pos);
+		case TokenStream.STAR: return new TStar(line, pos);
+		case TokenStream.SLASH: return new TSlash(line, pos);
+		case TokenStream.MOD: return new TMod(line, pos);
+		case TokenStream.SHIFT_LEFT: return new TShiftLeft(line, pos);
+		case TokenStream.SHIFT_RIGHT: return new TShiftRight(line, pos);
+		case TokenStream.AND: return new TAnd(line, pos);
+		case TokenStream.OR: return new TOr(line, pos);
+		case TokenStream.XOR: return new TXor(line, pos);
+		case TokenStream.BINARY: return new TBinary(getText(index), line, pos);
+		case TokenStream.HEXADECIMAL: return new THexadecimal(getText(index), line, pos);
+		case TokenStream.DECIMAL: return new TDecimal(getText(index), line, pos);
+		case TokenStream.EQ: return new TEq(line, pos);
+		case TokenStream.NOT_EQ: return new TNotEq(line, pos);
+		case TokenStream.LT: return new TLt(line, pos);
+		case TokenStream.LT_EQ: return new TLtEq(line, pos);
+		case TokenStream.GT: return new TGt(line, pos);
+		case TokenStream.GT_EQ: return new TGtEq(line, pos);
+		case TokenStream.NOT: return new TNot(line, pos);
+		case TokenStream.LOG_AND: return new TLogAnd(line, pos);
+		case TokenStream.LOG_OR: return new TLogOr(line, pos);
+		case TokenStream.LDA: return new TLda(getText(index), line, pos);
+		case TokenStream.STA: return new TSta(getText(index), line, pos);
+		case TokenStream.RTS: return new TRts(getText(index), line, pos);
+		case TokenStream.BEQ: return new TBeq(getText(index), line, pos);
+		case TokenStream.REP: return new TRep(getText(index), line, pos);
+		case TokenStream.SEP: return new TSep(getText(index), line, pos);
+		case TokenStream.BNE: return new TBne(getText(index), line, pos);
+		case TokenStream.CMP: return new TCmp(getText(index), line, pos);
+		case TokenStream.JMP: return new TJmp(getText(index), line, pos);
+		case TokenStream.LDX: return new TLdx(getText(index), line, pos);
+		case TokenStream.MVN: return new TMvn(getText(index), line, pos);
+		case TokenStream.MVP: return new TMvp(getText(index), line, pos);
+		case TokenStream.INC: return new TInc(getText(index), line, pos);
+		case TokenStream.DEC: return new TDec(getText(index), line, pos);
+		case TokenStream.BYTE: return new TByte(getText(index), line, pos);
+		case TokenStream.WORD: return new TWord(getText(index), line, pos);
+		case TokenStream.LONG: return new TLong(getText(index), line, pos);
+		case TokenStream.X_ADDR: return new TXAddr(getText(index), line, pos);
+		case TokenStream.Y_ADDR: return new TYAddr(getText(index), line, pos);
+		case TokenStream.S_ADDR: return new TSAddr(getText(index), line, pos);
+		case TokenStream.L_PAR: return new TLPar(line, pos);
+		case TokenStream.R_PAR: return new TRPar(line, pos);
+		case TokenStream.L_BR: return new TLBr(line, pos);
+		case TokenStream.R_BR: return new TRBr(line, pos);
+		case TokenStream.POUND: return new TPound(line, pos);
+		case TokenStream.ACC: return new TAcc(getText(index), line, pos);
+		case TokenStream.L_CBR: return new TLCbr(line, pos);
+		case TokenStream.R_CBR: return new TRCbr(line, pos);
+		case TokenStream.SC: return new TSc(line, pos);
+		case TokenStream.ASSIGN: return new TAssign(line, pos);
+		case TokenStream.TP: return new TTp(line, pos);
+		case TokenStream.COMMA: return new TComma(line, pos);
+		case TokenStream.FORWARD: return new TForward(line, pos);
+		case TokenStream.BACKWARD: return new TBackward(line, pos);
+		case TokenStream.IDENT: return new TIdent(getText(index), line, pos);
+		case TokenStream.STR: return new TStr(getText(index), line, pos);
+		default:
+			throw new IllegalStateException("Unknown token kind " + this.stream.getKind(index));
+		}
+	}
+
+	private String getText(int index) {
+		return this.stream.getText(index);
+	}
+}
@@ -0,0 +1,21 @@
+package assembler;
+
+// variable déclarée: son type et l'index de sa case dans le frame
+
+public class VariableInfo {
+	private Type type;
+	private int slot;
+	
+	public VariableInfo(Type type, int slot) {
+		this.type = type;
+		this.slot = slot;
+	}
+	
+	public Type getType() {
+		return this.type;
+	}
+	
+	public int getSlot() {
+		return this.slot;
+	}
+}
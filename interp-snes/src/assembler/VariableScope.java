@@ -10,7 +10,7 @@ import assembler.syntax.node.TIdent;
 
 public class VariableScope {
 	private VariableScope parent;
-	private Map<String, Type> declaredVariables = new HashMap<>();
+	private Map<String, VariableInfo> declaredVariables = new HashMap<>();
 	
 	public VariableScope(VariableScope parentScope) {
 		this.parent = parentScope;
@@ -20,12 +20,14 @@ public class VariableScope {
 		return this.parent;
 	}
 	
-	public void addDecl(TIdent ident, Type type) {
+	public VariableInfo addDecl(TIdent ident, Type type, int slot) {
 		String name = ident.getText();
 		if(alreadyDeclared(name)) {
 			throw new SemanticException(ident, "variable " + name + " is already declared");
 		}
-		this.declaredVariables.put(name, type);
+		VariableInfo variable = new VariableInfo(type, slot);
+		this.declaredVariables.put(name, variable);
+		return variable;
 	}
 
 	private boolean alreadyDeclared(String name) {
@@ -39,12 +41,16 @@ public class VariableScope {
 	}
 
 	public Type getType(TIdent ident) {
+		return getVariableInfo(ident).getType();
+	}
+	
+	public VariableInfo getVariableInfo(TIdent ident) {
 		if(!alreadyDeclared(ident.getText())) {
 			throw new SemanticException(ident, "variable " + ident.getText() + " is not declared");
 		}
 		if(this.declaredVariables.containsKey(ident.getText())) {
 			return this.declaredVariables.get(ident.getText());
 		}
-		return this.parent.getType(ident);
+		return this.parent.getVariableInfo(ident);
 	}
 }
@@ -0,0 +1,303 @@
+package assembler;
+
+import assembler.syntax.node.*;
+
+// exécute le bytecode produit par BytecodeCompiler. Les registres sont
+// les cases du frame courant, les instructions d'assembleur et les
+// changements de namespace ou de macro passent par l'interpréteur
+
+public class VirtualMachine {
+
+	// nombre d'appels affichés dans le message d'erreur de profondeur
+	private static final int MAX_CHAIN_LENGTH = 10;
+
+	private InterpreterEngine engine;
+
+	// nombre maximal de macros imbriqués
+	private int maxMacroDepth;
+
+	public VirtualMachine(InterpreterEngine engine, int maxMacroDepth) {
+		this.engine = engine;
+		this.maxMacroDepth = maxMacroDepth;
+	}
+
+	// les appels de macro ne sont pas récursifs en Java: la pile d'appels est
+	// la chaîne des frames (parentFrame) et chaque frame appelant garde son
+	// adresse de retour, la profondeur ne dépend donc pas de la pile native
+	public void execute(Bytecode bytecode, Frame frame) {
+		int[] code = bytecode.getCode();
+		Object[] constants = bytecode.getConstants();
+		int[] ints = frame.getIntRegisters();
+		Value[] values = frame.getValueRegisters();
+		int pc = 0;
+		int depth = 0;
+
+		while(true) {
+			switch(code[pc]) {
+				case Bytecode.LOADI:
+					ints[code[pc + 1]] = code[pc + 2];
+					pc += 3;
+					break;
+				case Bytecode.LOADK:
+					values[code[pc + 1]] = (Value)constants[code[pc + 2]];
+					pc += 3;
+					break;
+				case Bytecode.MOV:
+					ints[code[pc + 1]] = ints[code[pc + 2]];
+					pc += 3;
+					break;
+				case Bytecode.MOVV:
+					values[code[pc + 1]] = values[code[pc + 2]];
+					pc += 3;
+					break;
+				case Bytecode.ADD:
+					ints[code[pc + 1]] = ints[code[pc + 2]] + ints[code[pc + 3]];
+					pc += 4;
+					break;
+				case Bytecode.SUB:
+					ints[code[pc + 1]] = ints[code[pc + 2]] - ints[code[pc + 3]];
+					pc += 4;
+					break;
+				case Bytecode.MUL:
+					ints[code[pc + 1]] = ints[code[pc + 2]] * ints[code[pc + 3]];
+					pc += 4;
+					break;
+				case Bytecode.DIV:
+					ints[code[pc + 1]] = ints[code[pc + 2]] / ints[code[pc + 3]];
+					pc += 4;
+					break;
+				case Bytecode.MOD:
+					ints[code[pc + 1]] = ints[code[pc + 2]] % ints[code[pc + 3]];
+					pc += 4;
+					break;
+				case Bytecode.AND:
+					ints[code[pc + 1]] = ints[code[pc + 2]] & ints[code[pc + 3]];
+					pc += 4;
+					break;
+				case Bytecode.OR:
+					ints[code[pc + 1]] = ints[code[pc + 2]] | ints[code[pc + 3]];
+					pc += 4;
+					break;
+				case Bytecode.XOR:
+					ints[code[pc + 1]] = ints[code[pc + 2]] ^ ints[code[pc + 3]];
+					pc += 4;
+					break;
+				case Bytecode.SHL:
+					ints[code[pc + 1]] = ints[code[pc + 2]] << ints[code[pc + 3]];
+					pc += 4;
+					break;
+				case Bytecode.SHR:
+					ints[code[pc + 1]] = ints[code[pc + 2]] >> ints[code[pc + 3]];
+					pc += 4;
+					break;
+				case Bytecode.EQ:
+					ints[code[pc + 1]] = ints[code[pc + 2]] == ints[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Bytecode.NE:
+					ints[code[pc + 1]] = ints[code[pc + 2]] != ints[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Bytecode.LT:
+					ints[code[pc + 1]] = ints[code[pc + 2]] < ints[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Bytecode.LE:
+					ints[code[pc + 1]] = ints[code[pc + 2]] <= ints[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Bytecode.GT:
+					ints[code[pc + 1]] = ints[code[pc + 2]] > ints[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Bytecode.GE:
+					ints[code[pc + 1]] = ints[code[pc + 2]] >= ints[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Bytecode.NOT:
+					ints[code[pc + 1]] = ints[code[pc + 2]] == 0 ? 1 : 0;
+					pc += 3;
+					break;
+				case Bytecode.SEQ:
+					ints[code[pc + 1]] = getString(values[code[pc + 2]]).equals(getString(values[code[pc + 3]])) ? 1 : 0;
+					pc += 4;
+					break;
+				case Bytecode.SNE:
+					ints[code[pc + 1]] = getString(values[code[pc + 2]]).equals(getString(values[code[pc + 3]])) ? 0 : 1;
+					pc += 4;
+					break;
+				case Bytecode.CONCAT:
+					values[code[pc + 1]] = new StringValue(getString(values[code[pc + 2]]) + getString(values[code[pc + 3]]));
+					pc += 4;
+					break;
+				case Bytecode.INT_STR:
+					values[code[pc + 1]] = new StringValue(Integer.toString(ints[code[pc + 2]]));
+					pc += 3;
+					break;
+				case Bytecode.BOOL_STR:
+					values[code[pc + 1]] = new StringValue(Boolean.toString(ints[code[pc + 2]] != 0));
+					pc += 3;
+					break;
+				case Bytecode.HEX_STR:
+					values[code[pc + 1]] = new StringValue(InterpreterEngine.toHexString(ints[code[pc + 2]]));
+					pc += 3;
+					break;
+				case Bytecode.BIN_STR:
+					values[code[pc + 1]] = new StringValue(InterpreterEngine.toBinString(ints[code[pc + 2]]));
+					pc += 3;
+					break;
+				case Bytecode.PC:
+					ints[code[pc + 1]] = this.engine.getCurrentOffset();
+					pc += 2;
+					break;
+				case Bytecode.JMP:
+					pc = code[pc + 1];
+					break;
+				case Bytecode.JMP_FALSE:
+					pc = ints[code[pc + 1]] == 0 ? code[pc + 2] : pc + 3;
+					break;
+				case Bytecode.PRINT_INT:
+					print(Integer.toString(ints[code[pc + 1]]), code[pc + 2]);
+					pc += 3;
+					break;
+				case Bytecode.PRINT_BOOL:
+					print(Boolean.toString(ints[code[pc + 1]] != 0), code[pc + 2]);
+					pc += 3;
+					break;
+				case Bytecode.PRINT_STR:
+					print(getString(values[code[pc + 1]]), code[pc + 2]);
+					pc += 3;
+					break;
+				case Bytecode.PRINT_NL:
+					this.engine.getOutput().println();
+					pc += 1;
+					break;
+				case Bytecode.EMIT:
+					this.engine.emit((Node)constants[code[pc + 1]]);
+					pc += 2;
+					break;
+				case Bytecode.NS_ENTER:
+					this.engine.enterNameSpace((String)constants[code[pc + 1]]);
+					pc += 2;
+					break;
+				case Bytecode.NS_EXIT:
+					this.engine.exitNameSpace();
+					pc += 1;
+					break;
+				case Bytecode.CALL: {
+					AMacroCallInst node = (AMacroCallInst)constants[code[pc + 1]];
+					MacroInfo macroInfo = (MacroInfo)constants[code[pc + 2]];
+
+					if(depth == this.maxMacroDepth) {
+						throw new InterpreterException(node.getIdent(), "macro call depth exceeds "
+								+ this.maxMacroDepth + getCallChain(node, frame));
+					}
+
+					Frame macroFrame = enterCall(node, macroInfo, frame, code[pc + 3]);
+
+					// le corps n'est pas exécuté si son développement a été rejoué depuis la cache
+					if(!this.engine.enterMacro(macroFrame)) {
+						this.engine.exitMacro(macroFrame);
+						frame.setLocation(null);
+						pc += 4;
+						break;
+					}
+
+					// on continue dans le corps du macro
+					frame.setReturnPc(pc + 4);
+					frame = macroFrame;
+					code = macroInfo.getBytecode().getCode();
+					constants = macroInfo.getBytecode().getConstants();
+					ints = frame.getIntRegisters();
+					values = frame.getValueRegisters();
+					pc = 0;
+					depth++;
+					break;
+				}
+				case Bytecode.RETURN: {
+					if(depth == 0) {
+						return;
+					}
+					this.engine.exitMacro(frame);
+
+					// retour dans le frame appelant
+					frame = frame.getParentFrame();
+					Bytecode callerBytecode = frame.getMacroInfo() != null ? frame.getMacroInfo().getBytecode() : bytecode;
+					code = callerBytecode.getCode();
+					constants = callerBytecode.getConstants();
+					ints = frame.getIntRegisters();
+					values = frame.getValueRegisters();
+					pc = frame.getReturnPc();
+					depth--;
+
+					// effacer la localisation courante
+					frame.setLocation(null);
+					break;
+				}
+				default:
+					// ne devrait jamais se produire
+					throw new CompilationException("Invalid bytecode " + code[pc] + " at " + pc);
+			}
+		}
+	}
+
+	// frame d'un appel de macro, les arguments sont dans les registres à partir de first
+	private Frame enterCall(AMacroCallInst node, MacroInfo macroInfo, Frame frame, int first) {
+		Frame macroFrame = new Frame(frame, macroInfo, node.getIdent());
+
+		// copie des arguments dans les registres des paramètres
+		int i = first;
+		for(ParamInfo param : macroInfo.getParams()) {
+			macroFrame.getIntRegisters()[param.getSlot()] = frame.getIntRegisters()[i];
+			macroFrame.getValueRegisters()[param.getSlot()] = frame.getValueRegisters()[i];
+			i++;
+		}
+
+		// noter la localisation courante
+		frame.setLocation(node.getLPar());
+		return macroFrame;
+	}
+
+	// chaîne des appels en cours, du plus récent au plus ancien
+	private String getCallChain(AMacroCallInst node, Frame frame) {
+		StringBuilder chain = new StringBuilder();
+		chain.append("\n\tat ").append(node.getIdent().getText()).append("() ")
+				.append(getPosition(node.getLPar()));
+
+		int count = 0;
+		int skipped = 0;
+		for(Frame current = frame; current.getParentFrame() != null; current = current.getParentFrame()) {
+			// les appels les plus récents et le premier appel du main
+			if(count < MAX_CHAIN_LENGTH || current.getParentFrame().getParentFrame() == null) {
+				if(skipped > 0) {
+					chain.append("\n\t... ").append(skipped).append(" more");
+					skipped = 0;
+				}
+				chain.append("\n\tat ").append(current.getMacroInfo().getName()).append("() ")
+						.append(getPosition(current.getParentFrame().getLocation()));
+			}
+			else {
+				skipped++;
+			}
+			count++;
+		}
+		return chain.toString();
+	}
+
+	private static String getPosition(Token token) {
+		return "[" + token.getLine() + ":" + token.getPos() + "]";
+	}
+
+	private static String getString(Value value) {
+		return ((StringValue)value).getValue();
+	}
+
+	private void print(String string, int newLine) {
+		if(newLine != 0) {
+			this.engine.getOutput().println(string);
+		}
+		else {
+			this.engine.getOutput().print(string);
+		}
+	}
+}